@@ -0,0 +1,67 @@
+package financials.benchmark;
+
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looping over effectiveInterestRate with the batch api for different pool sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+  @Param({"1", "2", "4", "8"})
+  int parallelism;
+
+  int size = 100_000;
+  int[] loanAmounts = new int[size];
+  double[] interests = new double[size];
+  int[] tenureMonths = new int[size];
+  int[] amFreeMonths = new int[size];
+  int[] invoiceFees = new int[size];
+  double[] result = new double[size];
+  ForkJoinPool pool;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1);
+    for (int i = 0; i < size; i++) {
+      loanAmounts[i] = 10_000 + random.nextInt(500_000);
+      interests[i] = 0.01 + random.nextInt(200) / 1000.0;
+      tenureMonths[i] = 12 + random.nextInt(469);
+      amFreeMonths[i] = random.nextInt(12);
+      invoiceFees[i] = random.nextInt(50);
+    }
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public double[] batch() {
+    effectiveInterestRates(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, result, pool);
+    return result;
+  }
+
+  @Benchmark
+  public double[] loop() {
+    for (int i = 0; i < size; i++) {
+      result[i] = effectiveInterestRate(loanAmounts[i], BigDecimal.valueOf(interests[i]), tenureMonths[i],
+          amFreeMonths[i], invoiceFees[i]);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,69 @@
+package financials.benchmark;
+
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.openjdk.jmh.annotations.*;
+import se.alipsa.jfinancials.PaymentPlan;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the irr entry points and effectiveInterestRate (which is cashFlow + irr + apr)
+ * over different tenures and number of amortization free months.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IrrBenchmark {
+
+  @Param({"12", "60", "120", "240", "360", "480"})
+  int tenureMonths;
+
+  @Param({"0", "6"})
+  int amFreeMonths;
+
+  int loanAmount = 263_429;
+  BigDecimal interest = BigDecimal.valueOf(0.055);
+  int invoiceFee = 30;
+
+  double[] cashFlow;
+  List<Number> cashFlowList;
+  PaymentPlan paymentPlan;
+
+  @Setup
+  public void setup() {
+    cashFlow = cashFlow(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+    paymentPlan = paymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, BigDecimal.valueOf(invoiceFee));
+    cashFlowList = paymentPlan.getColumn("cashFlow");
+  }
+
+  @Benchmark
+  public double irrArray() {
+    return irr(cashFlow);
+  }
+
+  @Benchmark
+  public double irrList() {
+    return irr(cashFlowList);
+  }
+
+  @Benchmark
+  public double irrPaymentPlan() {
+    return irr(paymentPlan);
+  }
+
+  @Benchmark
+  public double effectiveInterestRateDouble() {
+    return effectiveInterestRate(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+  }
+
+  @Benchmark
+  public double effectiveInterestRateBigDecimal() {
+    return apr(irr(paymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, BigDecimal.valueOf(invoiceFee))));
+  }
+}
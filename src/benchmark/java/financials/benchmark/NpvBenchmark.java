@@ -0,0 +1,51 @@
+package financials.benchmark;
+
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the array and List variants of npv.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NpvBenchmark {
+
+  @Param({"12", "60", "120", "240", "360", "480"})
+  int tenureMonths;
+
+  @Param({"0", "6"})
+  int amFreeMonths;
+
+  double rate = 0.0045;
+  double[] cashFlow;
+  List<Number> cashFlowList;
+
+  @Setup
+  public void setup() {
+    cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), tenureMonths, amFreeMonths, 30);
+    cashFlowList = new ArrayList<>(cashFlow.length);
+    for (double cf : cashFlow) {
+      cashFlowList.add(cf);
+    }
+  }
+
+  @Benchmark
+  public double npvArray() {
+    return npv(cashFlow, rate);
+  }
+
+  @Benchmark
+  public double npvList() {
+    return npv(cashFlowList, rate);
+  }
+}
@@ -0,0 +1,80 @@
+package financials.benchmark;
+
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.openjdk.jmh.annotations.*;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.FixedPointAmortization;
+import se.alipsa.jfinancials.PaymentPlan;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the BigDecimal payment plan with the double based cash flow and total amount calculations.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentPlanBenchmark {
+
+  @Param({"12", "60", "120", "240", "360", "480"})
+  int tenureMonths;
+
+  @Param({"0", "6"})
+  int amFreeMonths;
+
+  int loanAmount = 263_429;
+  BigDecimal interest = BigDecimal.valueOf(0.055);
+  BigDecimal invoiceFee = BigDecimal.valueOf(30);
+  PaymentPlan paymentPlan;
+  FixedPointAmortization fixedPoint = new FixedPointAmortization();
+
+  @Setup
+  public void setup() {
+    paymentPlan = paymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+  }
+
+  @Benchmark
+  public PaymentPlan paymentPlanBigDecimal() {
+    return paymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+  }
+
+  @Benchmark
+  public ColumnarPaymentPlan paymentPlanColumnar() {
+    return columnarPaymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+  }
+
+  @Benchmark
+  public ColumnarPaymentPlan paymentPlanFixedPoint() {
+    return fixedPoint.columnarPaymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+  }
+
+  @Benchmark
+  public double[] cashFlowDouble() {
+    return cashFlow(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee.intValue());
+  }
+
+  @Benchmark
+  public double[] cashFlowFromPaymentPlan() {
+    return cashFlow(paymentPlan);
+  }
+
+  @Benchmark
+  public double totalPaymentAmountDouble() {
+    return totalPaymentAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths, invoiceFee.intValue());
+  }
+
+  @Benchmark
+  public BigDecimal totalPaymentAmountBigDecimal() {
+    return totalPaymentAmountRounded(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee.intValue(), 2);
+  }
+
+  @Benchmark
+  public double dailyInterestAmountBigDecimal() {
+    return dailyInterestAmount(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee.intValue());
+  }
+}
@@ -0,0 +1,45 @@
+package financials.benchmark;
+
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the double and BigDecimal versions of pmt and the monthly annuity amount.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PmtBenchmark {
+
+  @Param({"12", "60", "120", "240", "360", "480"})
+  int tenureMonths;
+
+  @Param({"0", "6"})
+  int amFreeMonths;
+
+  double monthlyRate = 0.055 / 12;
+  BigDecimal monthlyRateBd = BigDecimal.valueOf(0.055 / 12);
+  BigDecimal loanAmountBd = BigDecimal.valueOf(-263_429);
+
+  @Benchmark
+  public double pmtDouble() {
+    return pmt(monthlyRate, tenureMonths - amFreeMonths, -263_429);
+  }
+
+  @Benchmark
+  public BigDecimal pmtBigDecimal() {
+    return pmt(monthlyRateBd, tenureMonths - amFreeMonths, loanAmountBd);
+  }
+
+  @Benchmark
+  public double monthlyAnnuity() {
+    return monthlyAnnuityAmount(263_429, 0.055, tenureMonths, amFreeMonths);
+  }
+}
@@ -0,0 +1,367 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calculates rounded results in double precision while keeping a rigorous bound of the rounding error, and
+ * redoes the calculation with BigDecimal only when the bound does not rule out that the error changes the
+ * result at the requested number of decimals. The results are therefore the same as rounding the BigDecimal
+ * results (paymentPlan(...) and the apr of its cash flow) but usually at the cost of the double calculation.
+ *
+ * <p>The number of calculations and of fallbacks to BigDecimal are counted by each instance, and each
+ * calculation is reported to the MetricsListener (if any). An instance is thread safe.</p>
+ */
+public final class AdaptivePrecision {
+
+  /* The unit roundoff of double, i.e. the maximum relative error of a rounded operation */
+  private static final double U = Math.ulp(1.0) / 2;
+  /*
+   * How far inside the rounding boundaries of the apr the bracket of the monthly rate is placed, covers the
+   * (few ulp) error of converting between apr and monthly rate with Math.pow
+   */
+  private static final double APR_MARGIN = 1e-12;
+  private static final int MAX_BISECTIONS = 200;
+  private static final MathContext MC = new MathContext(40, RoundingMode.HALF_EVEN);
+  private static final BigDecimal TWELVE = BigDecimal.valueOf(12);
+
+  private final LongAdder aprCalculations = new LongAdder();
+  private final LongAdder aprFallbacks = new LongAdder();
+  private final LongAdder paymentPlanCalculations = new LongAdder();
+  private final LongAdder paymentPlanFallbacks = new LongAdder();
+
+  /**
+   * The apr of the loan (the same cash flow as paymentPlan(...)) rounded half up to the given number of
+   * decimals. The monthly irr is solved in double, then the sign of the npv, including its error bound, is
+   * checked at the monthly rates corresponding to the rounding boundaries around the rounded apr. If the signs
+   * prove that the root is between them the rounded apr is certain, otherwise the apr is bisected with BigDecimal.
+   *
+   * @param loanAmt *INCLUDING* startupfee
+   * @param interest the nominal yearly interest
+   * @param tenureMonths the tenure in months
+   * @param amFreeMonths number of amortization free months
+   * @param invoiceFee the invoice fee
+   * @param decimals the number of decimals of the result
+   * @return the effective interest rate (apr) with the scale decimals
+   */
+  public BigDecimal effectiveInterestRate(int loanAmt, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                          BigDecimal invoiceFee, int decimals) {
+    aprCalculations.increment();
+    BigDecimal amFreeCostBd = BigDecimal.valueOf(loanAmt).multiply(interest).divide(TWELVE, Financials.SCALE, RoundingMode.HALF_UP);
+    double annuity = Financials.monthlyAnnuityAmount(loanAmt, interest.doubleValue(), tenureMonths, amFreeMonths);
+    double fee = invoiceFee.doubleValue();
+    // each entry differs at most 3 roundings from the BigDecimal cash flow (2 conversions and the addition)
+    double[] cashFlow = new double[tenureMonths + 1];
+    cashFlow[0] = -loanAmt;
+    double amFreeCashFlow = amFreeCostBd.doubleValue() + fee;
+    for (int month = 1; month <= tenureMonths; month++) {
+      cashFlow[month] = month <= amFreeMonths ? amFreeCashFlow : annuity + fee;
+    }
+    BigDecimal apr = certifiedApr(cashFlow, decimals);
+    boolean fallback = apr == null;
+    if (fallback) {
+      aprFallbacks.increment();
+      apr = bisectApr(loanAmt, interest, tenureMonths, amFreeMonths, invoiceFee, decimals);
+    }
+    Instrumentation.adaptivePrecision("effectiveInterestRate", fallback);
+    return apr;
+  }
+
+  /**
+   * The payment plan with all amounts rounded half up to the given number of decimals, i.e. the same values as
+   * paymentPlan(...) rounded (as BigDecimal) and converted to double. The plan is calculated in double along with
+   * a bound of the error of each amount, if any amount could round differently within its bound the plan is
+   * calculated with BigDecimal instead.
+   *
+   * @param loanAmount including startupFee
+   * @param interest the yearly interest rate
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @param decimals the number of decimals to round to, e.g. 2 for cents
+   * @return a ColumnarPaymentPlan of rounded amounts
+   */
+  public ColumnarPaymentPlan paymentPlan(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                         BigDecimal invoiceFee, int decimals) {
+    paymentPlanCalculations.increment();
+    ColumnarPaymentPlan plan = Instrumentation.paymentPlan("adaptive", tenureMonths,
+        () -> roundedPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee, decimals));
+    boolean fallback = plan == null;
+    if (fallback) {
+      paymentPlanFallbacks.increment();
+      plan = Instrumentation.paymentPlan("BigDecimal", tenureMonths,
+          () -> bigDecimalPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee, decimals));
+    }
+    Instrumentation.adaptivePrecision("paymentPlan", fallback);
+    plan.setTerms(interest, amFreeMonths, invoiceFee);
+    return plan;
+  }
+
+  /**
+   * @return the number of effectiveInterestRate calculations
+   */
+  public long getAprCalculations() {
+    return aprCalculations.sum();
+  }
+
+  /**
+   * @return the number of effectiveInterestRate calculations that fell back to BigDecimal
+   */
+  public long getAprFallbacks() {
+    return aprFallbacks.sum();
+  }
+
+  /**
+   * @return the number of paymentPlan calculations
+   */
+  public long getPaymentPlanCalculations() {
+    return paymentPlanCalculations.sum();
+  }
+
+  /**
+   * @return the number of paymentPlan calculations that fell back to BigDecimal
+   */
+  public long getPaymentPlanFallbacks() {
+    return paymentPlanFallbacks.sum();
+  }
+
+  /**
+   * @return the share (0 - 1) of all calculations that fell back to BigDecimal, 0 if nothing is calculated yet
+   */
+  public double getFallbackRate() {
+    long calculations = getAprCalculations() + getPaymentPlanCalculations();
+    return calculations == 0 ? 0 : (double) (getAprFallbacks() + getPaymentPlanFallbacks()) / calculations;
+  }
+
+  @Override
+  public String toString() {
+    return "AdaptivePrecision{effectiveInterestRate: " + getAprCalculations() + " (fallbacks " + getAprFallbacks()
+        + "), paymentPlan: " + getPaymentPlanCalculations() + " (fallbacks " + getPaymentPlanFallbacks() + ")}";
+  }
+
+  /**
+   * @return the rounded apr or null if it cannot be certified in double precision
+   */
+  private static BigDecimal certifiedApr(double[] cashFlow, int decimals) {
+    // with a single sign change the npv has a single root and is decreasing in the rate
+    if (!(cashFlow[0] < 0)) {
+      return null;
+    }
+    for (int i = 1; i < cashFlow.length; i++) {
+      if (!(cashFlow[i] >= 0)) {
+        return null;
+      }
+    }
+    IrrSolver solver = new IrrSolver();
+    double monthly = solver.irr(cashFlow);
+    if (solver.getStatus() != IrrResult.Status.CONVERGED || decimals > 15) {
+      return null;
+    }
+    BigDecimal rounded = new BigDecimal(Financials.apr(monthly)).setScale(decimals, RoundingMode.HALF_UP);
+    double halfStep = 0.5 / Math.pow(10, decimals);
+    double lower = rounded.doubleValue() - halfStep + APR_MARGIN;
+    double upper = rounded.doubleValue() + halfStep - APR_MARGIN;
+    if (!(lower < upper) || lower <= -1) {
+      return null;
+    }
+    double lowerMonthly = Math.pow(1 + lower, 1 / 12d) - 1;
+    double upperMonthly = Math.pow(1 + upper, 1 / 12d) - 1;
+    if (npvLowerBound(cashFlow, lowerMonthly) > 0 && npvUpperBound(cashFlow, upperMonthly) < 0) {
+      return rounded;
+    }
+    return null;
+  }
+
+  private static double npvLowerBound(double[] cashFlow, double rate) {
+    double[] npvAndBound = npvAndBound(cashFlow, rate);
+    return npvAndBound[0] - npvAndBound[1];
+  }
+
+  private static double npvUpperBound(double[] cashFlow, double rate) {
+    double[] npvAndBound = npvAndBound(cashFlow, rate);
+    return npvAndBound[0] + npvAndBound[1];
+  }
+
+  /**
+   * Horner's scheme together with the sum of absolute terms. The error of Horner's scheme is at most
+   * gamma(2n) * sum(|cf[t]| * v^t), the error of v (2 roundings) adds at most gamma(2n) relative to each term
+   * and the error of the cash flow entries (at most 3 roundings) gamma(3), where gamma(k) = k * u / (1 - k * u).
+   * The bound used is twice that, which also covers the rounding of the sum of absolute terms.
+   */
+  private static double[] npvAndBound(double[] cashFlow, double rate) {
+    double v = 1 / (1 + rate);
+    int last = cashFlow.length - 1;
+    double p = cashFlow[last];
+    double abs = Math.abs(cashFlow[last]);
+    for (int i = last - 1; i >= 0; i--) {
+      p = p * v + cashFlow[i];
+      abs = abs * v + Math.abs(cashFlow[i]);
+    }
+    return new double[] {p, 2 * gamma(4 * cashFlow.length + 3) * abs};
+  }
+
+  private static double gamma(int k) {
+    return k * U / (1 - k * U);
+  }
+
+  /**
+   * Bisects the monthly rate of the BigDecimal cash flow until both ends of the bracket give the same
+   * rounded apr
+   */
+  private static BigDecimal bisectApr(int loanAmt, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                      BigDecimal invoiceFee, int decimals) {
+    List<BigDecimal> cashFlow = new ArrayList<>(tenureMonths + 1);
+    PaymentIterator it = PaymentIterator.forLoan(loanAmt, interest, tenureMonths, amFreeMonths, invoiceFee);
+    while (it.hasNext()) {
+      cashFlow.add(it.next().getCacheFlow());
+    }
+    BigDecimal low = BigDecimal.ZERO;
+    BigDecimal high = BigDecimal.ONE;
+    int lowSign = npv(cashFlow, low).signum();
+    if (lowSign == 0) {
+      return BigDecimal.ZERO.setScale(decimals, RoundingMode.HALF_UP);
+    }
+    if (lowSign == npv(cashFlow, high).signum()) {
+      throw new IllegalArgumentException("The cash flow has no monthly irr between 0 and 1");
+    }
+    BigDecimal two = BigDecimal.valueOf(2);
+    for (int i = 0; i < MAX_BISECTIONS && aprRounded(low, decimals).compareTo(aprRounded(high, decimals)) != 0; i++) {
+      BigDecimal mid = low.add(high).divide(two, MC);
+      int sign = npv(cashFlow, mid).signum();
+      if (sign == 0) {
+        return aprRounded(mid, decimals);
+      }
+      if (sign == lowSign) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return aprRounded(low.add(high).divide(two, MC), decimals);
+  }
+
+  private static BigDecimal npv(List<BigDecimal> cashFlow, BigDecimal rate) {
+    BigDecimal v = BigDecimal.ONE.divide(BigDecimal.ONE.add(rate), MC);
+    BigDecimal p = cashFlow.get(cashFlow.size() - 1);
+    for (int i = cashFlow.size() - 2; i >= 0; i--) {
+      p = p.multiply(v, MC).add(cashFlow.get(i), MC);
+    }
+    return p;
+  }
+
+  private static BigDecimal aprRounded(BigDecimal monthly, int decimals) {
+    return BigDecimal.ONE.add(monthly).pow(12, MC).subtract(BigDecimal.ONE).setScale(decimals, RoundingMode.HALF_UP);
+  }
+
+  /**
+   * The plan in double with a running bound of the absolute error of each amount compared to the (exact)
+   * BigDecimal calculation. Each rounded operation adds at most half an ulp of its result, a whole ulp is added
+   * to also cover the rounding of the bounds themselves.
+   *
+   * @return the rounded plan or null if any amount cannot be rounded with certainty
+   */
+  private static ColumnarPaymentPlan roundedPlan(int loanAmount, BigDecimal interest, int tenureMonths,
+                                                 int amFreeMonths, BigDecimal invoiceFee, int decimals) {
+    if (decimals > 15) {
+      return null;
+    }
+    double scale = Math.pow(10, decimals);
+    BigDecimal monthlyInterestBd = interest.divide(TWELVE, Financials.SCALE, RoundingMode.HALF_UP);
+    BigDecimal amFreeCostBd = BigDecimal.valueOf(loanAmount).multiply(interest).divide(TWELVE, Financials.SCALE, RoundingMode.HALF_UP);
+    double monthlyInterest = monthlyInterestBd.doubleValue();
+    double monthlyInterestError = Math.ulp(monthlyInterest);
+    double amFreeCost = amFreeCostBd.doubleValue();
+    double amFreeCostError = Math.ulp(amFreeCost);
+    // BigDecimal.valueOf(double) is the shortest decimal that converts back to the same double
+    double annuity = Financials.monthlyAnnuityAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths);
+    double annuityError = Math.ulp(annuity);
+    double fee = invoiceFee.doubleValue();
+    double feeError = Math.ulp(fee);
+    double roundedFee = round(fee, feeError, scale);
+    if (Double.isNaN(roundedFee) || Double.isNaN(annuity)) {
+      return null;
+    }
+
+    ColumnarPaymentPlan plan = new ColumnarPaymentPlan(tenureMonths + 1);
+    plan.outgoingBalance[0] = loanAmount;
+    plan.cashFlow[0] = -loanAmount;
+    double balance = loanAmount;
+    double balanceError = 0;
+    for (int month = 1; month <= tenureMonths; month++) {
+      boolean amFree = month <= amFreeMonths;
+      double costOfCredit = amFree ? amFreeCost : annuity;
+      double costOfCreditError = amFree ? amFreeCostError : annuityError;
+      double interestAmt = balance * monthlyInterest;
+      double interestError = Math.abs(balance) * monthlyInterestError + balanceError * (monthlyInterest + monthlyInterestError)
+          + Math.ulp(interestAmt);
+      double amortization = costOfCredit - interestAmt;
+      double amortizationError = costOfCreditError + interestError + Math.ulp(amortization);
+      double outgoing = balance - amortization;
+      double outgoingError = balanceError + amortizationError + Math.ulp(outgoing);
+      double cashFlow = costOfCredit + fee;
+      double cashFlowError = costOfCreditError + feeError + Math.ulp(cashFlow);
+
+      plan.month[month] = month;
+      plan.costOfCredit[month] = round(costOfCredit, costOfCreditError, scale);
+      plan.interestAmt[month] = round(interestAmt, interestError, scale);
+      plan.amortization[month] = round(amortization, amortizationError, scale);
+      plan.invoiceFee[month] = roundedFee;
+      plan.outgoingBalance[month] = round(outgoing, outgoingError, scale);
+      plan.cashFlow[month] = round(cashFlow, cashFlowError, scale);
+      if (Double.isNaN(plan.costOfCredit[month] + plan.interestAmt[month] + plan.amortization[month]
+          + plan.outgoingBalance[month] + plan.cashFlow[month])) {
+        return null;
+      }
+      balance = outgoing;
+      balanceError = outgoingError;
+    }
+    return plan;
+  }
+
+  /**
+   * Rounds half up (away from zero at .5 as BigDecimal HALF_UP does)
+   *
+   * @return the rounded value or NaN if value +/- error could round differently
+   */
+  private static double round(double value, double error, double scale) {
+    double scaled = Math.abs(value) * scale;
+    if (!(scaled < 0x1p52)) {
+      return Double.NaN;
+    }
+    double scaledError = error * scale + Math.ulp(scaled);
+    double fraction = scaled - Math.floor(scaled);
+    if (Math.abs(fraction - 0.5) <= scaledError) {
+      return Double.NaN;
+    }
+    double units = Math.floor(scaled + 0.5);
+    if (units == 0) {
+      return 0;
+    }
+    return Math.copySign(units / scale, value);
+  }
+
+  private static ColumnarPaymentPlan bigDecimalPlan(int loanAmount, BigDecimal interest, int tenureMonths,
+                                                    int amFreeMonths, BigDecimal invoiceFee, int decimals) {
+    ColumnarPaymentPlan plan = new ColumnarPaymentPlan(tenureMonths + 1);
+    PaymentIterator it = PaymentIterator.forLoan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+    for (int month = 0; it.hasNext(); month++) {
+      Payment p = it.next();
+      plan.month[month] = p.getMonth();
+      plan.costOfCredit[month] = round(p.getCostOfCredit(), decimals);
+      plan.interestAmt[month] = round(p.getInterestAmt(), decimals);
+      plan.amortization[month] = round(p.getAmortization(), decimals);
+      plan.invoiceFee[month] = round(p.getInvoiceFee(), decimals);
+      plan.outgoingBalance[month] = round(p.getOutgoingBalance(), decimals);
+      plan.cashFlow[month] = round(p.getCacheFlow(), decimals);
+    }
+    return plan;
+  }
+
+  private static double round(BigDecimal value, int decimals) {
+    return value.setScale(decimals, RoundingMode.HALF_UP).doubleValue();
+  }
+}
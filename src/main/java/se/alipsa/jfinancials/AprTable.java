@@ -0,0 +1,391 @@
+package se.alipsa.jfinancials;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A precomputed table of the apr (effective interest rate) of a product, i.e. a nominal interest rate and an
+ * invoice fee, over a grid of loan amounts x tenures x amortization free months, for interactive quoting.
+ *
+ * <p>Between the grid points the apr is interpolated bilinearly over amount and tenure (the amortization free
+ * months must be one of the grid values). Each cell has an estimated error bound from exact aprs at the
+ * midpoints of its edges: the deviation of a linear interpolation at the midpoint of an edge is h^2/8 times the
+ * second derivative along the edge, so if the second derivatives were constant over the cell the error would
+ * be within the sum of the largest amount and tenure edge deviations. The estimate is twice that sum to leave
+ * room for the curvature varying over the cell. It is an estimate, not a guarantee, since the apr is only
+ * sampled at the corners and edge midpoints of a cell.</p>
+ *
+ * <p>A lookup outside the grid, between amortization free months or in a cell whose estimated error bound
+ * exceeds the tolerance of the table is calculated exactly with effectiveInterestRate instead. A table is
+ * immutable and thread safe.</p>
+ */
+public final class AprTable {
+
+  static final int MAGIC = 0x4A464154; // JFAT
+  static final int VERSION = 1;
+  /* the margin of the estimated error bound over the second order estimate */
+  private static final double ESTIMATE_MARGIN = 2;
+
+  private final double interest;
+  private final int invoiceFee;
+  private final double tolerance;
+  private final int[] loanAmounts;
+  private final int[] tenureMonths;
+  private final int[] amFreeMonths;
+  /* the apr of (amFree f, amount a, tenure t) at index (f * loanAmounts.length + a) * tenureMonths.length + t */
+  private final double[] aprs;
+  /* the estimated error bound of the cell from (f, a, t) to (f, a + 1, t + 1), indexed as aprs with one less
+   * amount and tenure */
+  private final double[] errorBounds;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder exactFallbacks = new LongAdder();
+
+  private AprTable(double interest, int invoiceFee, double tolerance, int[] loanAmounts, int[] tenureMonths,
+                   int[] amFreeMonths, double[] aprs, double[] errorBounds) {
+    this.interest = interest;
+    this.invoiceFee = invoiceFee;
+    this.tolerance = tolerance;
+    this.loanAmounts = loanAmounts;
+    this.tenureMonths = tenureMonths;
+    this.amFreeMonths = amFreeMonths;
+    this.aprs = aprs;
+    this.errorBounds = errorBounds;
+  }
+
+  /**
+   * Build the table in the common ForkJoinPool
+   *
+   * @see #build(double, int, int[], int[], int[], double, ForkJoinPool)
+   */
+  public static AprTable build(double interest, int invoiceFee, int[] loanAmounts, int[] tenureMonths,
+                               int[] amFreeMonths, double tolerance) {
+    return build(interest, invoiceFee, loanAmounts, tenureMonths, amFreeMonths, tolerance, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Calculate the aprs of the grid, and of the edge midpoints for the estimated error bounds, in parallel
+   *
+   * @param interest the nominal yearly interest of the product
+   * @param invoiceFee the invoice fee of the product
+   * @param loanAmounts the loan amounts (*INCLUDING* startupfee) of the grid, at least 2 in increasing order
+   * @param tenureMonths the tenures of the grid, at least 2 in increasing order
+   * @param amFreeMonths the amortization free months of the grid in increasing order
+   * @param tolerance the max estimated error bound of a cell for its aprs to be interpolated, e.g. 0.00005
+   * @param pool the pool to run in
+   * @return the table
+   */
+  public static AprTable build(double interest, int invoiceFee, int[] loanAmounts, int[] tenureMonths,
+                               int[] amFreeMonths, double tolerance, ForkJoinPool pool) {
+    checkAxis("loanAmounts", loanAmounts, 2);
+    checkAxis("tenureMonths", tenureMonths, 2);
+    checkAxis("amFreeMonths", amFreeMonths, 1);
+    int nA = loanAmounts.length;
+    int nT = tenureMonths.length;
+    int nF = amFreeMonths.length;
+    int nodes = nF * nA * nT;
+    int amountEdges = nF * (nA - 1) * nT;
+    int tenureEdges = nF * nA * (nT - 1);
+    int size = nodes + amountEdges + tenureEdges;
+    int[] amounts = new int[size];
+    int[] tenures = new int[size];
+    int[] amFrees = new int[size];
+    int i = 0;
+    for (int f = 0; f < nF; f++) {
+      for (int a = 0; a < nA; a++) {
+        for (int t = 0; t < nT; t++, i++) {
+          amounts[i] = loanAmounts[a];
+          tenures[i] = tenureMonths[t];
+          amFrees[i] = amFreeMonths[f];
+        }
+      }
+    }
+    for (int f = 0; f < nF; f++) {
+      for (int a = 0; a < nA - 1; a++) {
+        for (int t = 0; t < nT; t++, i++) {
+          amounts[i] = midpoint(loanAmounts[a], loanAmounts[a + 1]);
+          tenures[i] = tenureMonths[t];
+          amFrees[i] = amFreeMonths[f];
+        }
+      }
+    }
+    for (int f = 0; f < nF; f++) {
+      for (int a = 0; a < nA; a++) {
+        for (int t = 0; t < nT - 1; t++, i++) {
+          amounts[i] = loanAmounts[a];
+          tenures[i] = midpoint(tenureMonths[t], tenureMonths[t + 1]);
+          amFrees[i] = amFreeMonths[f];
+        }
+      }
+    }
+    double[] interests = new double[size];
+    Arrays.fill(interests, interest);
+    int[] fees = new int[size];
+    Arrays.fill(fees, invoiceFee);
+    double[] result = new double[size];
+    Financials.effectiveInterestRates(amounts, interests, tenures, amFrees, fees, result, pool);
+
+    double[] aprs = Arrays.copyOf(result, nodes);
+    double[] errorBounds = new double[nF * (nA - 1) * (nT - 1)];
+    for (int f = 0; f < nF; f++) {
+      for (int a = 0; a < nA - 1; a++) {
+        for (int t = 0; t < nT - 1; t++) {
+          double amountDeviation = Math.max(
+              amountEdgeDeviation(aprs, result, nodes, loanAmounts, nT, f, a, t),
+              amountEdgeDeviation(aprs, result, nodes, loanAmounts, nT, f, a, t + 1));
+          double tenureDeviation = Math.max(
+              tenureEdgeDeviation(aprs, result, nodes + amountEdges, tenureMonths, nA, nT, f, a, t),
+              tenureEdgeDeviation(aprs, result, nodes + amountEdges, tenureMonths, nA, nT, f, a + 1, t));
+          // NaN (no apr) makes the cell fall back to the exact calculation
+          errorBounds[(f * (nA - 1) + a) * (nT - 1) + t] = ESTIMATE_MARGIN * (amountDeviation + tenureDeviation);
+        }
+      }
+    }
+    return new AprTable(interest, invoiceFee, tolerance, loanAmounts.clone(), tenureMonths.clone(),
+        amFreeMonths.clone(), aprs, errorBounds);
+  }
+
+  /**
+   * The apr of the loan, interpolated if within the grid and the estimated error bound of its cell is within the
+   * tolerance, otherwise calculated exactly
+   *
+   * @param loanAmount *INCLUDING* startupfee
+   * @param tenureMonths the tenure in months
+   * @param amFreeMonths number of amortization free months
+   * @return the effective interest rate
+   */
+  public double apr(int loanAmount, int tenureMonths, int amFreeMonths) {
+    lookups.increment();
+    int f = Arrays.binarySearch(this.amFreeMonths, amFreeMonths);
+    int a = cell(loanAmounts, loanAmount);
+    int t = cell(this.tenureMonths, tenureMonths);
+    if (f < 0 || a < 0 || t < 0 || !(cellErrorBound(f, a, t) <= tolerance)) {
+      exactFallbacks.increment();
+      return exactApr(loanAmount, tenureMonths, amFreeMonths);
+    }
+    return interpolate(f, a, t, loanAmount, tenureMonths);
+  }
+
+  /**
+   * @return the estimated error bound of the cell containing the loan or NaN if the loan is outside the grid
+   */
+  public double estimatedErrorBound(int loanAmount, int tenureMonths, int amFreeMonths) {
+    int f = Arrays.binarySearch(this.amFreeMonths, amFreeMonths);
+    int a = cell(loanAmounts, loanAmount);
+    int t = cell(this.tenureMonths, tenureMonths);
+    if (f < 0 || a < 0 || t < 0) {
+      return Double.NaN;
+    }
+    return cellErrorBound(f, a, t);
+  }
+
+  /**
+   * @return the largest estimated error bound of all cells
+   */
+  public double getMaxEstimatedErrorBound() {
+    double max = 0;
+    for (double bound : errorBounds) {
+      max = Math.max(max, bound);
+    }
+    return max;
+  }
+
+  /**
+   * @return the number of cells whose estimated error bound exceeds the tolerance, i.e. where lookups are calculated exactly
+   */
+  public int getCellsExceedingTolerance() {
+    int count = 0;
+    for (double bound : errorBounds) {
+      if (!(bound <= tolerance)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public double getInterest() {
+    return interest;
+  }
+
+  public int getInvoiceFee() {
+    return invoiceFee;
+  }
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * @return the number of lookups (calls to apr)
+   */
+  public long getLookups() {
+    return lookups.sum();
+  }
+
+  /**
+   * @return the number of lookups that were calculated exactly instead of interpolated
+   */
+  public long getExactFallbacks() {
+    return exactFallbacks.sum();
+  }
+
+  /**
+   * Write the table in a compact binary format (the grid, the aprs and the estimated error bounds)
+   *
+   * @param out where to write, e.g. a DataOutputStream
+   * @throws IOException if writing fails
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeDouble(interest);
+    out.writeInt(invoiceFee);
+    out.writeDouble(tolerance);
+    writeAxis(out, loanAmounts);
+    writeAxis(out, tenureMonths);
+    writeAxis(out, amFreeMonths);
+    for (double apr : aprs) {
+      out.writeDouble(apr);
+    }
+    for (double bound : errorBounds) {
+      out.writeDouble(bound);
+    }
+  }
+
+  /**
+   * Read a table written by write(DataOutput)
+   *
+   * @param in where to read from, e.g. a DataInputStream
+   * @return the table
+   * @throws IOException if reading fails or the data is not an AprTable
+   */
+  public static AprTable read(DataInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not an apr table");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported apr table version " + version);
+    }
+    double interest = in.readDouble();
+    int invoiceFee = in.readInt();
+    double tolerance = in.readDouble();
+    int[] loanAmounts = readAxis(in, 2);
+    int[] tenureMonths = readAxis(in, 2);
+    int[] amFreeMonths = readAxis(in, 1);
+    int nA = loanAmounts.length;
+    int nT = tenureMonths.length;
+    int nF = amFreeMonths.length;
+    double[] aprs = new double[nF * nA * nT];
+    for (int i = 0; i < aprs.length; i++) {
+      aprs[i] = in.readDouble();
+    }
+    double[] errorBounds = new double[nF * (nA - 1) * (nT - 1)];
+    for (int i = 0; i < errorBounds.length; i++) {
+      errorBounds[i] = in.readDouble();
+    }
+    return new AprTable(interest, invoiceFee, tolerance, loanAmounts, tenureMonths, amFreeMonths, aprs, errorBounds);
+  }
+
+  @Override
+  public String toString() {
+    return "AprTable{interest=" + interest + ", invoiceFee=" + invoiceFee + ", grid=" + loanAmounts.length + "x"
+        + tenureMonths.length + "x" + amFreeMonths.length + ", maxEstimatedErrorBound=" + getMaxEstimatedErrorBound()
+        + ", lookups=" + getLookups() + ", exactFallbacks=" + getExactFallbacks() + '}';
+  }
+
+  private double exactApr(int loanAmount, int tenureMonths, int amFreeMonths) {
+    return Financials.effectiveInterestRate(loanAmount, BigDecimal.valueOf(interest), tenureMonths, amFreeMonths,
+        invoiceFee);
+  }
+
+  private double cellErrorBound(int f, int a, int t) {
+    return errorBounds[(f * (loanAmounts.length - 1) + a) * (tenureMonths.length - 1) + t];
+  }
+
+  private double interpolate(int f, int a, int t, int loanAmount, int tenure) {
+    int nT = tenureMonths.length;
+    int base = (f * loanAmounts.length + a) * nT + t;
+    double wa = weight(loanAmounts, a, loanAmount);
+    double wt = weight(tenureMonths, t, tenure);
+    double low = aprs[base] + wt * (aprs[base + 1] - aprs[base]);
+    double high = aprs[base + nT] + wt * (aprs[base + nT + 1] - aprs[base + nT]);
+    return low + wa * (high - low);
+  }
+
+  /**
+   * @return the index of the grid value at or below the value such that there is a grid value above it,
+   * or -1 if the value is outside the grid
+   */
+  private static int cell(int[] axis, int value) {
+    if (value < axis[0] || value > axis[axis.length - 1]) {
+      return -1;
+    }
+    int i = Arrays.binarySearch(axis, value);
+    if (i < 0) {
+      i = -i - 2;
+    }
+    return Math.min(i, axis.length - 2);
+  }
+
+  private static double weight(int[] axis, int i, int value) {
+    return (double) (value - axis[i]) / (axis[i + 1] - axis[i]);
+  }
+
+  private static int midpoint(int low, int high) {
+    return low + (high - low) / 2;
+  }
+
+  private static double amountEdgeDeviation(double[] aprs, double[] result, int offset, int[] loanAmounts, int nT,
+                                            int f, int a, int t) {
+    int nA = loanAmounts.length;
+    double low = aprs[(f * nA + a) * nT + t];
+    double high = aprs[(f * nA + a + 1) * nT + t];
+    double exact = result[offset + (f * (nA - 1) + a) * nT + t];
+    double w = weight(loanAmounts, a, midpoint(loanAmounts[a], loanAmounts[a + 1]));
+    return Math.abs(exact - (low + w * (high - low)));
+  }
+
+  private static double tenureEdgeDeviation(double[] aprs, double[] result, int offset, int[] tenureMonths, int nA,
+                                            int nT, int f, int a, int t) {
+    double low = aprs[(f * nA + a) * nT + t];
+    double high = aprs[(f * nA + a) * nT + t + 1];
+    double exact = result[offset + (f * nA + a) * (nT - 1) + t];
+    double w = weight(tenureMonths, t, midpoint(tenureMonths[t], tenureMonths[t + 1]));
+    return Math.abs(exact - (low + w * (high - low)));
+  }
+
+  private static void checkAxis(String name, int[] axis, int minLength) {
+    if (axis.length < minLength) {
+      throw new IllegalArgumentException(name + " must have at least " + minLength + " values");
+    }
+    for (int i = 1; i < axis.length; i++) {
+      if (axis[i] <= axis[i - 1]) {
+        throw new IllegalArgumentException(name + " must be in increasing order");
+      }
+    }
+  }
+
+  private static void writeAxis(DataOutput out, int[] axis) throws IOException {
+    out.writeInt(axis.length);
+    for (int value : axis) {
+      out.writeInt(value);
+    }
+  }
+
+  private static int[] readAxis(DataInput in, int minLength) throws IOException {
+    int length = in.readInt();
+    if (length < minLength || length > 1 << 20) {
+      throw new IOException("Invalid axis length " + length);
+    }
+    int[] axis = new int[length];
+    for (int i = 0; i < length; i++) {
+      axis[i] = in.readInt();
+    }
+    return axis;
+  }
+}
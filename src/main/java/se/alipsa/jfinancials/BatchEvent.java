@@ -0,0 +1,26 @@
+package se.alipsa.jfinancials;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a (parallel) batch calculation
+ */
+@Name("se.alipsa.jfinancials.Batch")
+@Label("Batch")
+@Category("jfinancials")
+@Description("A parallel calculation of many results")
+class BatchEvent extends Event {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Size")
+  int size;
+
+  @Label("Parallelism")
+  int parallelism;
+}
@@ -0,0 +1,79 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates irr (or apr) for a range of loans given as parallel arrays. The range is split in half until it is
+ * small enough to be computed sequentially; each leaf reuses one IrrSolver and one cash flow buffer for all of
+ * its loans so nothing is allocated per loan.
+ */
+class BatchIrrTask extends RecursiveAction {
+
+  /** Never split below this number of loans, the fork overhead would dominate */
+  private static final int MIN_LEAF_SIZE = 64;
+
+  private final int[] loanAmounts;
+  private final double[] interests;
+  private final int[] tenureMonths;
+  private final int[] amFreeMonths;
+  private final int[] invoiceFees;
+  private final double[] result;
+  private final boolean apr;
+  private final int leafSize;
+  private final int from;
+  private final int to;
+
+  private BatchIrrTask(int[] loanAmounts, double[] interests, int[] tenureMonths, int[] amFreeMonths,
+                       int[] invoiceFees, double[] result, boolean apr, int leafSize, int from, int to) {
+    this.loanAmounts = loanAmounts;
+    this.interests = interests;
+    this.tenureMonths = tenureMonths;
+    this.amFreeMonths = amFreeMonths;
+    this.invoiceFees = invoiceFees;
+    this.result = result;
+    this.apr = apr;
+    this.leafSize = leafSize;
+    this.from = from;
+    this.to = to;
+  }
+
+  static BatchIrrTask create(int[] loanAmounts, double[] interests, int[] tenureMonths, int[] amFreeMonths,
+                             int[] invoiceFees, double[] result, boolean apr, int parallelism) {
+    int size = loanAmounts.length;
+    if (interests.length != size || tenureMonths.length != size || amFreeMonths.length != size
+        || invoiceFees.length != size || result.length != size) {
+      throw new IllegalArgumentException("All arrays must have the same length (" + size + ")");
+    }
+    // Aim for a few leaves per thread so that work stealing can even out differences in tenure
+    int leafSize = Math.max(MIN_LEAF_SIZE, size / (parallelism * 8));
+    return new BatchIrrTask(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, result, apr,
+        leafSize, 0, size);
+  }
+
+  @Override
+  protected void compute() {
+    if (to - from <= leafSize) {
+      computeDirectly();
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    invokeAll(
+        new BatchIrrTask(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, result, apr, leafSize, from, mid),
+        new BatchIrrTask(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, result, apr, leafSize, mid, to)
+    );
+  }
+
+  private void computeDirectly() {
+    int maxTenure = 0;
+    for (int i = from; i < to; i++) {
+      maxTenure = Math.max(maxTenure, tenureMonths[i]);
+    }
+    double[] buffer = new double[maxTenure + 1];
+    IrrSolver solver = new IrrSolver();
+    for (int i = from; i < to; i++) {
+      Financials.cashFlow(loanAmounts[i], interests[i], tenureMonths[i], amFreeMonths[i], invoiceFees[i], buffer);
+      double irr = solver.irr(buffer, 0, tenureMonths[i] + 1);
+      result[i] = apr ? Financials.apr(irr) : irr;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package se.alipsa.jfinancials;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Same as PeriodicNpv but reading the cash flow from a DoubleBuffer (e.g. a memory mapped CashFlowStore)
+ * using absolute gets, so the buffer is never copied and can be shared between threads.
+ */
+class BufferNpv implements NpvFunction {
+
+  private DoubleBuffer cashFlow;
+  private int offset;
+  private int length;
+  private double derivative;
+
+  BufferNpv cashFlow(DoubleBuffer cashFlow, int offset, int length) {
+    this.cashFlow = cashFlow;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  @Override
+  public double evaluate(double rate) {
+    double v = 1 / (1 + rate);
+    int last = offset + length - 1;
+    double p = cashFlow.get(last);
+    double dp = 0;
+    for (int i = last - 1; i >= offset; i--) {
+      dp = dp * v + p;
+      p = p * v + cashFlow.get(i);
+    }
+    derivative = -dp * v * v;
+    return p;
+  }
+
+  @Override
+  public double derivative() {
+    return derivative;
+  }
+
+  @Override
+  public int signChanges() {
+    int changes = 0;
+    double last = 0;
+    for (int i = offset; i < offset + length && changes < 2; i++) {
+      double cf = cashFlow.get(i);
+      if (cf != 0) {
+        if (last != 0 && (cf > 0) != (last > 0)) {
+          changes++;
+        }
+        last = cf;
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * The npv at time 0 of the length entries from offset where the first entry is not discounted
+   */
+  static double npv(DoubleBuffer cashFlow, int offset, int length, double rate) {
+    if (length == 0) {
+      return 0;
+    }
+    double v = 1 / (1 + rate);
+    double p = cashFlow.get(offset + length - 1);
+    for (int i = offset + length - 2; i >= offset; i--) {
+      p = p * v + cashFlow.get(i);
+    }
+    return p;
+  }
+}
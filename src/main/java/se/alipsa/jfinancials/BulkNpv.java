@@ -0,0 +1,95 @@
+package se.alipsa.jfinancials;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates npv (with the same semantics as Financials.npv(double[], double), i.e. the first cash flow is
+ * discounted one period) for many rates or many loans at once.
+ *
+ * <p>When the jdk.incubator.vector module is available (start the jvm with
+ * --add-modules jdk.incubator.vector) the sums are evaluated several rates or loans per instruction using the
+ * vector api, otherwise (or if the system property jfinancials.vector is set to false) plain java is used.
+ * Both give the same result within rounding.</p>
+ */
+public final class BulkNpv {
+
+  private static final BulkNpvKernel KERNEL = loadKernel();
+
+  private BulkNpv() {}
+
+  /**
+   * Calculate the npv of one cash flow for each of the rates, e.g. to scan for the irr or build an npv profile
+   *
+   * @param cashFlow the cash flow, the first entry is discounted one period
+   * @param rates the rates to discount with
+   * @param result an array of the same length as rates where the npv of each rate is written
+   */
+  public static void npv(double[] cashFlow, double[] rates, double[] result) {
+    if (result.length != rates.length) {
+      throw new IllegalArgumentException("result must have the same length as rates (" + rates.length + ")");
+    }
+    if (cashFlow.length == 0) {
+      Arrays.fill(result, 0);
+      return;
+    }
+    KERNEL.npvForRates(cashFlow, rates, result);
+  }
+
+  /**
+   * Calculate the npv of many loans of equal length, each with its own rate. The cash flows are stored period
+   * major, i.e. the cash flow of loan j in period t is at cashFlows[t * loans + j], so that the same period of
+   * consecutive loans is contiguous in memory.
+   *
+   * @param cashFlows the cash flows of all loans, length must be a multiple of the number of loans
+   * @param loans the number of loans
+   * @param rates the rate of each loan
+   * @param result an array of length loans where the npv of each loan is written
+   */
+  public static void npv(double[] cashFlows, int loans, double[] rates, double[] result) {
+    if (loans <= 0 || cashFlows.length % loans != 0) {
+      throw new IllegalArgumentException("The length of cashFlows (" + cashFlows.length
+          + ") must be a multiple of the number of loans (" + loans + ")");
+    }
+    if (rates.length != loans || result.length != loans) {
+      throw new IllegalArgumentException("rates and result must have length " + loans);
+    }
+    KERNEL.npvForLoans(cashFlows, loans, rates, result);
+  }
+
+  /**
+   * The dot product of length entries of x and y from the offsets given, see DiscountCurve
+   */
+  static double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+    return KERNEL.dot(x, xOffset, y, yOffset, length);
+  }
+
+  /**
+   * The dot product of each loan of the period major cashFlows with the factors from factorOffset, see DiscountCurve
+   */
+  static void dotForLoans(double[] cashFlows, int loans, double[] factors, int factorOffset, double[] result) {
+    KERNEL.dotForLoans(cashFlows, loans, factors, factorOffset, result);
+  }
+
+  /**
+   * @return true if the vector api is used
+   */
+  public static boolean isVectorized() {
+    return !(KERNEL instanceof ScalarNpvKernel);
+  }
+
+  /**
+   * @return the vector kernel if the jdk.incubator.vector module is available (and not disabled), else the scalar one
+   */
+  static BulkNpvKernel loadKernel() {
+    if (!Boolean.parseBoolean(System.getProperty("jfinancials.vector", "true"))
+        || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return new ScalarNpvKernel();
+    }
+    try {
+      return (BulkNpvKernel) Class.forName("se.alipsa.jfinancials.VectorNpvKernel")
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return new ScalarNpvKernel();
+    }
+  }
+}
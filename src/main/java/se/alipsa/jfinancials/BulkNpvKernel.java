@@ -0,0 +1,22 @@
+package se.alipsa.jfinancials;
+
+/**
+ * Evaluates many npv sums at once, see BulkNpv for the semantics.
+ */
+interface BulkNpvKernel {
+
+  void npvForRates(double[] cashFlow, double[] rates, double[] result);
+
+  void npvForLoans(double[] cashFlows, int loans, double[] rates, double[] result);
+
+  /**
+   * @return the sum of x[xOffset + i] * y[yOffset + i] for i = 0..length - 1
+   */
+  double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+  /**
+   * Writes the sum over t of cashFlows[t * loans + j] * factors[factorOffset + t] to result[j] for each loan j,
+   * the cash flows are period major as in npvForLoans
+   */
+  void dotForLoans(double[] cashFlows, int loans, double[] factors, int factorOffset, double[] result);
+}
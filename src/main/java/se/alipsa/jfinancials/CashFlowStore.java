@@ -0,0 +1,258 @@
+package se.alipsa.jfinancials;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A read only, memory mapped file of cash flows written by a CashFlowStoreWriter. The cash flows are read
+ * directly from the mapped file (no copies into the heap) so a portfolio larger than the heap can be processed.
+ * The data is mapped in windows (1 GiB by default) overlapping by the longest cash flow, so each cash flow is
+ * contained in a single window. An open store is immutable and safe to use from several threads.
+ */
+public final class CashFlowStore implements Closeable {
+
+  /** The maximum number of cash flows in a store (the index must fit in one mapped buffer) */
+  static final int MAX_COUNT = Integer.MAX_VALUE / Long.BYTES - 1;
+
+  /** The default size in bytes of each mapped window of cash flow data */
+  public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+  private final FileChannel channel;
+  private final int count;
+  private final int maxLength;
+  private final LongBuffer index;
+  private final DoubleBuffer[] windows;
+  private final long windowLength;
+
+  private CashFlowStore(FileChannel channel, int windowSize) throws IOException {
+    this.channel = channel;
+    ByteBuffer header = ByteBuffer.allocate(CashFlowStoreWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new IOException("Not a cash flow store, the file is too short");
+      }
+    }
+    header.flip();
+    if (header.getInt() != CashFlowStoreWriter.MAGIC) {
+      throw new IOException("Not a cash flow store (wrong magic number)");
+    }
+    int version = header.getInt();
+    if (version != CashFlowStoreWriter.VERSION) {
+      throw new IOException("Unsupported cash flow store version " + version);
+    }
+    count = header.getInt();
+    maxLength = header.getInt();
+    long indexPosition = header.getLong();
+    index = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition, (long) (count + 1) * Long.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+    if (windowSize % Double.BYTES != 0 || (long) windowSize + (long) maxLength * Double.BYTES > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The window size must be a multiple of 8 and leave room for the longest "
+          + "cash flow (" + maxLength + " values) within 2 GiB but was " + windowSize);
+    }
+    long dataSize = indexPosition - CashFlowStoreWriter.HEADER_SIZE;
+    windowLength = windowSize / Double.BYTES;
+    windows = new DoubleBuffer[(int) Math.max(1, (dataSize + windowSize - 1) / windowSize)];
+    for (int w = 0; w < windows.length; w++) {
+      long start = (long) w * windowSize;
+      long size = Math.min((long) windowSize + (long) maxLength * Double.BYTES, dataSize - start);
+      windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, CashFlowStoreWriter.HEADER_SIZE + start, size)
+          .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+  }
+
+  /**
+   * Open (memory map) a store created by a CashFlowStoreWriter
+   *
+   * @param path the store file
+   * @return the opened store
+   * @throws IOException if the file cannot be read or is not a cash flow store
+   */
+  public static CashFlowStore open(Path path) throws IOException {
+    return open(path, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Open (memory map) a store created by a CashFlowStoreWriter using mapped windows of the size given
+   *
+   * @param path the store file
+   * @param windowSize the size in bytes of each mapped window, a multiple of 8
+   * @return the opened store
+   * @throws IOException if the file cannot be read or is not a cash flow store
+   */
+  public static CashFlowStore open(Path path, int windowSize) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new CashFlowStore(channel, windowSize);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the number of cash flows in the store
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the length of the longest cash flow
+   */
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * @param i the index of the cash flow
+   * @return the number of entries in the cash flow
+   */
+  public int length(int i) {
+    checkIndex(i);
+    return (int) (index.get(i + 1) - index.get(i));
+  }
+
+  /**
+   * @param i the index of the cash flow
+   * @param t the period
+   * @return the value of period t of cash flow i
+   */
+  public double get(int i, int t) {
+    if (t < 0 || t >= length(i)) {
+      throw new IndexOutOfBoundsException("Period " + t + " is outside of cash flow " + i + " of length " + length(i));
+    }
+    long start = index.get(i);
+    return window(start).get(offset(start) + t);
+  }
+
+  /**
+   * A read only view (not a copy) of a cash flow
+   *
+   * @param i the index of the cash flow
+   * @return a DoubleBuffer with position 0 and limit the length of the cash flow
+   */
+  public DoubleBuffer cashFlow(int i) {
+    int length = length(i);
+    long start = index.get(i);
+    return window(start).slice(offset(start), length).asReadOnlyBuffer();
+  }
+
+  /**
+   * Same as Financials.npv(double[], double), i.e. the first value is discounted one period
+   *
+   * @param i the index of the cash flow
+   * @param rate the interest rate per period
+   * @return the net present value
+   */
+  public double npv(int i, double rate) {
+    int length = length(i);
+    long start = index.get(i);
+    return BufferNpv.npv(window(start), offset(start), length, rate) / (1 + rate);
+  }
+
+  /**
+   * @param i the index of the cash flow
+   * @return the internal rate of return per period
+   */
+  public double irr(int i) {
+    return irr(i, new IrrSolver());
+  }
+
+  /**
+   * Calculate the irr of a cash flow using the solver given, which should be reused when iterating over the store
+   *
+   * @param i the index of the cash flow
+   * @param solver the solver to use
+   * @return the internal rate of return per period
+   */
+  public double irr(int i, IrrSolver solver) {
+    int length = length(i);
+    long start = index.get(i);
+    return solver.irr(window(start), offset(start), length);
+  }
+
+  /**
+   * Calculate the irr of all cash flows in parallel using the common fork join pool
+   *
+   * @param result an array of length size() where the irr of each cash flow is written
+   */
+  public void irr(double[] result) {
+    irr(result, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Calculate the irr of all cash flows in parallel
+   *
+   * @param result an array of length size() where the irr of each cash flow is written
+   * @param pool the pool to run in
+   */
+  public void irr(double[] result, ForkJoinPool pool) {
+    if (result.length != count) {
+      throw new IllegalArgumentException("The result must have the same length as the store (" + count + ")");
+    }
+    Instrumentation.batch("cashFlowStoreIrr", count, pool,
+        new StoreIrrTask(result, Math.max(64, count / (pool.getParallelism() * 8)), 0, count));
+  }
+
+  /**
+   * Unmapping is left to the garbage collector, buffers from cashFlow(int) stay readable after close.
+   *
+   * @throws IOException if closing the file fails
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private DoubleBuffer window(long start) {
+    return windows[(int) (start / windowLength)];
+  }
+
+  private int offset(long start) {
+    return (int) (start % windowLength);
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= count) {
+      throw new IndexOutOfBoundsException("Cash flow " + i + " is outside of the store of size " + count);
+    }
+  }
+
+  private class StoreIrrTask extends RecursiveAction {
+
+    private final double[] result;
+    private final int leafSize;
+    private final int from;
+    private final int to;
+
+    StoreIrrTask(double[] result, int leafSize, int from, int to) {
+      this.result = result;
+      this.leafSize = leafSize;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= leafSize) {
+        IrrSolver solver = new IrrSolver();
+        for (int i = from; i < to; i++) {
+          result[i] = irr(i, solver);
+        }
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new StoreIrrTask(result, leafSize, from, mid), new StoreIrrTask(result, leafSize, mid, to));
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package se.alipsa.jfinancials;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes cash flows to a file that can be memory mapped using CashFlowStore.open(Path).
+ * The cash flows are streamed to disk through a fixed size buffer, only the index (one long per cash flow)
+ * is kept in memory until the store is closed. Not thread safe.
+ *
+ * <p>The file layout (little endian) is a header of magic (int), version (int), count (int),
+ * max length (int) and index position (long), followed by all cash flows as contiguous doubles and finally the
+ * index: count + 1 longs with the position (in doubles from the start of the data) of each cash flow.</p>
+ */
+public final class CashFlowStoreWriter implements Closeable {
+
+  static final int MAGIC = 0x4A464346; // JFCF
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+  private long[] index = new long[1024];
+  private int count;
+  private int maxLength;
+  private long position;
+  private boolean closed;
+
+  /**
+   * Create (or replace) the store file
+   *
+   * @param path the file to write
+   * @throws IOException if the file cannot be created
+   */
+  public CashFlowStoreWriter(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    channel.position(HEADER_SIZE);
+  }
+
+  /**
+   * Append a cash flow
+   *
+   * @param cashFlow the cash flow to add
+   * @return the index of the cash flow in the store
+   * @throws IOException if writing fails
+   */
+  public int add(double[] cashFlow) throws IOException {
+    return add(cashFlow, 0, cashFlow.length);
+  }
+
+  /**
+   * Append cashFlow[offset] .. cashFlow[offset + length - 1]
+   *
+   * @param cashFlow the array containing the cash flow
+   * @param offset the index of the first entry
+   * @param length the number of entries, at least 1
+   * @return the index of the cash flow in the store
+   * @throws IOException if writing fails
+   */
+  public int add(double[] cashFlow, int offset, int length) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The store is closed");
+    }
+    if (length < 1) {
+      throw new IllegalArgumentException("A cash flow must have at least one entry but length was " + length);
+    }
+    if (offset < 0 || offset > cashFlow.length - length) {
+      throw new IllegalArgumentException("offset " + offset + " and length " + length
+          + " are outside of the cash flow array of length " + cashFlow.length);
+    }
+    if (count + 1 >= CashFlowStore.MAX_COUNT) {
+      throw new IllegalStateException("The store is full (" + count + " cash flows)");
+    }
+    if (count + 1 >= index.length) {
+      index = Arrays.copyOf(index, index.length * 2);
+    }
+    index[count] = position;
+    for (int i = offset; i < offset + length; i++) {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.putDouble(cashFlow[i]);
+    }
+    position += length;
+    maxLength = Math.max(maxLength, length);
+    return count++;
+  }
+
+  /**
+   * @return the number of cash flows added so far
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Write the index and header and close the file
+   *
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      index[count] = position;
+      long indexPosition = HEADER_SIZE + position * Double.BYTES;
+      for (int i = 0; i <= count; i++) {
+        if (buffer.remaining() < Long.BYTES) {
+          drain();
+        }
+        buffer.putLong(index[i]);
+      }
+      drain();
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(maxLength).putLong(indexPosition);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, buffer.position());
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
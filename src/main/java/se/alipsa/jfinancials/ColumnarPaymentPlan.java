@@ -0,0 +1,227 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A payment plan stored column wise in primitive arrays (one array per Payment attribute) instead of as a
+ * List of Payment objects with BigDecimal values. A 480 month plan is then 7 arrays instead of thousands of
+ * objects. The plan is immutable, the column accessors return copies, so an instance can be shared freely
+ * between threads. Use asPaymentList() or toPaymentPlan() where a List of Payment is expected.
+ */
+public final class ColumnarPaymentPlan {
+
+  final int[] month;
+  final double[] costOfCredit;
+  final double[] interestAmt;
+  final double[] amortization;
+  final double[] invoiceFee;
+  final double[] outgoingBalance;
+  final double[] cashFlow;
+  /* the terms the plan was calculated with, see PaymentPlan.setTerms */
+  private BigDecimal interest;
+  private int amFreeMonths;
+  private BigDecimal termInvoiceFee;
+
+  ColumnarPaymentPlan(int size) {
+    month = new int[size];
+    costOfCredit = new double[size];
+    interestAmt = new double[size];
+    amortization = new double[size];
+    invoiceFee = new double[size];
+    outgoingBalance = new double[size];
+    cashFlow = new double[size];
+  }
+
+  /**
+   * Create a columnar copy of an existing payment plan, including the terms if it is a PaymentPlan
+   *
+   * @param paymentPlan the List of Payment to copy
+   * @return a new ColumnarPaymentPlan with the same values (as doubles)
+   */
+  public static ColumnarPaymentPlan of(List<Payment> paymentPlan) {
+    ColumnarPaymentPlan plan = new ColumnarPaymentPlan(paymentPlan.size());
+    for (int i = 0; i < plan.size(); i++) {
+      Payment p = paymentPlan.get(i);
+      plan.month[i] = p.getMonth();
+      plan.costOfCredit[i] = p.getCostOfCredit().doubleValue();
+      plan.interestAmt[i] = p.getInterestAmt().doubleValue();
+      plan.amortization[i] = p.getAmortization().doubleValue();
+      plan.invoiceFee[i] = p.getInvoiceFee().doubleValue();
+      plan.outgoingBalance[i] = p.getOutgoingBalance().doubleValue();
+      plan.cashFlow[i] = p.getCacheFlow().doubleValue();
+    }
+    if (paymentPlan instanceof PaymentPlan pp) {
+      plan.setTerms(pp.getInterest(), pp.getAmFreeMonths(), pp.getInvoiceFee());
+    }
+    return plan;
+  }
+
+  /**
+   * Set the terms the plan was calculated with, carried over to toPaymentPlan() so that it can be re-amortized
+   */
+  void setTerms(BigDecimal interest, int amFreeMonths, BigDecimal invoiceFee) {
+    this.interest = interest;
+    this.amFreeMonths = amFreeMonths;
+    this.termInvoiceFee = invoiceFee;
+  }
+
+  /**
+   * @return the yearly interest rate or null if the plan was not created with it, e.g. a variable rate plan
+   */
+  public BigDecimal getInterest() {
+    return interest;
+  }
+
+  /**
+   * @return the number of amortization free months
+   */
+  public int getAmFreeMonths() {
+    return amFreeMonths;
+  }
+
+  /**
+   * @return the number of rows (payments) in the plan
+   */
+  public int size() {
+    return month.length;
+  }
+
+  public int getMonth(int row) {
+    return month[row];
+  }
+
+  public double getCostOfCredit(int row) {
+    return costOfCredit[row];
+  }
+
+  public double getInterestAmt(int row) {
+    return interestAmt[row];
+  }
+
+  public double getAmortization(int row) {
+    return amortization[row];
+  }
+
+  public double getInvoiceFee(int row) {
+    return invoiceFee[row];
+  }
+
+  public double getOutgoingBalance(int row) {
+    return outgoingBalance[row];
+  }
+
+  public double getCashFlow(int row) {
+    return cashFlow[row];
+  }
+
+  /**
+   * @return a copy of the month column
+   */
+  public int[] getMonths() {
+    return month.clone();
+  }
+
+  /**
+   * @return a copy of the cash flow column, e.g. suitable for irr(double[])
+   */
+  public double[] getCashFlow() {
+    return cashFlow.clone();
+  }
+
+  /**
+   * return a copy of the column with the name given (one of Payment.columnNames)
+   *
+   * @param name the name of the column
+   * @return the column values as an array of double
+   */
+  public double[] getColumn(String name) {
+    return switch (name) {
+      case "month" -> {
+        double[] col = new double[size()];
+        for (int i = 0; i < col.length; i++) {
+          col[i] = month[i];
+        }
+        yield col;
+      }
+      case "costOfCredit" -> costOfCredit.clone();
+      case "interestAmt" -> interestAmt.clone();
+      case "amortization" -> amortization.clone();
+      case "invoiceFee" -> invoiceFee.clone();
+      case "outgoingBalance" -> outgoingBalance.clone();
+      case "cashFlow" -> cashFlow.clone();
+      default -> throw new IllegalArgumentException("No such column: " + name);
+    };
+  }
+
+  /**
+   * return the column names (Payment attribute names)
+   *
+   * @return a list of the headers (names of each 'column')
+   */
+  public List<String> getColumnNames() {
+    return Payment.columnNames;
+  }
+
+  /**
+   * Create a Payment for the row given. Each call creates a new Payment so changing it does not affect the plan.
+   *
+   * @param row the row index (which is also the month)
+   * @return a new Payment with the values of the row
+   */
+  public Payment getPayment(int row) {
+    Payment p = new Payment();
+    p.setMonth(month[row]);
+    p.setCostOfCredit(BigDecimal.valueOf(costOfCredit[row]));
+    p.setInterestAmt(BigDecimal.valueOf(interestAmt[row]));
+    p.setAmortization(BigDecimal.valueOf(amortization[row]));
+    p.setInvoiceFee(BigDecimal.valueOf(invoiceFee[row]));
+    p.setOutgoingBalance(BigDecimal.valueOf(outgoingBalance[row]));
+    p.setCacheFlow(BigDecimal.valueOf(cashFlow[row]));
+    return p;
+  }
+
+  /**
+   * A read only List view of this plan where each Payment is created on access, so that existing code
+   * working with a List of Payment can use a columnar plan without copying it all.
+   *
+   * @return an unmodifiable List of Payment backed by this plan
+   */
+  public List<Payment> asPaymentList() {
+    return new PaymentView();
+  }
+
+  /**
+   * The terms (interest, amortization free months and invoice fee) are carried over so the result can be passed
+   * to Financials.reAmortize, unless getInterest() is null (e.g. for a variable rate plan) in which case
+   * reAmortize rejects it.
+   *
+   * @return a PaymentPlan (a mutable List of Payment) with the same values as this plan
+   */
+  public PaymentPlan toPaymentPlan() {
+    PaymentPlan plan = new PaymentPlan(size());
+    plan.addAll(asPaymentList());
+    plan.setTerms(interest, amFreeMonths, termInvoiceFee);
+    return plan;
+  }
+
+  @Override
+  public String toString() {
+    return toPaymentPlan().toString();
+  }
+
+  private class PaymentView extends AbstractList<Payment> implements RandomAccess {
+
+    @Override
+    public Payment get(int index) {
+      return getPayment(index);
+    }
+
+    @Override
+    public int size() {
+      return ColumnarPaymentPlan.this.size();
+    }
+  }
+}
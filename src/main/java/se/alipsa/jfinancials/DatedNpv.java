@@ -0,0 +1,82 @@
+package se.alipsa.jfinancials;
+
+/**
+ * The npv kernel for dated (irregular) cash flows: sum(amount[i] * (1 + rate)^-t[i]) where t[i] is the year
+ * fraction from the first date. The year fractions are calculated once per cash flow so each evaluation only
+ * needs one log and one exp per payment.
+ */
+class DatedNpv implements NpvFunction {
+
+  private double[] amounts;
+  private int offset;
+  private int length;
+  private double[] times = new double[0];
+  private double derivative;
+
+  DatedNpv cashFlow(double[] amounts, long[] epochDays, int offset, int length, DayCount dayCount) {
+    if (times.length < length) {
+      times = new double[Math.max(length, times.length * 2)];
+    }
+    dayCount.yearFractions(epochDays, offset, length, times);
+    this.amounts = amounts;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  @Override
+  public double evaluate(double rate) {
+    double logBase = Math.log1p(rate);
+    double npv = 0;
+    double dnpv = 0;
+    for (int i = 0; i < length; i++) {
+      double t = times[i];
+      double pv = amounts[offset + i] * Math.exp(-t * logBase);
+      npv += pv;
+      dnpv -= t * pv;
+    }
+    derivative = dnpv / (1 + rate);
+    return npv;
+  }
+
+  @Override
+  public double derivative() {
+    return derivative;
+  }
+
+  /**
+   * Descartes' rule of signs also holds for the real exponents (year fractions) as long as they are in order,
+   * so the sign changes are only known if the dates are
+   */
+  @Override
+  public int signChanges() {
+    int changes = 0;
+    double last = 0;
+    for (int i = 0; i < length; i++) {
+      if (i > 0 && times[i] < times[i - 1]) {
+        return -1;
+      }
+      double amount = amounts[offset + i];
+      if (amount != 0) {
+        if (last != 0 && (amount > 0) != (last > 0)) {
+          changes++;
+        }
+        last = amount;
+      }
+    }
+    return Math.min(changes, 2);
+  }
+
+  /**
+   * The present value at the first date of the dated cash flow
+   */
+  static double npv(double rate, double[] amounts, long[] epochDays, int offset, int length, DayCount dayCount) {
+    double logBase = Math.log1p(rate);
+    long first = epochDays[offset];
+    double npv = 0;
+    for (int i = offset; i < offset + length; i++) {
+      npv += amounts[i] * Math.exp(-dayCount.yearFraction(first, epochDays[i]) * logBase);
+    }
+    return npv;
+  }
+}
@@ -0,0 +1,139 @@
+package se.alipsa.jfinancials;
+
+/**
+ * Day count conventions used to turn the days between two dates into a fraction of a year, e.g. for xnpv and
+ * xirr. Dates are given as epoch days (LocalDate.toEpochDay()) and converted without creating any objects.
+ */
+public enum DayCount {
+
+  /** Actual days / 365, as used by Excel's XNPV and XIRR */
+  ACT_365F {
+    @Override
+    public double yearFraction(long startEpochDay, long endEpochDay) {
+      return (endEpochDay - startEpochDay) / 365d;
+    }
+  },
+
+  /** Actual days / 360 */
+  ACT_360 {
+    @Override
+    public double yearFraction(long startEpochDay, long endEpochDay) {
+      return (endEpochDay - startEpochDay) / 360d;
+    }
+  },
+
+  /** Actual days / actual days in the year, days in leap years are divided by 366 and the others by 365 */
+  ACT_ACT_ISDA {
+    @Override
+    public double yearFraction(long startEpochDay, long endEpochDay) {
+      if (endEpochDay < startEpochDay) {
+        return -yearFraction(endEpochDay, startEpochDay);
+      }
+      int startYear = year(startEpochDay);
+      int endYear = year(endEpochDay);
+      if (startYear == endYear) {
+        return (endEpochDay - startEpochDay) / (double) daysInYear(startYear);
+      }
+      double fraction = (firstDayOfYear(startYear + 1) - startEpochDay) / (double) daysInYear(startYear);
+      fraction += endYear - startYear - 1;
+      return fraction + (endEpochDay - firstDayOfYear(endYear)) / (double) daysInYear(endYear);
+    }
+  },
+
+  /** 30/360 US (bond basis): the 31st is treated as the 30th, at the end date only if the start is the 30th or 31st */
+  THIRTY_360 {
+    @Override
+    public double yearFraction(long startEpochDay, long endEpochDay) {
+      int start = civil(startEpochDay);
+      int end = civil(endEpochDay);
+      int d1 = day(start);
+      int d2 = day(end);
+      if (d1 == 31) {
+        d1 = 30;
+      }
+      if (d2 == 31 && d1 == 30) {
+        d2 = 30;
+      }
+      return thirty360(start, d1, end, d2);
+    }
+  },
+
+  /** 30E/360 (Eurobond basis): the 31st is always treated as the 30th */
+  THIRTY_E_360 {
+    @Override
+    public double yearFraction(long startEpochDay, long endEpochDay) {
+      int start = civil(startEpochDay);
+      int end = civil(endEpochDay);
+      return thirty360(start, Math.min(day(start), 30), end, Math.min(day(end), 30));
+    }
+  };
+
+  /**
+   * @param startEpochDay the start date as days since 1970-01-01
+   * @param endEpochDay the end date as days since 1970-01-01
+   * @return the time between the dates in years, negative if the end is before the start
+   */
+  public abstract double yearFraction(long startEpochDay, long endEpochDay);
+
+  /**
+   * Calculate the year fraction of each date from the first one
+   *
+   * @param epochDays the dates
+   * @param offset the index of the first date
+   * @param length the number of dates
+   * @param target where the year fractions are written, starting at index 0
+   */
+  void yearFractions(long[] epochDays, int offset, int length, double[] target) {
+    long first = epochDays[offset];
+    for (int i = 0; i < length; i++) {
+      target[i] = yearFraction(first, epochDays[offset + i]);
+    }
+  }
+
+  private static double thirty360(int start, int d1, int end, int d2) {
+    return (360 * (year(end) - year(start)) + 30 * (month(end) - month(start)) + (d2 - d1)) / 360d;
+  }
+
+  /*
+   * The date of the epoch day packed as year * 10000 + month * 100 + day, using the days from civil algorithm
+   * by Howard Hinnant (the same as LocalDate.ofEpochDay but without creating a LocalDate)
+   */
+  static int civil(long epochDay) {
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long doe = z - era * 146097;
+    long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    long mp = (5 * doy + 2) / 153;
+    int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+    int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+    long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+    return (int) (y * 10000 + m * 100 + d);
+  }
+
+  private static int year(int civil) {
+    return civil / 10000;
+  }
+
+  private static int month(int civil) {
+    return civil / 100 % 100;
+  }
+
+  private static int day(int civil) {
+    return civil % 100;
+  }
+
+  private static int year(long epochDay) {
+    return year(civil(epochDay));
+  }
+
+  private static int daysInYear(int year) {
+    return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 366 : 365;
+  }
+
+  private static long firstDayOfYear(int year) {
+    long y = year - 1L;
+    // days from 1970-01-01 to January 1st of the year
+    return 365 * (y - 1969) + Math.floorDiv(y, 4) - Math.floorDiv(y, 100) + Math.floorDiv(y, 400) - 477;
+  }
+}
@@ -0,0 +1,179 @@
+package se.alipsa.jfinancials;
+
+/**
+ * A term structure of discount factors per period (e.g. month) up to a horizon, for discounting cash flows
+ * against a yield curve instead of a single rate. The discount factors are calculated once when the curve is
+ * created so the npv of a cash flow is just its dot product with them (using the vector api when available,
+ * see BulkNpv). A curve is immutable and can be shared by any number of threads.
+ *
+ * <p>Rates are per period, as in npv(double[], double), with periodic compounding: the discount factor of
+ * period t is 1 / (1 + z(t))^t where z(t) is the zero rate of period t. Cash flows follow the convention of
+ * npv(double[], double), i.e. the first entry is discounted one period.</p>
+ */
+public final class DiscountCurve {
+
+  /* discountFactors[t] is the discount factor of period t, discountFactors[0] = 1 */
+  private final double[] discountFactors;
+
+  private DiscountCurve(double[] discountFactors) {
+    this.discountFactors = discountFactors;
+  }
+
+  /**
+   * A curve with the same rate for all periods, i.e. the same npv as npv(double[], double)
+   *
+   * @param rate the rate per period
+   * @param periods the horizon, the longest cash flow that can be discounted
+   * @return the curve
+   */
+  public static DiscountCurve flat(double rate, int periods) {
+    return interpolated(new int[]{1}, new double[]{rate}, periods);
+  }
+
+  /**
+   * A curve with piecewise constant forward rates: forwardRates[i] is the rate of each period after
+   * pillars[i - 1] up to and including pillars[i], the last rate also applies after the last pillar.
+   *
+   * @param pillars the last period of each rate, in increasing order
+   * @param forwardRates the rate per period of each segment
+   * @param periods the horizon, the longest cash flow that can be discounted
+   * @return the curve
+   */
+  public static DiscountCurve piecewise(int[] pillars, double[] forwardRates, int periods) {
+    checkPillars(pillars, forwardRates, periods);
+    double[] factors = new double[periods + 1];
+    factors[0] = 1;
+    int segment = 0;
+    for (int t = 1; t <= periods; t++) {
+      if (t > pillars[segment] && segment < pillars.length - 1) {
+        segment++;
+      }
+      factors[t] = factors[t - 1] / (1 + forwardRates[segment]);
+    }
+    return new DiscountCurve(factors);
+  }
+
+  /**
+   * A curve with zero rates interpolated linearly between the pillars, and constant before the first and after
+   * the last pillar
+   *
+   * @param pillars the periods of the zero rates, in increasing order
+   * @param zeroRates the zero rate per period of each pillar
+   * @param periods the horizon, the longest cash flow that can be discounted
+   * @return the curve
+   */
+  public static DiscountCurve interpolated(int[] pillars, double[] zeroRates, int periods) {
+    checkPillars(pillars, zeroRates, periods);
+    double[] factors = new double[periods + 1];
+    factors[0] = 1;
+    int segment = 0;
+    for (int t = 1; t <= periods; t++) {
+      while (segment < pillars.length - 1 && t > pillars[segment + 1]) {
+        segment++;
+      }
+      double zeroRate;
+      if (t <= pillars[0]) {
+        zeroRate = zeroRates[0];
+      } else if (segment == pillars.length - 1 || t >= pillars[pillars.length - 1]) {
+        zeroRate = zeroRates[pillars.length - 1];
+      } else {
+        double w = (double) (t - pillars[segment]) / (pillars[segment + 1] - pillars[segment]);
+        zeroRate = zeroRates[segment] + w * (zeroRates[segment + 1] - zeroRates[segment]);
+      }
+      factors[t] = Math.pow(1 + zeroRate, -t);
+    }
+    return new DiscountCurve(factors);
+  }
+
+  /**
+   * @return the horizon, i.e. the longest cash flow that can be discounted
+   */
+  public int getPeriods() {
+    return discountFactors.length - 1;
+  }
+
+  /**
+   * @param period the period, 0 to getPeriods()
+   * @return the discount factor of the period
+   */
+  public double discountFactor(int period) {
+    return discountFactors[period];
+  }
+
+  /**
+   * @param period the period, 1 to getPeriods()
+   * @return the zero rate per period of the period
+   */
+  public double zeroRate(int period) {
+    return Math.pow(discountFactors[period], -1d / period) - 1;
+  }
+
+  /**
+   * @return a copy of the discount factors where element t is the discount factor of period t
+   */
+  public double[] getDiscountFactors() {
+    return discountFactors.clone();
+  }
+
+  /**
+   * @param cashFlow the cash flow, the first entry is discounted one period
+   * @return the net present value
+   */
+  public double npv(double[] cashFlow) {
+    return npv(cashFlow, 0, cashFlow.length);
+  }
+
+  /**
+   * The npv of cashFlow[offset] .. cashFlow[offset + length - 1], the first entry is discounted one period
+   *
+   * @return the net present value
+   */
+  public double npv(double[] cashFlow, int offset, int length) {
+    checkLength(length);
+    return BulkNpv.dot(cashFlow, offset, discountFactors, 1, length);
+  }
+
+  /**
+   * The npv of many loans of equal length, stored period major as in BulkNpv.npv(double[], int, double[], double[]),
+   * i.e. the cash flow of loan j in period t is at cashFlows[t * loans + j]
+   *
+   * @param cashFlows the cash flows of all loans, length must be a multiple of the number of loans
+   * @param loans the number of loans
+   * @param result an array of length loans where the npv of each loan is written
+   */
+  public void npv(double[] cashFlows, int loans, double[] result) {
+    if (loans <= 0 || cashFlows.length % loans != 0) {
+      throw new IllegalArgumentException("The length of cashFlows (" + cashFlows.length
+          + ") must be a multiple of the number of loans (" + loans + ")");
+    }
+    if (result.length != loans) {
+      throw new IllegalArgumentException("result must have length " + loans);
+    }
+    checkLength(cashFlows.length / loans);
+    BulkNpv.dotForLoans(cashFlows, loans, discountFactors, 1, result);
+  }
+
+  private void checkLength(int length) {
+    if (length > getPeriods()) {
+      throw new IllegalArgumentException("The cash flow has " + length + " periods but the curve only "
+          + getPeriods());
+    }
+  }
+
+  private static void checkPillars(int[] pillars, double[] rates, int periods) {
+    if (pillars.length == 0 || pillars.length != rates.length) {
+      throw new IllegalArgumentException("There must be one rate per pillar and at least one pillar");
+    }
+    if (pillars[0] < 1) {
+      throw new IllegalArgumentException("Pillars must be periods from 1");
+    }
+    for (int i = 1; i < pillars.length; i++) {
+      if (pillars[i] <= pillars[i - 1]) {
+        throw new IllegalArgumentException("Pillars must be in increasing order");
+      }
+    }
+    if (periods < 0) {
+      throw new IllegalArgumentException("periods must not be negative but was " + periods);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread safe cache of compounding factors (1 + rate)^nper and discount factor vectors keyed on
+ * (rate, nper). When quoting traffic uses a small set of (rate, term) pairs this saves the Math.pow calls
+ * in pmt, monthlyAnnuityAmount (and thereby cashFlow and the irr of a loan) and npv.
+ *
+ * <p>The cache is opt-in, enable it with Financials.setFactorCache(new FactorCache(1024)).
+ * It is a lock free, direct mapped table: each (rate, nper) maps to one slot and a new pair replaces (evicts)
+ * whatever was in its slot, so the size never exceeds the capacity and lookups never block.</p>
+ */
+public final class FactorCache {
+
+  private final AtomicReferenceArray<Entry> table;
+  private final int mask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param capacity the max number of (rate, nper) pairs to keep, rounded up to the nearest power of 2
+   */
+  public FactorCache(int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30 but was " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    table = new AtomicReferenceArray<>(size);
+    mask = size - 1;
+  }
+
+  /**
+   * @return (1 + rate)^nper
+   */
+  public double compounding(double rate, int nper) {
+    return entry(rate, nper, false).compounding;
+  }
+
+  /**
+   * The annuity factor is the payment per unit of present value, i.e. pmt(rate, nper, -1)
+   *
+   * @return rate * (1 + rate)^nper / ((1 + rate)^nper - 1)
+   */
+  public double annuityFactor(double rate, int nper) {
+    return entry(rate, nper, false).annuityFactor;
+  }
+
+  /**
+   * Returns the discount factors 1 / (1 + rate)^t for t = 1..nper, i.e. element t - 1 is the discount factor
+   * of period t. The array is shared by all callers and must not be modified.
+   *
+   * @return an array of length nper with the discount factors
+   */
+  public double[] discountFactors(double rate, int nper) {
+    return entry(rate, nper, true).discountFactors;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return the share of lookups that were found in the cache (0 if there has been no lookups)
+   */
+  public double getHitRatio() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /**
+   * @return the max number of entries
+   */
+  public int getCapacity() {
+    return table.length();
+  }
+
+  /**
+   * Remove all entries (the statistics are kept)
+   */
+  public void clear() {
+    for (int i = 0; i < table.length(); i++) {
+      table.set(i, null);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FactorCache{capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses()
+        + ", evictions=" + getEvictions() + '}';
+  }
+
+  private Entry entry(double rate, int nper, boolean withDiscountFactors) {
+    int index = index(rate, nper);
+    Entry entry = table.get(index);
+    if (entry != null && entry.matches(rate, nper) && (!withDiscountFactors || entry.discountFactors != null)) {
+      hits.increment();
+      return entry;
+    }
+    misses.increment();
+    Entry created;
+    if (entry != null && entry.matches(rate, nper)) {
+      created = new Entry(entry, discountFactorsFor(rate, nper));
+    } else {
+      created = new Entry(rate, nper, withDiscountFactors ? discountFactorsFor(rate, nper) : null);
+      if (entry != null) {
+        evictions.increment();
+      }
+    }
+    table.set(index, created);
+    return created;
+  }
+
+  private int index(double rate, int nper) {
+    long h = Double.doubleToLongBits(rate) * 31 + nper;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h & mask;
+  }
+
+  private static double[] discountFactorsFor(double rate, int nper) {
+    double[] factors = new double[nper];
+    double v = 1 / (1 + rate);
+    double df = 1;
+    for (int t = 0; t < nper; t++) {
+      df *= v;
+      factors[t] = df;
+    }
+    return factors;
+  }
+
+  private static final class Entry {
+    final double rate;
+    final int nper;
+    final double compounding;
+    final double annuityFactor;
+    final double[] discountFactors;
+
+    Entry(double rate, int nper, double[] discountFactors) {
+      this.rate = rate;
+      this.nper = nper;
+      this.compounding = Math.pow(1 + rate, nper);
+      this.annuityFactor = rate * compounding / (compounding - 1);
+      this.discountFactors = discountFactors;
+    }
+
+    Entry(Entry entry, double[] discountFactors) {
+      this.rate = entry.rate;
+      this.nper = entry.nper;
+      this.compounding = entry.compounding;
+      this.annuityFactor = entry.annuityFactor;
+      this.discountFactors = discountFactors;
+    }
+
+    boolean matches(double rate, int nper) {
+      return this.nper == nper && Double.doubleToLongBits(this.rate) == Double.doubleToLongBits(rate);
+    }
+  }
+}
@@ -5,21 +5,68 @@ import static java.math.BigDecimal.ONE;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.util.ArrayList;
+import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Financials {
   // Empirical tests comparing with Excel gives 9 as the lowest possible value for 0.01 error margin
-  private static final int SCALE = 9;
+  static final int SCALE = 9;
   /**Number of iterations*/
   public static final int MAX_ITERATIONS=1000;
 
   /**Minimum difference*/
   public static final double MIN_DIFF=1E-7;
 
+  /**Minimum (relative) change of the rate between two irr iterations*/
+  public static final double RATE_TOLERANCE=1E-14;
+
+  private static volatile FactorCache factorCache;
+
+  private static final AdaptivePrecision adaptivePrecision = new AdaptivePrecision();
+
   private Financials() {}
 
+  /**
+   * Enable (or disable by passing null) caching of compounding and discount factors in pmt, monthlyAnnuityAmount
+   * (and thereby cashFlow and effectiveInterestRate) and npv. The cache is shared by all threads.
+   *
+   * @param cache the cache to use or null to disable caching (the default)
+   */
+  public static void setFactorCache(FactorCache cache) {
+    factorCache = cache;
+  }
+
+  /**
+   * @return the factor cache in use or null if caching is disabled
+   */
+  public static FactorCache getFactorCache() {
+    return factorCache;
+  }
+
+  /**
+   * Register a listener receiving the number of iterations, duration etc. of irr calculations, payment plans and
+   * batch calculations (e.g. a SimpleMetrics), or disable metrics by passing null (the default). The same
+   * calculations are also reported as flight recorder events (in the jfinancials category) when recording.
+   *
+   * @param listener the listener to use or null to disable metrics
+   */
+  public static void setMetricsListener(MetricsListener listener) {
+    Instrumentation.setListener(listener);
+  }
+
+  /**
+   * @return the metrics listener in use or null if metrics are disabled
+   */
+  public static MetricsListener getMetricsListener() {
+    return Instrumentation.getListener();
+  }
+
   /**
    * Create a PaymentPlan which essentially is a List of payments with some additional syntactic sugar
    *
@@ -36,30 +83,177 @@ public class Financials {
       int tenureMonths,
       int amFreeMonths,
       BigDecimal invoiceFee) {
-    PaymentPlan paymentPlan = new PaymentPlan(tenureMonths + 1);
-    BigDecimal interestCostAmFreePeriod = BigDecimal.valueOf(loanAmount).multiply(interest).divide(BigDecimal.valueOf(12), SCALE, RoundingMode.HALF_UP);
-    BigDecimal monthlyAnnuity = BigDecimal.valueOf(monthlyAnnuityAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths));
-    Payment p = new Payment();
-    p.setOutgoingBalance(BigDecimal.valueOf(loanAmount));
-    p.setCacheFlow(BigDecimal.valueOf((long) loanAmount * -1));
-    paymentPlan.add(p);
-    for (int month = 1; month <= tenureMonths; month++) {
-      Payment prev = paymentPlan.get(month - 1);
-      p = new Payment();
-      p.setMonth(month);
-      if (amFreeMonths >= month) {
-        p.setCostOfCredit(interestCostAmFreePeriod);
-      } else {
-        p.setCostOfCredit(monthlyAnnuity);
+    return Instrumentation.paymentPlan("BigDecimal", tenureMonths, () -> {
+      PaymentPlan paymentPlan = new PaymentPlan(tenureMonths + 1);
+      paymentIterator(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee).forEachRemaining(paymentPlan::add);
+      paymentPlan.setTerms(interest, amFreeMonths, invoiceFee);
+      return paymentPlan;
+    });
+  }
+
+  /**
+   * Create a new PaymentPlan with the event applied, e.g. an extra amortization or a change of interest rate
+   * from a given month. Only the months from the month of the event are recalculated, starting from the outgoing
+   * balance of the month before. The payments before the event are shared by the new and the original plan, they
+   * become read only and are copied on write by PaymentPlan.edit(int) so the two plans can still be modified
+   * independently. The values of the original plan are not changed.
+   *
+   * @param paymentPlan a plan created by paymentPlan(...) or by a previous reAmortize
+   * @param event the change to apply
+   * @return a new PaymentPlan
+   */
+  public static PaymentPlan reAmortize(PaymentPlan paymentPlan, PaymentPlanEvent event) {
+    if (paymentPlan.getInterest() == null) {
+      throw new IllegalArgumentException("The payment plan has no terms, it must be created using paymentPlan(...)");
+    }
+    int month = event.getMonth();
+    int tenureMonths = paymentPlan.getTenureMonths();
+    if (month > tenureMonths) {
+      throw new IllegalArgumentException("The event month " + month + " is after the last month " + tenureMonths);
+    }
+    int amFreeMonths = paymentPlan.getAmFreeMonths();
+    BigDecimal interest = paymentPlan.getInterest();
+    BigDecimal balance = paymentPlan.get(month - 1).getOutgoingBalance();
+    BigDecimal extraAmortization = BigDecimal.ZERO;
+    switch (event.getType()) {
+      case EXTRA_AMORTIZATION -> {
+        extraAmortization = event.getAmount();
+        balance = balance.subtract(extraAmortization);
+        if (balance.signum() < 0) {
+          throw new IllegalArgumentException("The extra amortization " + extraAmortization
+              + " is larger than the balance " + balance.add(extraAmortization));
+        }
+        if (balance.signum() == 0) {
+          // the loan is paid off
+          tenureMonths = month;
+        }
+      }
+      case RATE_CHANGE -> interest = event.getAmount();
+      case TERM_CHANGE -> {
+        tenureMonths = event.getTenureMonths();
+        if (tenureMonths <= amFreeMonths) {
+          throw new IllegalArgumentException("The tenure " + tenureMonths + " must be longer than the "
+              + amFreeMonths + " amortization free months");
+        }
       }
-      p.setInterestAmt(prev.getOutgoingBalance().multiply(interest.divide(BigDecimal.valueOf(12), SCALE, RoundingMode.HALF_UP)));
-      p.setAmortization(p.getCostOfCredit().subtract(p.getInterestAmt()));
-      p.setInvoiceFee(invoiceFee);
-      p.setOutgoingBalance(prev.getOutgoingBalance().subtract(p.getAmortization()));
-      p.setCacheFlow(p.getCostOfCredit().add(p.getInvoiceFee()));
-      paymentPlan.add(p);
     }
-    return paymentPlan;
+    BigDecimal monthlyInterest = interest.divide(BigDecimal.valueOf(12), SCALE, RoundingMode.HALF_UP);
+    BigDecimal interestCostAmFreePeriod = balance.multiply(interest).divide(BigDecimal.valueOf(12), SCALE, RoundingMode.HALF_UP);
+    BigDecimal monthlyAnnuity = balance.signum() == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(monthlyAnnuityAmount(
+        balance.doubleValue(), interest.doubleValue(), tenureMonths - month + 1, Math.max(0, amFreeMonths - month + 1)));
+
+    PaymentPlan result = new PaymentPlan(tenureMonths + 1);
+    for (int i = 0; i < month; i++) {
+      Payment p = paymentPlan.get(i);
+      p.share();
+      result.add(p);
+    }
+    PaymentIterator it = new PaymentIterator(null, balance, monthlyInterest, monthlyAnnuity, interestCostAmFreePeriod,
+        amFreeMonths, paymentPlan.getInvoiceFee(), month, tenureMonths);
+    Payment first = it.next();
+    if (extraAmortization.signum() > 0) {
+      first.setCostOfCredit(first.getCostOfCredit().add(extraAmortization));
+      first.setAmortization(first.getAmortization().add(extraAmortization));
+      first.setCacheFlow(first.getCacheFlow().add(extraAmortization));
+    }
+    result.add(first);
+    it.forEachRemaining(result::add);
+    result.setTerms(interest, amFreeMonths, paymentPlan.getInvoiceFee());
+    return result;
+  }
+
+  /**
+   * Create a plan where the interest rate changes at the reset months given, the annuity is recalculated for
+   * the remaining tenure at each reset. Balances, totals and apr are calculated per rate segment in closed form,
+   * monthly rows only when asked for.
+   *
+   * @param loanAmount including startupFee
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @param resetMonths the first month of each rate segment, starting with 1
+   * @param interests the yearly interest rate of each segment
+   * @return a VariableRatePlan
+   */
+  public static VariableRatePlan variableRatePlan(int loanAmount, int tenureMonths, int amFreeMonths,
+                                                  double invoiceFee, int[] resetMonths, double[] interests) {
+    return new VariableRatePlan(loanAmount, tenureMonths, amFreeMonths, invoiceFee, resetMonths, interests);
+  }
+
+  /**
+   * Same as paymentPlan(int, BigDecimal, int, int, BigDecimal) but calculated with doubles and stored column wise
+   * in primitive arrays, which is much faster and uses much less memory. The values differ from the BigDecimal
+   * plan by the double rounding errors (typically well below a cent).
+   *
+   * @param loanAmount including startupFee
+   * @param interest the yearly interest rate
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @return a ColumnarPaymentPlan
+   */
+  public static ColumnarPaymentPlan columnarPaymentPlan(
+      int loanAmount,
+      BigDecimal interest,
+      int tenureMonths,
+      int amFreeMonths,
+      BigDecimal invoiceFee) {
+    return Instrumentation.paymentPlan("columnar", tenureMonths, () -> {
+      ColumnarPaymentPlan plan = new ColumnarPaymentPlan(tenureMonths + 1);
+      PaymentCursor cursor = paymentCursor(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+      while (cursor.next()) {
+        int month = cursor.getMonth();
+        plan.month[month] = month;
+        plan.costOfCredit[month] = cursor.getCostOfCredit();
+        plan.interestAmt[month] = cursor.getInterestAmt();
+        plan.amortization[month] = cursor.getAmortization();
+        plan.invoiceFee[month] = cursor.getInvoiceFee();
+        plan.outgoingBalance[month] = cursor.getOutgoingBalance();
+        plan.cashFlow[month] = cursor.getCashFlow();
+      }
+      plan.setTerms(interest, amFreeMonths, invoiceFee);
+      return plan;
+    });
+  }
+
+  /**
+   * Iterate over the payments of the plan without creating the whole plan, each payment is calculated on demand
+   * from the previous one. The payments are the same as in paymentPlan(int, BigDecimal, int, int, BigDecimal)
+   *
+   * @param loanAmount including startupFee
+   * @param interest the yearly interest rate
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @return an Iterator of the payments starting with month 0
+   */
+  public static Iterator<Payment> paymentIterator(int loanAmount, BigDecimal interest, int tenureMonths,
+                                                  int amFreeMonths, BigDecimal invoiceFee) {
+    return PaymentIterator.forLoan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+  }
+
+  /**
+   * A lazy, sequential Stream of the payments of the plan, see paymentIterator. Short circuiting operations
+   * (e.g. takeWhile, findFirst) stop calculating as soon as they are done.
+   *
+   * @return a Stream of Payment starting with month 0
+   */
+  public static Stream<Payment> paymentStream(int loanAmount, BigDecimal interest, int tenureMonths,
+                                              int amFreeMonths, BigDecimal invoiceFee) {
+    PaymentIterator it = PaymentIterator.forLoan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+    return StreamSupport.stream(Spliterators.spliterator(it, it.remaining(),
+        Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  /**
+   * A primitive cursor over the rows of the plan calculated with doubles (same values as columnarPaymentPlan),
+   * nothing is allocated per row.
+   *
+   * @return a PaymentCursor positioned before month 0
+   */
+  public static PaymentCursor paymentCursor(int loanAmount, BigDecimal interest, int tenureMonths,
+                                            int amFreeMonths, BigDecimal invoiceFee) {
+    return new PaymentCursor(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
   }
 
   public static double[] cashFlow(List<Payment> paymentPlan) {
@@ -75,10 +269,19 @@ public class Financials {
                                   int tenureMonths,
                                   int amFreeMonths,
                                   Integer invoiceFee) {
-    double interestCostAmFreePeriod = loanAmount * interest.doubleValue() / 12;
-    double monthlyAnnuity = monthlyAnnuityAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths);
-    List<Double> p = new ArrayList<>(tenureMonths + 1);
-    p.add(loanAmount * -1.0);
+    double[] cashFlows = new double[tenureMonths + 1];
+    cashFlow(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths, invoiceFee.doubleValue(), cashFlows);
+    return cashFlows;
+  }
+
+  /**
+   * Writes the cash flow into the first tenureMonths + 1 positions of the target array
+   */
+  static void cashFlow(int loanAmount, double interest, int tenureMonths, int amFreeMonths, double invoiceFee,
+                       double[] target) {
+    double interestCostAmFreePeriod = loanAmount * interest / 12;
+    double monthlyAnnuity = monthlyAnnuityAmount(loanAmount, interest, tenureMonths, amFreeMonths);
+    target[0] = loanAmount * -1.0;
     for (int month = 1; month <= tenureMonths; month++) {
       double costOfCredit;
       if (amFreeMonths >= month) {
@@ -86,57 +289,58 @@ public class Financials {
       } else {
         costOfCredit = monthlyAnnuity;
       }
-      double cacheFlow = costOfCredit + invoiceFee.doubleValue();
-      p.add(cacheFlow);
-    }
-    double[] cashFlows = new double[p.size()];
-    for (int i = 0; i < cashFlows.length; i++) {
-      cashFlows[i] = p.get(i);
+      target[month] = costOfCredit + invoiceFee;
     }
-    return cashFlows;
   }
 
   public static double irr(PaymentPlan paymentPlan) {
     double[] cashFlows = new double[paymentPlan.size()];
-    AtomicInteger i = new AtomicInteger(0);
-    paymentPlan.forEach(
-        p -> cashFlows[i.getAndIncrement()] = p.getCacheFlow().doubleValue()
-    );
+    int i = 0;
+    for (Payment p : paymentPlan) {
+      cashFlows[i++] = p.getCacheFlow().doubleValue();
+    }
     return irr(cashFlows);
   }
 
 
   /**
-   * This is a "brute force" way of calculating irr.
-   * It is quite cpu intensive, but we do not have that many compounds, so typically it takes only
-   * 1-2 milliseconds to complete, so I did not go further with using commons math to use one of the
-   * deterministic solvers (e.g. the Brent solver).
-   * Newton-Raphson is fast but non-deterministic so cannot be used without a fallback. Excel uses that but have some
-   * secret fallback which is unknown (it is closed source) to get a deterministic outcome.
+   * Calculates the irr directly from the cash flow column of the plan (without copying it)
    *
-   * @param cashFlow money flow
+   * @param paymentPlan the plan to calculate the irr for
    * @return yield
    */
+  public static double irr(ColumnarPaymentPlan paymentPlan) {
+    return irr(paymentPlan.cashFlow);
+  }
+
+  /**
+   * Calculates the internal rate of return using a safeguarded Newton-Raphson solver (see IrrSolver),
+   * i.e. Newton steps with a bisection fallback whenever a step would leave the bracket known to contain the root.
+   * The root is looked for in [0, 1] first and, if it is not there, the bracket is widened towards -100% and up to
+   * IrrSolver.MAX_RATE. This is deterministic and for a loan typically needs less than 10 npv evaluations.
+   *
+   * <p>If the npv is zero at no rate (e.g. all cash flows have the same sign) or at more than one rate (several
+   * sign changes) there is no well defined irr and Double.NaN is returned, use irrResult to get the status
+   * (NO_ROOT or MULTIPLE_ROOTS).</p>
+   *
+   * @param cashFlow money flow
+   * @return yield, or NaN if there is no unique irr
+   */
   public static double irr(double[] cashFlow){
-    double flowOut = cashFlow[0];
-    double minValue = 0d;
-    double maxValue = 1d;
-    double testValue = 0d;
-    int iterations = MAX_ITERATIONS;
-
-    while ( iterations > 0 ) {
-      testValue = (minValue+maxValue) / 2;
-      double npv= cfNpv(cashFlow,testValue);
-      if ( Math.abs(flowOut+npv) < MIN_DIFF){
-        break;
-      } else if(Math.abs(flowOut) > npv){
-        maxValue = testValue;
-      } else {
-        minValue = testValue;
-      }
-      iterations--;
-    }
-    return testValue;
+    return new IrrSolver().irr(cashFlow);
+  }
+
+  /**
+   * Same as irr(double[]) but also returns the number of iterations and the status of the solver, i.e. whether
+   * it converged or why not (NOT_CONVERGED, NO_ROOT, MULTIPLE_ROOTS)
+   *
+   * @param cashFlow money flow
+   * @return an IrrResult with the yield and the solver statistics
+   */
+  public static IrrResult irrResult(double[] cashFlow){
+    IrrSolver solver = new IrrSolver();
+    double rate = solver.irr(cashFlow);
+    return new IrrResult(rate, solver.getStatus(), solver.getIterations(), solver.getEvaluations());
   }
 
   public static double irr(List<Number> cashFlowCol){
@@ -145,52 +349,161 @@ public class Financials {
 
   private static double[] toDoubleArray(List<Number> cashFlowCol) {
     double[] cashFlows = new double[cashFlowCol.size()];
-    AtomicInteger i = new AtomicInteger(0);
-    cashFlowCol.forEach(p -> cashFlows[i.getAndIncrement()] = p.doubleValue() );
-    return cashFlows;
-  }
-
-  /*
-   * npv except the first entry, used in the irr calculation
-   */
-  private static double cfNpv(double[] cashFlow, double rate){
-    double npv=0;
-    for(int i=1; i < cashFlow.length; i++){
-      npv += cashFlow[i] / Math.pow(1+rate, i);
+    int i = 0;
+    for (Number p : cashFlowCol) {
+      cashFlows[i++] = p.doubleValue();
     }
-    return npv;
+    return cashFlows;
   }
 
   /**
    * npv = function(i, cf, t=seq(along=cf)) sum(cf/(1+i)^t)
+   * The discount factor is accumulated by multiplication instead of calling Math.pow for each period.
    *
-   * @param cashFlowCol
-   * @param rate
-   * @return
+   * @param cashFlowCol a List of cash flows, the first one is discounted one period
+   * @param rate the interest rate
+   * @return the net present value
    */
   public static double npv(List<Number> cashFlowCol, double rate){
+    double v = 1 / (1 + rate);
+    double discountFactor = v;
     double cfs = 0;
-    int t = 1;
     for(Number cf : cashFlowCol) {
-      cfs += cf.doubleValue() / Math.pow(1+rate, t++);
+      cfs += cf.doubleValue() * discountFactor;
+      discountFactor *= v;
     }
     return cfs;
   }
 
   /**
    * npv = function(i, cf, t=seq(along=cf)) sum(cf/(1+i)^t)
+   * Evaluated as a polynomial in 1/(1+i) using Horner's scheme.
    *
-   * @param cashFlow an array of double
+   * @param cashFlow an array of double, the first one is discounted one period
    * @param rate the interest rate
-   * @return
+   * @return the net present value
    */
   public static double npv(double[] cashFlow, double rate){
-    double cfs = 0;
-    int t = 1;
-    for(Number cf : cashFlow) {
-      cfs += cf.doubleValue() / Math.pow(1+rate, t++);
+    FactorCache cache = factorCache;
+    if (cache != null) {
+      double[] discountFactors = cache.discountFactors(rate, cashFlow.length);
+      double cfs = 0;
+      for (int t = 0; t < cashFlow.length; t++) {
+        cfs += cashFlow[t] * discountFactors[t];
+      }
+      return cfs;
+    }
+    return PeriodicNpv.npv(cashFlow, 0, cashFlow.length, rate) / (1 + rate);
+  }
+
+  /**
+   * The net present value against a term structure of rates instead of a single rate, i.e. the dot product
+   * of the cash flow and the discount factors of the curve.
+   *
+   * @param cashFlow an array of double, the first one is discounted one period
+   * @param curve the discount curve, must have at least as many periods as the cash flow
+   * @return the net present value
+   */
+  public static double npv(double[] cashFlow, DiscountCurve curve) {
+    return curve.npv(cashFlow);
+  }
+
+  /**
+   * The net present value, at the first date, of a cash flow with irregular dates. Same as Excel's XNPV.
+   *
+   * @param rate the yearly discount rate
+   * @param amounts the amounts of the cash flow
+   * @param epochDays the date of each amount as days since 1970-01-01 (LocalDate.toEpochDay())
+   * @return the net present value
+   */
+  public static double xnpv(double rate, double[] amounts, long[] epochDays) {
+    return xnpv(rate, amounts, epochDays, DayCount.ACT_365F);
+  }
+
+  /**
+   * The net present value, at the first date, of a cash flow with irregular dates
+   *
+   * @param rate the yearly discount rate
+   * @param amounts the amounts of the cash flow
+   * @param epochDays the date of each amount as days since 1970-01-01 (LocalDate.toEpochDay())
+   * @param dayCount the day count convention giving the time in years between two dates
+   * @return the net present value
+   */
+  public static double xnpv(double rate, double[] amounts, long[] epochDays, DayCount dayCount) {
+    checkDatedCashFlow(amounts, epochDays);
+    return DatedNpv.npv(rate, amounts, epochDays, 0, amounts.length, dayCount);
+  }
+
+  /**
+   * The yearly internal rate of return of a cash flow with irregular dates, e.g. actual payments including
+   * partial payments and late fees. Same as Excel's XIRR.
+   *
+   * @param amounts the amounts of the cash flow, the first one is typically the (negative) loan amount
+   * @param epochDays the date of each amount as days since 1970-01-01 (LocalDate.toEpochDay())
+   * @return the yearly yield
+   */
+  public static double xirr(double[] amounts, long[] epochDays) {
+    return xirr(amounts, epochDays, DayCount.ACT_365F);
+  }
+
+  /**
+   * The yearly internal rate of return of a cash flow with irregular dates
+   *
+   * @param amounts the amounts of the cash flow, the first one is typically the (negative) loan amount
+   * @param epochDays the date of each amount as days since 1970-01-01 (LocalDate.toEpochDay())
+   * @param dayCount the day count convention giving the time in years between two dates
+   * @return the yearly yield
+   */
+  public static double xirr(double[] amounts, long[] epochDays, DayCount dayCount) {
+    checkDatedCashFlow(amounts, epochDays);
+    return new IrrSolver().xirr(amounts, epochDays, 0, amounts.length, dayCount);
+  }
+
+  /**
+   * Convenience version of xirr(double[], long[]) taking dates and amounts as Lists
+   *
+   * @param dates the date of each amount
+   * @param amounts the amounts of the cash flow
+   * @return the yearly yield
+   */
+  public static double xirr(List<LocalDate> dates, List<Number> amounts) {
+    long[] epochDays = new long[dates.size()];
+    int i = 0;
+    for (LocalDate date : dates) {
+      epochDays[i++] = date.toEpochDay();
+    }
+    return xirr(toDoubleArray(amounts), epochDays);
+  }
+
+  /**
+   * Calculates xirr for many dated cash flows in parallel. The cash flows are stored one after the other in the
+   * amounts and epochDays arrays, cash flow i being the entries from offsets[i] up to (not including)
+   * offsets[i + 1].
+   *
+   * @param amounts the amounts of all cash flows
+   * @param epochDays the dates of all amounts as days since 1970-01-01
+   * @param offsets the start of each cash flow followed by the total length, i.e. one more than the number of
+   *                cash flows
+   * @param dayCount the day count convention giving the time in years between two dates
+   * @param result an array of length offsets.length - 1 where the yearly yield of each cash flow is written
+   * @param pool the pool to run in
+   */
+  public static void xirr(double[] amounts, long[] epochDays, int[] offsets, DayCount dayCount, double[] result,
+                          ForkJoinPool pool) {
+    checkDatedCashFlow(amounts, epochDays);
+    if (result.length != offsets.length - 1 || offsets[offsets.length - 1] > amounts.length) {
+      throw new IllegalArgumentException("The offsets must have one more entry than the result (" + result.length
+          + ") and end within the amounts");
+    }
+    Instrumentation.batch("xirr", result.length, pool,
+        new XirrTask(amounts, epochDays, offsets, dayCount, result, pool.getParallelism()));
+  }
+
+  private static void checkDatedCashFlow(double[] amounts, long[] epochDays) {
+    if (amounts.length != epochDays.length) {
+      throw new IllegalArgumentException("There must be one date for each amount but there are " + epochDays.length
+          + " dates and " + amounts.length + " amounts");
     }
-    return cfs;
   }
 
   public static double totalPaymentAmount(double loanAmount, double interestRate, int tenureMonths, int amortizationFreeMonths, int statementFee) {
@@ -248,7 +561,9 @@ public class Financials {
    * @return <code>double</code> representing periodic payment amount.
    */
   public static double pmt(double r, int nper, double pv, double fv, int type) {
-    return (-r * (pv * Math.pow(1 + r, nper) + fv)) / ((1 + r * type) * (Math.pow(1 + r, nper) - 1));
+    FactorCache cache = factorCache;
+    double compounding = cache == null ? Math.pow(1 + r, nper) : cache.compounding(r, nper);
+    return (-r * (pv * compounding + fv)) / ((1 + r * type) * (compounding - 1));
   }
 
   /**
@@ -322,6 +637,135 @@ public class Financials {
     return apr(irr);
   }
 
+  /**
+   * The effective interest rate rounded half up to the given number of decimals, calculated in double and only
+   * recalculated with BigDecimal when the double result could round differently, see AdaptivePrecision.
+   *
+   * @param loanAmt *INCLUDING* startupfee
+   * @param interest then nominal yearly interest
+   * @param tenureMonths the tenure in months
+   * @param amortizationFreeMonths number of amortization free months
+   * @param invoiceFee invoice fee
+   * @param decimals the number of decimals of the result
+   * @return the effective interest rate with the scale decimals
+   */
+  public static BigDecimal effectiveInterestRate(int loanAmt, BigDecimal interest, int tenureMonths,
+                                                 int amortizationFreeMonths, BigDecimal invoiceFee, int decimals) {
+    return adaptivePrecision.effectiveInterestRate(loanAmt, interest, tenureMonths, amortizationFreeMonths, invoiceFee, decimals);
+  }
+
+  /**
+   * The payment plan with all amounts rounded half up to the given number of decimals (the same values as
+   * paymentPlan(...) rounded), calculated in double and only recalculated with BigDecimal when some amount
+   * could round differently, see AdaptivePrecision.
+   *
+   * @param loanAmount including startupFee
+   * @param interest the yearly interest rate
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @param decimals the number of decimals to round to, e.g. 2 for cents
+   * @return a ColumnarPaymentPlan of rounded amounts
+   */
+  public static ColumnarPaymentPlan roundedPaymentPlan(int loanAmount, BigDecimal interest, int tenureMonths,
+                                                       int amFreeMonths, BigDecimal invoiceFee, int decimals) {
+    return adaptivePrecision.paymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee, decimals);
+  }
+
+  /**
+   * @return the AdaptivePrecision used by effectiveInterestRate(..., int decimals) and roundedPaymentPlan,
+   * e.g. for its fallback counters
+   */
+  public static AdaptivePrecision getAdaptivePrecision() {
+    return adaptivePrecision;
+  }
+
+  /**
+   * Calculates the effective interest rate (apr) for a whole portfolio of loans in parallel using the common
+   * ForkJoinPool. The loans are given column wise, i.e. loan i is made up of the values at index i of each array.
+   *
+   * @param loanAmounts the loan amounts *INCLUDING* startup fees
+   * @param interests the nominal yearly interest rates
+   * @param tenureMonths the tenures in months
+   * @param amFreeMonths the number of amortization free months
+   * @param invoiceFees the invoice fees
+   * @param result an array of the same length as the input where the apr of each loan is written
+   */
+  public static void effectiveInterestRates(int[] loanAmounts, double[] interests, int[] tenureMonths,
+                                            int[] amFreeMonths, int[] invoiceFees, double[] result) {
+    effectiveInterestRates(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, result,
+        ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Same as effectiveInterestRates(int[], double[], int[], int[], int[], double[]) but running in the pool given
+   */
+  public static void effectiveInterestRates(int[] loanAmounts, double[] interests, int[] tenureMonths,
+                                            int[] amFreeMonths, int[] invoiceFees, double[] result,
+                                            ForkJoinPool pool) {
+    Instrumentation.batch("effectiveInterestRates", result.length, pool, BatchIrrTask.create(loanAmounts, interests,
+        tenureMonths, amFreeMonths, invoiceFees, result, true, pool.getParallelism()));
+  }
+
+  /**
+   * Calculates the (monthly) irr for a whole portfolio of loans in parallel, see
+   * effectiveInterestRates(int[], double[], int[], int[], int[], double[], ForkJoinPool) for a description of
+   * the parameters.
+   */
+  public static void irr(int[] loanAmounts, double[] interests, int[] tenureMonths, int[] amFreeMonths,
+                         int[] invoiceFees, double[] result, ForkJoinPool pool) {
+    Instrumentation.batch("irr", result.length, pool, BatchIrrTask.create(loanAmounts, interests,
+        tenureMonths, amFreeMonths, invoiceFees, result, false, pool.getParallelism()));
+  }
+
+  /**
+   * The inverse of effectiveInterestRate(int, BigDecimal, int, int, Integer): finds the nominal yearly interest
+   * that gives the loan the target effective interest rate (apr). The npv of the cash flow at the target rate is
+   * solved directly (in closed form) so there is no irr calculation nested inside the search.
+   *
+   * @param targetApr the effective interest rate (apr) to reach
+   * @param loanAmt *INCLUDING* startupfee
+   * @param tenureMonths the tenure in months
+   * @param amortizationFreeMonths number of amortization free months
+   * @param statementFee invoice fee
+   * @return the nominal yearly interest rate or NaN if the target is unreachable with a non-negative rate
+   * (i.e. if the fees alone give a higher apr)
+   */
+  public static double nominalInterestRate(double targetApr, int loanAmt, int tenureMonths,
+                                           int amortizationFreeMonths, int statementFee) {
+    return new NominalRateSolver(targetApr).solve(loanAmt, tenureMonths, amortizationFreeMonths, statementFee,
+        Double.NaN);
+  }
+
+  /**
+   * Solves the nominal interest rate giving the target apr for each cell of a pricing grid of
+   * loan amounts x statement fees x tenures. Rows (amount, fee) are solved in parallel in the pool given and
+   * each cell is warm started from the solution of its neighbour (the previous tenure).
+   *
+   * @param targetApr the effective interest rate (apr) to reach
+   * @param loanAmts the loan amounts (*INCLUDING* startupfee) of the grid
+   * @param statementFees the invoice fees of the grid
+   * @param tenureMonths the tenures of the grid, preferably sorted
+   * @param amortizationFreeMonths number of amortization free months
+   * @param result an array of length loanAmts.length * statementFees.length * tenureMonths.length where the nominal
+   *               rate of loanAmts[a], statementFees[f], tenureMonths[t] is written to index
+   *               (a * statementFees.length + f) * tenureMonths.length + t
+   * @param pool the pool to run in
+   */
+  public static void nominalInterestRates(double targetApr, int[] loanAmts, int[] statementFees, int[] tenureMonths,
+                                          int amortizationFreeMonths, double[] result, ForkJoinPool pool) {
+    int rows = loanAmts.length * statementFees.length;
+    if (result.length != rows * tenureMonths.length) {
+      throw new IllegalArgumentException("The result array must have length " + rows * tenureMonths.length
+          + " but was " + result.length);
+    }
+    if (rows == 0 || tenureMonths.length == 0) {
+      return;
+    }
+    Instrumentation.batch("nominalInterestRates", result.length, pool, new NominalRateGridTask(targetApr, loanAmts,
+        statementFees, tenureMonths, amortizationFreeMonths, result, 0, rows));
+  }
+
   public static int nz(Integer val) {
     return val == null ? 0 : val;
   }
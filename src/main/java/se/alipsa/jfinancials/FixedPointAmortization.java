@@ -0,0 +1,225 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amortization engine doing all the schedule arithmetic on long values in minor units (e.g. cents or öre)
+ * instead of BigDecimal. Every step that can produce fractions of a minor unit is rounded explicitly:
+ * <ul>
+ *   <li>the monthly interest rate is the yearly interest / 12 rounded HALF_UP to 9 decimals (as in
+ *   Financials.paymentPlan)</li>
+ *   <li>the annuity, the interest cost of the amortization free months and the invoice fee are rounded to minor
+ *   units using the paymentRounding</li>
+ *   <li>the interest of each month (outgoing balance of the previous month * monthly interest rate) is rounded to
+ *   minor units using the interestRounding</li>
+ * </ul>
+ * The amortization, outgoing balance and cash flow are then exact. The default scale of 8 decimals reproduces the
+ * (unrounded) BigDecimal plan of Financials.paymentPlan to the cent; with 2 decimals (cents) every amount, including
+ * the annuity, is rounded to what a bank would actually invoice, which makes the balance drift a few cents (or
+ * more for long tenures) from the unrounded plan. Nothing is allocated per month.
+ * Instances are immutable and thread safe.
+ */
+public final class FixedPointAmortization {
+
+  static final int RATE_SCALE = 9;
+  private static final long RATE_UNIT = 1_000_000_000L;
+
+  private final int decimals;
+  private final double unit;
+  private final RoundingMode paymentRounding;
+  private final RoundingMode interestRounding;
+
+  /**
+   * Create an engine working with 8 decimals rounding HALF_UP which gives the same plan as
+   * Financials.paymentPlan to the cent
+   */
+  public FixedPointAmortization() {
+    this(8, RoundingMode.HALF_UP, RoundingMode.HALF_UP);
+  }
+
+  /**
+   * @param decimals the number of decimals of the minor unit, e.g. 2 for cents (max 9)
+   * @param paymentRounding how to round the annuity, the amortization free interest cost and the invoice fee
+   * @param interestRounding how to round the interest amount of each month
+   */
+  public FixedPointAmortization(int decimals, RoundingMode paymentRounding, RoundingMode interestRounding) {
+    if (decimals < 0 || decimals > 9) {
+      throw new IllegalArgumentException("decimals must be between 0 and 9 but was " + decimals);
+    }
+    this.decimals = decimals;
+    this.unit = Math.pow(10, decimals);
+    this.paymentRounding = paymentRounding;
+    this.interestRounding = interestRounding;
+  }
+
+  public int getDecimals() {
+    return decimals;
+  }
+
+  /**
+   * Create a PaymentPlan with the values rounded to the minor unit
+   *
+   * @param loanAmount including startupFee
+   * @param interest the yearly interest rate
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @return a PaymentPlan where all amounts have the scale of this engine
+   */
+  public PaymentPlan paymentPlan(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                 BigDecimal invoiceFee) {
+    PaymentPlan plan = new PaymentPlan(tenureMonths + 1);
+    schedule(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee,
+        (month, costOfCredit, interestAmt, amortization, fee, outgoingBalance, cashFlow) -> {
+          Payment p = new Payment();
+          p.setMonth(month);
+          p.setCostOfCredit(BigDecimal.valueOf(costOfCredit, decimals));
+          p.setInterestAmt(BigDecimal.valueOf(interestAmt, decimals));
+          p.setAmortization(BigDecimal.valueOf(amortization, decimals));
+          p.setInvoiceFee(BigDecimal.valueOf(fee, decimals));
+          p.setOutgoingBalance(BigDecimal.valueOf(outgoingBalance, decimals));
+          p.setCacheFlow(BigDecimal.valueOf(cashFlow, decimals));
+          plan.add(p);
+        });
+    return plan;
+  }
+
+  /**
+   * Same as paymentPlan but stored column wise, see ColumnarPaymentPlan
+   */
+  public ColumnarPaymentPlan columnarPaymentPlan(int loanAmount, BigDecimal interest, int tenureMonths,
+                                                 int amFreeMonths, BigDecimal invoiceFee) {
+    ColumnarPaymentPlan plan = new ColumnarPaymentPlan(tenureMonths + 1);
+    schedule(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee,
+        (month, costOfCredit, interestAmt, amortization, fee, outgoingBalance, cashFlow) -> {
+          plan.month[month] = month;
+          plan.costOfCredit[month] = costOfCredit / unit;
+          plan.interestAmt[month] = interestAmt / unit;
+          plan.amortization[month] = amortization / unit;
+          plan.invoiceFee[month] = fee / unit;
+          plan.outgoingBalance[month] = outgoingBalance / unit;
+          plan.cashFlow[month] = cashFlow / unit;
+        });
+    plan.setTerms(interest, amFreeMonths, invoiceFee);
+    return plan;
+  }
+
+  /**
+   * The cash flow in minor units, the cash flow does not depend on the balance so this does not run the schedule
+   *
+   * @return an array of tenureMonths + 1 cash flow entries in minor units
+   */
+  public long[] cashFlowMinorUnits(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                   BigDecimal invoiceFee) {
+    long[] cashFlow = new long[tenureMonths + 1];
+    long amFreeCost = amFreeInterestCost(loanAmount, interest);
+    long annuity = annuity(loanAmount, interest, tenureMonths, amFreeMonths);
+    long fee = toMinorUnits(invoiceFee, paymentRounding);
+    cashFlow[0] = -toMinorUnits(BigDecimal.valueOf(loanAmount), paymentRounding);
+    for (int month = 1; month <= tenureMonths; month++) {
+      cashFlow[month] = (amFreeMonths >= month ? amFreeCost : annuity) + fee;
+    }
+    return cashFlow;
+  }
+
+  /**
+   * The cash flow in major units (e.g. kronor) suitable for the irr calculation
+   *
+   * @return an array of tenureMonths + 1 cash flow entries
+   */
+  public double[] cashFlow(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                           BigDecimal invoiceFee) {
+    long[] minorUnits = cashFlowMinorUnits(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+    double[] cashFlow = new double[minorUnits.length];
+    for (int i = 0; i < cashFlow.length; i++) {
+      cashFlow[i] = minorUnits[i] / unit;
+    }
+    return cashFlow;
+  }
+
+  /**
+   * @return the effective interest rate (apr) of the loan based on the rounded cash flow
+   */
+  public double effectiveInterestRate(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                      BigDecimal invoiceFee) {
+    return Financials.apr(Financials.irr(cashFlow(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee)));
+  }
+
+  interface RowConsumer {
+    void row(int month, long costOfCredit, long interestAmt, long amortization, long invoiceFee,
+             long outgoingBalance, long cashFlow);
+  }
+
+  void schedule(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths, BigDecimal invoiceFee,
+                RowConsumer consumer) {
+    long monthlyRate = monthlyRate(interest);
+    long amFreeCost = amFreeInterestCost(loanAmount, interest);
+    long annuity = annuity(loanAmount, interest, tenureMonths, amFreeMonths);
+    long fee = toMinorUnits(invoiceFee, paymentRounding);
+    long balance = toMinorUnits(BigDecimal.valueOf(loanAmount), paymentRounding);
+    consumer.row(0, 0, 0, 0, 0, balance, -balance);
+    for (int month = 1; month <= tenureMonths; month++) {
+      long costOfCredit = amFreeMonths >= month ? amFreeCost : annuity;
+      long interestAmt = multiply(balance, monthlyRate, RATE_UNIT, interestRounding);
+      long amortization = costOfCredit - interestAmt;
+      balance -= amortization;
+      consumer.row(month, costOfCredit, interestAmt, amortization, fee, balance, costOfCredit + fee);
+    }
+  }
+
+  /** The monthly rate as a long with RATE_SCALE decimals */
+  static long monthlyRate(BigDecimal interest) {
+    return interest.divide(BigDecimal.valueOf(12), RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+  }
+
+  private long amFreeInterestCost(int loanAmount, BigDecimal interest) {
+    return toMinorUnits(BigDecimal.valueOf(loanAmount).multiply(interest)
+        .divide(BigDecimal.valueOf(12), decimals + RATE_SCALE, RoundingMode.HALF_UP), paymentRounding);
+  }
+
+  private long annuity(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths) {
+    double annuity = Financials.monthlyAnnuityAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths);
+    return toMinorUnits(BigDecimal.valueOf(annuity), paymentRounding);
+  }
+
+  private long toMinorUnits(BigDecimal amount, RoundingMode rounding) {
+    return amount.setScale(decimals, rounding).unscaledValue().longValueExact();
+  }
+
+  /**
+   * Calculates amount * factor / divisor rounded to a long without overflowing for any amount as long as
+   * |factor| &lt; divisor (i.e. a rate below 100%). Throws an ArithmeticException if the result overflows.
+   */
+  static long multiply(long amount, long factor, long divisor, RoundingMode rounding) {
+    long quotient = amount / divisor;
+    long remainderProduct = Math.multiplyExact(amount % divisor, factor);
+    long truncated = Math.addExact(Math.multiplyExact(quotient, factor), remainderProduct / divisor);
+    return round(truncated, remainderProduct % divisor, divisor, rounding);
+  }
+
+  /**
+   * Round truncated + remainder / divisor where truncated is the value rounded towards zero and the remainder
+   * has the same sign as the value.
+   */
+  static long round(long truncated, long remainder, long divisor, RoundingMode rounding) {
+    if (remainder == 0) {
+      return truncated;
+    }
+    long sign = remainder > 0 ? 1 : -1;
+    long abs = Math.abs(remainder);
+    // compare the remainder with half the divisor without losing precision
+    int half = Long.compare(abs, divisor - abs);
+    boolean awayFromZero = switch (rounding) {
+      case UP -> true;
+      case DOWN -> false;
+      case CEILING -> sign > 0;
+      case FLOOR -> sign < 0;
+      case HALF_UP -> half >= 0;
+      case HALF_DOWN -> half > 0;
+      case HALF_EVEN -> half > 0 || (half == 0 && (truncated & 1) != 0);
+      case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+    };
+    return awayFromZero ? truncated + sign : truncated;
+  }
+}
@@ -0,0 +1,85 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Reports calculations to the flight recorder and to the MetricsListener (if any). When neither is enabled
+ * this amounts to a volatile read and an event object the JIT removes.
+ */
+final class Instrumentation {
+
+  private static volatile MetricsListener listener;
+
+  private Instrumentation() {}
+
+  static void setListener(MetricsListener metricsListener) {
+    listener = metricsListener;
+  }
+
+  static MetricsListener getListener() {
+    return listener;
+  }
+
+  static double irr(IrrSolver solver, NpvFunction npv, double min, double max, int length) {
+    MetricsListener metrics = listener;
+    IrrEvent event = new IrrEvent();
+    event.begin();
+    long start = metrics == null ? 0 : System.nanoTime();
+    double rate = solver.solve(npv, min, max);
+    if (metrics != null) {
+      metrics.irr(length, solver.getIterations(), solver.getEvaluations(), solver.getStatus(), System.nanoTime() - start);
+    }
+    if (event.shouldCommit()) {
+      event.length = length;
+      event.iterations = solver.getIterations();
+      event.evaluations = solver.getEvaluations();
+      event.status = solver.getStatus().name();
+      event.rate = rate;
+      event.commit();
+    }
+    return rate;
+  }
+
+  static <T> T paymentPlan(String engine, int months, Supplier<T> calculation) {
+    MetricsListener metrics = listener;
+    PaymentPlanCalculationEvent event = new PaymentPlanCalculationEvent();
+    event.begin();
+    long start = metrics == null ? 0 : System.nanoTime();
+    T plan = calculation.get();
+    if (metrics != null) {
+      metrics.paymentPlan(engine, months, System.nanoTime() - start);
+    }
+    if (event.shouldCommit()) {
+      event.engine = engine;
+      event.months = months;
+      event.commit();
+    }
+    return plan;
+  }
+
+  static void batch(String operation, int size, ForkJoinPool pool, ForkJoinTask<?> task) {
+    MetricsListener metrics = listener;
+    BatchEvent event = new BatchEvent();
+    event.begin();
+    long start = metrics == null ? 0 : System.nanoTime();
+    pool.invoke(task);
+    if (metrics != null) {
+      metrics.batch(operation, size, System.nanoTime() - start);
+    }
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.size = size;
+      event.parallelism = pool.getParallelism();
+      event.commit();
+    }
+  }
+
+  static void adaptivePrecision(String operation, boolean fallback) {
+    MetricsListener metrics = listener;
+    if (metrics != null) {
+      metrics.adaptivePrecision(operation, fallback);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package se.alipsa.jfinancials;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of an irr calculation
+ */
+@Name("se.alipsa.jfinancials.Irr")
+@Label("IRR")
+@Category("jfinancials")
+@Description("Solving for the internal rate of return of a cash flow")
+class IrrEvent extends Event {
+
+  @Label("Periods")
+  int length;
+
+  @Label("Iterations")
+  int iterations;
+
+  @Label("NPV Evaluations")
+  int evaluations;
+
+  @Label("Status")
+  String status;
+
+  @Label("Rate")
+  double rate;
+}
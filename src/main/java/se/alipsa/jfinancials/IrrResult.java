@@ -0,0 +1,69 @@
+package se.alipsa.jfinancials;
+
+/**
+ * The outcome of an irr calculation: the rate together with how the solver got there.
+ */
+public final class IrrResult {
+
+  /** The state the solver ended in */
+  public enum Status {
+    /** The rate is the root of the npv within tolerance */
+    CONVERGED,
+    /** The solver gave up, the rate is the best approximation found */
+    NOT_CONVERGED,
+    /**
+     * There is no rate between -100% and IrrSolver.MAX_RATE where the npv is zero, e.g. because all cash flows have
+     * the same sign. The rate is NaN.
+     */
+    NO_ROOT,
+    /** The npv is zero at more than one rate so the irr is not well defined. The rate is NaN. */
+    MULTIPLE_ROOTS
+  }
+
+  private final double rate;
+  private final Status status;
+  private final int iterations;
+  private final int evaluations;
+
+  public IrrResult(double rate, Status status, int iterations, int evaluations) {
+    this.rate = rate;
+    this.status = status;
+    this.iterations = iterations;
+    this.evaluations = evaluations;
+  }
+
+  /**
+   * @return the internal rate of return (per period)
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isConverged() {
+    return status == Status.CONVERGED;
+  }
+
+  /**
+   * @return the number of solver steps (Newton or bisection) taken
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * @return the number of times the npv (and its derivative) was evaluated
+   */
+  public int getEvaluations() {
+    return evaluations;
+  }
+
+  @Override
+  public String toString() {
+    return "IrrResult{rate=" + rate + ", status=" + status + ", iterations=" + iterations
+        + ", evaluations=" + evaluations + '}';
+  }
+}
@@ -0,0 +1,311 @@
+package se.alipsa.jfinancials;
+
+import java.nio.DoubleBuffer;
+
+import static se.alipsa.jfinancials.Financials.MAX_ITERATIONS;
+import static se.alipsa.jfinancials.Financials.MIN_DIFF;
+import static se.alipsa.jfinancials.Financials.RATE_TOLERANCE;
+
+/**
+ * A deterministic irr solver. It takes Newton-Raphson steps using the analytic derivative of the npv
+ * but keeps a bracket known to contain the root; whenever a Newton step would leave the bracket, or does not
+ * shrink it at least as fast as a bisection would, a bisection step is taken instead. This gives the
+ * speed of Newton-Raphson (typically 4-6 npv evaluations) with the guaranteed convergence of bisection.
+ *
+ * <p>Before solving, the sign changes of the cash flow are counted (Descartes' rule of signs). With none there
+ * is no irr and with exactly one (e.g. a loan) there is exactly one, which is first looked for between 0 and 1
+ * and, if not there, by widening the bracket towards -100% and MAX_RATE. With more than one sign change the npv
+ * is scanned for the roots and the solver gives up as soon as a second one is found. In both failure cases the
+ * status is NO_ROOT or MULTIPLE_ROOTS and the rate NaN, after a handful of npv evaluations.</p>
+ *
+ * <p>An instance is not thread safe but can (and should in loops) be reused, solving does not allocate.
+ * The statistics of the last solve are available from the getters after each call.</p>
+ */
+public final class IrrSolver {
+
+  /** The lowest rate tried, -1 + 2^-20 i.e. just above -100% */
+  public static final double MIN_RATE = -1 + 1d / (1 << 20);
+  /** The highest rate tried, 2^20 */
+  public static final double MAX_RATE = 1 << 20;
+
+  private final PeriodicNpv periodicNpv = new PeriodicNpv();
+  private final BufferNpv bufferNpv = new BufferNpv();
+  private final DatedNpv datedNpv = new DatedNpv();
+  private int iterations;
+  private int evaluations;
+  private IrrResult.Status status;
+
+  /**
+   * Calculate the irr of the cash flow, looking for a rate between 0 and 1 first
+   *
+   * @param cashFlow the cash flow where the first entry is the (negative) loan amount
+   * @return the internal rate of return per period, NaN if the status is NO_ROOT or MULTIPLE_ROOTS
+   */
+  public double irr(double[] cashFlow) {
+    return Instrumentation.irr(this, periodicNpv.cashFlow(cashFlow), 0d, 1d, cashFlow.length);
+  }
+
+  /**
+   * Calculate the irr of cashFlow[offset] .. cashFlow[offset + length - 1], useful when reusing a buffer
+   *
+   * @param cashFlow the array containing the cash flow
+   * @param offset the index of the first entry (the loan amount) of the cash flow
+   * @param length the number of entries in the cash flow
+   * @return the internal rate of return per period
+   */
+  public double irr(double[] cashFlow, int offset, int length) {
+    return Instrumentation.irr(this, periodicNpv.cashFlow(cashFlow, offset, length), 0d, 1d, length);
+  }
+
+  /**
+   * Calculate the irr of the length entries from offset of the buffer (e.g. a memory mapped CashFlowStore)
+   * without copying them. Only absolute gets are used so the buffer may be shared between threads.
+   *
+   * @param cashFlow the buffer containing the cash flow
+   * @param offset the index of the first entry (the loan amount) of the cash flow
+   * @param length the number of entries in the cash flow
+   * @return the internal rate of return per period
+   */
+  public double irr(DoubleBuffer cashFlow, int offset, int length) {
+    return Instrumentation.irr(this, bufferNpv.cashFlow(cashFlow, offset, length), 0d, 1d, length);
+  }
+
+  /**
+   * Calculate the yearly irr of a dated cash flow (xirr), i.e. the rate where the sum of
+   * amounts[i] / (1 + rate)^(year fraction from the first date to epochDays[i]) is zero.
+   * Rates between 0 and 1 are tried first and then the bracket is widened as for irr. If the dates are not in order
+   * the sign changes can not be counted, the bracket is then widened until the npv changes sign without checking
+   * for more roots.
+   *
+   * @param amounts the amounts of the cash flow
+   * @param epochDays the date of each amount (LocalDate.toEpochDay())
+   * @param offset the index of the first entry of the cash flow
+   * @param length the number of entries in the cash flow
+   * @param dayCount how to calculate the year fractions
+   * @return the yearly internal rate of return
+   */
+  public double xirr(double[] amounts, long[] epochDays, int offset, int length, DayCount dayCount) {
+    return Instrumentation.irr(this, datedNpv.cashFlow(amounts, epochDays, offset, length, dayCount), 0d, 1d, length);
+  }
+
+  public int getIterations() {
+    return iterations;
+  }
+
+  public int getEvaluations() {
+    return evaluations;
+  }
+
+  public IrrResult.Status getStatus() {
+    return status;
+  }
+
+  double solve(NpvFunction npv, double min, double max) {
+    iterations = 0;
+    evaluations = 0;
+    int signChanges = npv.signChanges();
+    if (signChanges == 0) {
+      return failed(IrrResult.Status.NO_ROOT);
+    }
+    if (signChanges > 1) {
+      return scan(npv);
+    }
+    double fMin = evaluate(npv, min);
+    double dfMin = npv.derivative();
+    double fMax = evaluate(npv, max);
+    double dfMax = npv.derivative();
+    if (Math.abs(fMin) >= MIN_DIFF && Math.abs(fMax) >= MIN_DIFF && (fMin > 0) == (fMax > 0)) {
+      // exactly one root (or, if the sign changes are not known, at least look for one) outside of [min, max]
+      return expand(npv, min, fMin, dfMin, max, fMax, dfMax);
+    }
+    return solve(npv, min, fMin, dfMin, max, fMax, dfMax);
+  }
+
+  /**
+   * There is one root but not between min and max (where the npv has the same sign), widen the interval
+   * by halving the distance to -100% and doubling the upper rate, one side at a time, until the npv changes sign
+   */
+  private double expand(NpvFunction npv, double min, double fMin, double dfMin, double max, double fMax,
+                        double dfMax) {
+    while (min > MIN_RATE || max < MAX_RATE) {
+      if (min > MIN_RATE) {
+        double rate = Math.max(MIN_RATE, -1 + (1 + min) / 2);
+        double f = evaluate(npv, rate);
+        double df = npv.derivative();
+        if (Math.abs(f) < MIN_DIFF || (f > 0) != (fMin > 0)) {
+          return solve(npv, rate, f, df, min, fMin, dfMin);
+        }
+        min = rate;
+        fMin = f;
+        dfMin = df;
+      }
+      if (max < MAX_RATE) {
+        double rate = Math.min(MAX_RATE, Math.max(1, 2 * max));
+        double f = evaluate(npv, rate);
+        double df = npv.derivative();
+        if (Math.abs(f) < MIN_DIFF || (f > 0) != (fMax > 0)) {
+          return solve(npv, max, fMax, dfMax, rate, f, df);
+        }
+        max = rate;
+        fMax = f;
+        dfMax = df;
+      }
+    }
+    return failed(IrrResult.Status.NO_ROOT);
+  }
+
+  /**
+   * There may be several roots, look for sign changes of the npv on a grid of rates from MIN_RATE to MAX_RATE
+   * (-1 + 2^-k and 2^k) and fail as soon as a second one is found. Where the npv has the same sign at two grid
+   * points but a minimum (or maximum) in between, the extremum is located to see if it reaches zero.
+   */
+  private double scan(NpvFunction npv) {
+    int roots = 0;
+    double root = Double.NaN;
+    double rootNpv = 0;
+    double rootDerivative = 0;
+    double lo = 0;
+    double fLo = 0;
+    double dfLo = 0;
+    double hi = 0;
+    double fHi = 0;
+    double dfHi = 0;
+    double previous = 0;
+    double fPrevious = 0;
+    double dfPrevious = 0;
+    for (double rate = MIN_RATE; rate <= MAX_RATE; rate = rate < 0 ? 2 * rate + 1 : Math.max(1, 2 * rate)) {
+      double f = evaluate(npv, rate);
+      double df = npv.derivative();
+      if (Math.abs(f) < MIN_DIFF) {
+        if (++roots > 1) {
+          return failed(IrrResult.Status.MULTIPLE_ROOTS);
+        }
+        root = rate;
+        rootNpv = f;
+        rootDerivative = df;
+        // a root at a grid point is not counted again as a sign change
+        f = 0;
+      } else if (fPrevious != 0 && (f > 0) != (fPrevious > 0)) {
+        if (++roots > 1) {
+          return failed(IrrResult.Status.MULTIPLE_ROOTS);
+        }
+        lo = previous;
+        fLo = fPrevious;
+        dfLo = dfPrevious;
+        hi = rate;
+        fHi = f;
+        dfHi = df;
+      } else if (fPrevious != 0 && (f > 0 ? dfPrevious < 0 && df > 0 : dfPrevious > 0 && df < 0)
+          && reachesZero(npv, previous, rate, f > 0)) {
+        // the npv turns towards zero and back again in between, i.e. (at least) two roots
+        return failed(IrrResult.Status.MULTIPLE_ROOTS);
+      }
+      previous = rate;
+      fPrevious = f;
+      dfPrevious = df;
+    }
+    if (roots == 0) {
+      return failed(IrrResult.Status.NO_ROOT);
+    }
+    if (!Double.isNaN(root)) {
+      return converged(root, rootNpv, rootDerivative);
+    }
+    return solve(npv, lo, fLo, dfLo, hi, fHi, dfHi);
+  }
+
+  /**
+   * Bisect on the sign of the derivative towards the extremum of the npv between a and b
+   *
+   * @param positive true if the npv is positive at a and b (and has a minimum), false if negative (and a maximum)
+   * @return true if the npv is zero or has the other sign somewhere on the way
+   */
+  private boolean reachesZero(NpvFunction npv, double a, double b, boolean positive) {
+    while (b - a > RATE_TOLERANCE * (1 + Math.abs(a))) {
+      double x = 0.5 * (a + b);
+      double f = evaluate(npv, x);
+      if (Math.abs(f) < MIN_DIFF || (f > 0) != positive) {
+        return true;
+      }
+      if ((npv.derivative() < 0) == positive) {
+        a = x;
+      } else {
+        b = x;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the root between min and max where the npv has different signs (or is zero at one end)
+   */
+  private double solve(NpvFunction npv, double min, double fMin, double dfMin, double max, double fMax,
+                       double dfMax) {
+    if (Math.abs(fMin) < MIN_DIFF) {
+      return converged(min, fMin, dfMin);
+    }
+    if (Math.abs(fMax) < MIN_DIFF) {
+      return converged(max, fMax, dfMax);
+    }
+    // Orient the bracket so that npv(lo) < 0 < npv(hi)
+    double lo = fMin < 0 ? min : max;
+    double hi = fMin < 0 ? max : min;
+    // Start where the npv is positive, for a conventional cash flow (e.g. a loan) the npv is convex and
+    // decreasing so Newton steps from that side approach the root monotonically
+    boolean startAtMin = fMin > 0;
+    double x = startAtMin ? min : max;
+    double fx = startAtMin ? fMin : fMax;
+    double dfx = startAtMin ? dfMin : dfMax;
+    double dxOld = Math.abs(max - min);
+    double dx = dxOld;
+    while (iterations < MAX_ITERATIONS) {
+      iterations++;
+      // close to -100% the npv of a long cash flow may overflow, bisect until it does not
+      if (dfx == 0 || !Double.isFinite(fx) || !Double.isFinite(dfx)
+          || ((x - hi) * dfx - fx) * ((x - lo) * dfx - fx) > 0
+          || Math.abs(2 * fx) > Math.abs(dxOld * dfx)) {
+        dxOld = dx;
+        dx = 0.5 * (hi - lo);
+        x = lo + dx;
+      } else {
+        dxOld = dx;
+        dx = fx / dfx;
+        x -= dx;
+      }
+      if (Math.abs(dx) <= RATE_TOLERANCE * (1 + Math.abs(x))) {
+        return converged(x, 0, 0);
+      }
+      fx = evaluate(npv, x);
+      dfx = npv.derivative();
+      if (Math.abs(fx) < MIN_DIFF) {
+        return converged(x, fx, dfx);
+      }
+      if (fx < 0) {
+        lo = x;
+      } else {
+        hi = x;
+      }
+    }
+    status = IrrResult.Status.NOT_CONVERGED;
+    return x;
+  }
+
+  private double evaluate(NpvFunction npv, double rate) {
+    evaluations++;
+    return npv.evaluate(rate);
+  }
+
+  private double failed(IrrResult.Status failure) {
+    status = failure;
+    return Double.NaN;
+  }
+
+  /**
+   * The npv is within MIN_DIFF of zero at the rate, which for a large cash flow can still be some 1e-11 from the
+   * root, so a last Newton step (from the npv and derivative already evaluated) is taken
+   */
+  private double converged(double rate, double npv, double derivative) {
+    status = IrrResult.Status.CONVERGED;
+    double step = npv / derivative;
+    return Double.isFinite(step) && Math.abs(step) < MIN_DIFF ? rate - step : rate;
+  }
+}
@@ -0,0 +1,57 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * The terms of a loan to quote, see QuoteProcessor
+ */
+public final class LoanRequest {
+
+  private final int loanAmount;
+  private final BigDecimal interest;
+  private final int tenureMonths;
+  private final int amFreeMonths;
+  private final int invoiceFee;
+
+  /**
+   * @param loanAmount the loan amount including startup fee
+   * @param interest the nominal yearly interest rate
+   * @param tenureMonths the tenure in months
+   * @param amFreeMonths the number of amortization free months
+   * @param invoiceFee the invoice fee of each month
+   */
+  public LoanRequest(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths, int invoiceFee) {
+    this.loanAmount = loanAmount;
+    this.interest = Objects.requireNonNull(interest, "interest");
+    this.tenureMonths = tenureMonths;
+    this.amFreeMonths = amFreeMonths;
+    this.invoiceFee = invoiceFee;
+  }
+
+  public int getLoanAmount() {
+    return loanAmount;
+  }
+
+  public BigDecimal getInterest() {
+    return interest;
+  }
+
+  public int getTenureMonths() {
+    return tenureMonths;
+  }
+
+  public int getAmFreeMonths() {
+    return amFreeMonths;
+  }
+
+  public int getInvoiceFee() {
+    return invoiceFee;
+  }
+
+  @Override
+  public String toString() {
+    return "LoanRequest{loanAmount=" + loanAmount + ", interest=" + interest + ", tenureMonths=" + tenureMonths
+        + ", amFreeMonths=" + amFreeMonths + ", invoiceFee=" + invoiceFee + '}';
+  }
+}
@@ -0,0 +1,47 @@
+package se.alipsa.jfinancials;
+
+/**
+ * Receives measurements from the calculations, register an implementation with
+ * Financials.setMetricsListener(MetricsListener). When no listener is registered (the default) nothing is
+ * measured. The methods are called on the calculating threads so implementations must be thread safe and fast.
+ * See SimpleMetrics for an implementation collecting counters and histograms.
+ */
+public interface MetricsListener {
+
+  /**
+   * Called after each irr calculation
+   *
+   * @param length the number of periods of the cash flow
+   * @param iterations the number of solver iterations
+   * @param evaluations the number of npv evaluations
+   * @param status whether the solver converged
+   * @param nanos the time it took in nanoseconds
+   */
+  default void irr(int length, int iterations, int evaluations, IrrResult.Status status, long nanos) {}
+
+  /**
+   * Called after each payment plan has been created
+   *
+   * @param engine the kind of payment plan, e.g. BigDecimal or columnar
+   * @param months the tenure of the plan
+   * @param nanos the time it took in nanoseconds
+   */
+  default void paymentPlan(String engine, int months, long nanos) {}
+
+  /**
+   * Called after each batch calculation
+   *
+   * @param operation the name of the batch operation, e.g. effectiveInterestRates
+   * @param size the number of results calculated
+   * @param nanos the time it took in nanoseconds
+   */
+  default void batch(String operation, int size, long nanos) {}
+
+  /**
+   * Called after each AdaptivePrecision calculation
+   *
+   * @param operation the calculation, effectiveInterestRate or paymentPlan
+   * @param fallback true if the double precision result could not be certified and BigDecimal was used
+   */
+  default void adaptivePrecision(String operation, boolean fallback) {}
+}
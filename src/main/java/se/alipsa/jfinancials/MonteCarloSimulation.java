@@ -0,0 +1,164 @@
+package se.alipsa.jfinancials;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Simulates prepayments and defaults of a portfolio of annuity loans and collects the distribution of the irr and
+ * npv of the portfolio cash flow. In each scenario, each month and for each loan still running:
+ * <ul>
+ *   <li>the loan defaults with the monthly probability derived from the yearly default rate, in which case
+ *   the recovery rate times the balance is received and the loan ends</li>
+ *   <li>otherwise the scheduled payment (as in Financials.cashFlow) is received and then the loan is prepaid in
+ *   full with the monthly probability derived from the yearly prepayment rate</li>
+ * </ul>
+ *
+ * <p>Scenarios are run in parallel using fork join. The random numbers come from a SplittableRandom that is
+ * split in the same way regardless of the number of threads, so the result for a given seed is always the same.
+ * Cash flows are generated into a reused buffer per task, nothing is allocated per scenario.</p>
+ */
+public final class MonteCarloSimulation {
+
+  private final int[] loanAmounts;
+  private final double[] interests;
+  private final int[] tenureMonths;
+  private final int[] amFreeMonths;
+  private final int[] invoiceFees;
+  private final double[] monthlyAnnuities;
+  private final int maxTenure;
+  private double prepaymentRate;
+  private double defaultRate;
+  private double recoveryRate;
+  private double discountRate;
+
+  /**
+   * Create a simulation of a portfolio of loans, loan i is made up of the values at index i of each array
+   *
+   * @param loanAmounts the loan amounts *INCLUDING* startup fees
+   * @param interests the nominal yearly interest rates
+   * @param tenureMonths the tenures in months
+   * @param amFreeMonths the number of amortization free months
+   * @param invoiceFees the invoice fees
+   */
+  public MonteCarloSimulation(int[] loanAmounts, double[] interests, int[] tenureMonths, int[] amFreeMonths,
+                              int[] invoiceFees) {
+    int size = loanAmounts.length;
+    if (size == 0 || interests.length != size || tenureMonths.length != size || amFreeMonths.length != size
+        || invoiceFees.length != size) {
+      throw new IllegalArgumentException("All arrays must have the same, non zero, length (" + size + ")");
+    }
+    this.loanAmounts = loanAmounts.clone();
+    this.interests = interests.clone();
+    this.tenureMonths = tenureMonths.clone();
+    this.amFreeMonths = amFreeMonths.clone();
+    this.invoiceFees = invoiceFees.clone();
+    monthlyAnnuities = new double[size];
+    int max = 0;
+    for (int i = 0; i < size; i++) {
+      monthlyAnnuities[i] = Financials.monthlyAnnuityAmount(loanAmounts[i], interests[i], tenureMonths[i], amFreeMonths[i]);
+      max = Math.max(max, tenureMonths[i]);
+    }
+    maxTenure = max;
+  }
+
+  /**
+   * @param prepaymentRate the yearly probability that a loan is prepaid in full (CPR), default 0
+   */
+  public void setPrepaymentRate(double prepaymentRate) {
+    this.prepaymentRate = probability(prepaymentRate, "prepaymentRate");
+  }
+
+  /**
+   * @param defaultRate the yearly probability that a loan defaults (CDR), default 0
+   */
+  public void setDefaultRate(double defaultRate) {
+    this.defaultRate = probability(defaultRate, "defaultRate");
+  }
+
+  /**
+   * @param recoveryRate the part of the balance recovered when a loan defaults, default 0
+   */
+  public void setRecoveryRate(double recoveryRate) {
+    this.recoveryRate = probability(recoveryRate, "recoveryRate");
+  }
+
+  /**
+   * @param discountRate the monthly rate used to calculate the npv of each scenario, default 0
+   */
+  public void setDiscountRate(double discountRate) {
+    this.discountRate = discountRate;
+  }
+
+  /**
+   * Run the scenarios in the common fork join pool
+   *
+   * @param scenarios the number of scenarios
+   * @param seed the seed of the random numbers, the same seed gives the same result
+   * @return the irr and npv of each scenario
+   */
+  public SimulationResult run(int scenarios, long seed) {
+    return run(scenarios, seed, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Run the scenarios in the pool given
+   *
+   * @param scenarios the number of scenarios
+   * @param seed the seed of the random numbers, the same seed gives the same result
+   * @param pool the pool to run in
+   * @return the irr and npv of each scenario
+   */
+  public SimulationResult run(int scenarios, long seed, ForkJoinPool pool) {
+    double[] irr = new double[scenarios];
+    double[] npv = new double[scenarios];
+    double monthlyPrepayment = 1 - Math.pow(1 - prepaymentRate, 1 / 12d);
+    double monthlyDefault = 1 - Math.pow(1 - defaultRate, 1 / 12d);
+    Instrumentation.batch("monteCarlo", scenarios, pool, new MonteCarloTask(this, monthlyPrepayment, monthlyDefault,
+        new SplittableRandom(seed), irr, npv, 0, scenarios));
+    return new SimulationResult(irr, npv);
+  }
+
+  int getMaxTenure() {
+    return maxTenure;
+  }
+
+  /**
+   * Generate the portfolio cash flow of one scenario into the buffer (of length maxTenure + 1)
+   */
+  void scenario(SplittableRandom random, double monthlyPrepayment, double monthlyDefault, double[] cashFlow) {
+    cashFlow[0] = 0;
+    for (int month = 1; month <= maxTenure; month++) {
+      cashFlow[month] = 0;
+    }
+    for (int i = 0; i < loanAmounts.length; i++) {
+      double balance = loanAmounts[i];
+      double monthlyInterest = interests[i] / 12;
+      cashFlow[0] -= balance;
+      for (int month = 1; month <= tenureMonths[i]; month++) {
+        if (monthlyDefault > 0 && random.nextDouble() < monthlyDefault) {
+          cashFlow[month] += recoveryRate * balance;
+          break;
+        }
+        double interestAmt = balance * monthlyInterest;
+        double costOfCredit = amFreeMonths[i] >= month ? interestAmt : monthlyAnnuities[i];
+        balance -= costOfCredit - interestAmt;
+        cashFlow[month] += costOfCredit + invoiceFees[i];
+        if (month < tenureMonths[i] && monthlyPrepayment > 0 && random.nextDouble() < monthlyPrepayment) {
+          cashFlow[month] += balance;
+          break;
+        }
+      }
+    }
+  }
+
+  double getDiscountRate() {
+    return discountRate;
+  }
+
+  private static double probability(double value, String name) {
+    if (value < 0 || value > 1) {
+      throw new IllegalArgumentException(name + " must be between 0 and 1 but was " + value);
+    }
+    return value;
+  }
+}
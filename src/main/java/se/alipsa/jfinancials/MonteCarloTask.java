@@ -0,0 +1,73 @@
+package se.alipsa.jfinancials;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a range of Monte Carlo scenarios. The range is split in half (the left half getting a split of the
+ * random generator) down to a fixed leaf size, so the random numbers of each scenario depend only on the seed
+ * and not on the number of threads.
+ */
+class MonteCarloTask extends RecursiveAction {
+
+  /** Fixed (not depending on the parallelism) so that the split of the random generator is reproducible */
+  private static final int LEAF_SIZE = 64;
+
+  private final MonteCarloSimulation simulation;
+  private final double monthlyPrepayment;
+  private final double monthlyDefault;
+  private final SplittableRandom random;
+  private final double[] irr;
+  private final double[] npv;
+  private final int from;
+  private final int to;
+
+  MonteCarloTask(MonteCarloSimulation simulation, double monthlyPrepayment, double monthlyDefault,
+                 SplittableRandom random, double[] irr, double[] npv, int from, int to) {
+    this.simulation = simulation;
+    this.monthlyPrepayment = monthlyPrepayment;
+    this.monthlyDefault = monthlyDefault;
+    this.random = random;
+    this.irr = irr;
+    this.npv = npv;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected void compute() {
+    if (to - from <= LEAF_SIZE) {
+      int length = simulation.getMaxTenure() + 1;
+      double[] cashFlow = new double[length];
+      IrrSolver solver = new IrrSolver();
+      double discountRate = simulation.getDiscountRate();
+      for (int i = from; i < to; i++) {
+        simulation.scenario(random.split(), monthlyPrepayment, monthlyDefault, cashFlow);
+        irr[i] = lossAdjusted(solver.irr(cashFlow, 0, length), cashFlow, length);
+        npv[i] = PeriodicNpv.npv(cashFlow, 0, length, discountRate);
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    invokeAll(
+        new MonteCarloTask(simulation, monthlyPrepayment, monthlyDefault, random.split(), irr, npv, from, mid),
+        new MonteCarloTask(simulation, monthlyPrepayment, monthlyDefault, random, irr, npv, mid, to)
+    );
+  }
+
+  /**
+   * A total loss (no payments at all, e.g. all loans defaulting in the first month with no recovery) has no sign
+   * change so there is no irr, and a near total loss has its irr below the range of the solver. Both are
+   * reported as -1 (all money lost) instead of NaN, which is the limit of the irr as the payments go to zero.
+   */
+  private static double lossAdjusted(double rate, double[] cashFlow, int length) {
+    if (!Double.isNaN(rate)) {
+      return rate;
+    }
+    double sum = 0;
+    for (int t = 0; t < length; t++) {
+      sum += cashFlow[t];
+    }
+    return sum < 0 ? -1 : rate;
+  }
+}
@@ -0,0 +1,56 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves the nominal rate for each cell of a pricing grid of loan amounts x invoice fees x tenures. Each row
+ * (an amount and fee combination) is solved sequentially over the tenures, starting each cell from the solution
+ * of the previous one, while the rows are solved in parallel.
+ */
+class NominalRateGridTask extends RecursiveAction {
+
+  private final double targetApr;
+  private final int[] loanAmounts;
+  private final int[] invoiceFees;
+  private final int[] tenureMonths;
+  private final int amFreeMonths;
+  private final double[] result;
+  private final int fromRow;
+  private final int toRow;
+
+  NominalRateGridTask(double targetApr, int[] loanAmounts, int[] invoiceFees, int[] tenureMonths, int amFreeMonths,
+                      double[] result, int fromRow, int toRow) {
+    this.targetApr = targetApr;
+    this.loanAmounts = loanAmounts;
+    this.invoiceFees = invoiceFees;
+    this.tenureMonths = tenureMonths;
+    this.amFreeMonths = amFreeMonths;
+    this.result = result;
+    this.fromRow = fromRow;
+    this.toRow = toRow;
+  }
+
+  @Override
+  protected void compute() {
+    if (toRow - fromRow > 1) {
+      int mid = (fromRow + toRow) >>> 1;
+      invokeAll(
+          new NominalRateGridTask(targetApr, loanAmounts, invoiceFees, tenureMonths, amFreeMonths, result, fromRow, mid),
+          new NominalRateGridTask(targetApr, loanAmounts, invoiceFees, tenureMonths, amFreeMonths, result, mid, toRow)
+      );
+      return;
+    }
+    NominalRateSolver solver = new NominalRateSolver(targetApr);
+    int loanAmount = loanAmounts[fromRow / invoiceFees.length];
+    int invoiceFee = invoiceFees[fromRow % invoiceFees.length];
+    int offset = fromRow * tenureMonths.length;
+    double guess = Double.NaN;
+    for (int t = 0; t < tenureMonths.length; t++) {
+      double rate = solver.solve(loanAmount, tenureMonths[t], amFreeMonths, invoiceFee, guess);
+      result[offset + t] = rate;
+      if (!Double.isNaN(rate)) {
+        guess = rate;
+      }
+    }
+  }
+}
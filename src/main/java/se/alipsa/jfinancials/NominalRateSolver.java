@@ -0,0 +1,147 @@
+package se.alipsa.jfinancials;
+
+import static se.alipsa.jfinancials.Financials.MAX_ITERATIONS;
+import static se.alipsa.jfinancials.Financials.RATE_TOLERANCE;
+
+/**
+ * Finds the nominal yearly interest rate that gives a loan a target effective interest rate (apr).
+ *
+ * <p>Instead of nesting an irr calculation inside a search over the nominal rate, the target apr is turned into
+ * a monthly discount rate i once and the solver looks for the nominal rate r where the npv at i of the loans
+ * cash flow is zero. The cash flow is constant over the amortization free months and over the amortizing
+ * months so the npv is evaluated in closed form with two geometric sums, i.e. in constant time regardless of
+ * the tenure. The npv is increasing in r and the root is bracketed by [0, 12 * i] (when the fee is
+ * not negative) so a safeguarded secant (Illinois) iteration converges in a handful of steps.</p>
+ *
+ * Not thread safe, use one instance per thread.
+ */
+class NominalRateSolver {
+
+  private final double targetMonthlyRate;
+  private final double v;
+  private int evaluations;
+
+  NominalRateSolver(double targetApr) {
+    this.targetMonthlyRate = Math.pow(1 + targetApr, 1.0 / 12) - 1;
+    this.v = 1 / (1 + targetMonthlyRate);
+  }
+
+  int getEvaluations() {
+    return evaluations;
+  }
+
+  /**
+   * @param guess a starting point (e.g. the solution of a similar loan) or NaN if unknown
+   * @return the nominal yearly interest rate or NaN if the target cannot be reached with a non-negative rate
+   */
+  double solve(int loanAmount, int tenureMonths, int amFreeMonths, int invoiceFee, double guess) {
+    evaluations = 0;
+    double lo = 0;
+    double fLo = npv(lo, loanAmount, tenureMonths, amFreeMonths, invoiceFee);
+    if (fLo > 0) {
+      // the fees alone give a higher apr than the target
+      return Double.NaN;
+    }
+    if (fLo == 0) {
+      return lo;
+    }
+    double hi = 12 * targetMonthlyRate;
+    double fHi = npv(hi, loanAmount, tenureMonths, amFreeMonths, invoiceFee);
+    int expansions = 0;
+    while (fHi < 0 && expansions++ < 64) {
+      lo = hi;
+      fLo = fHi;
+      hi = hi * 2 + 0.01;
+      fHi = npv(hi, loanAmount, tenureMonths, amFreeMonths, invoiceFee);
+    }
+    if (fHi < 0) {
+      return Double.NaN;
+    }
+    if (!Double.isNaN(guess) && guess > lo && guess < hi) {
+      // narrow the bracket around the guess, a neighbouring cell is usually very close
+      double x = guess;
+      double fx = npv(x, loanAmount, tenureMonths, amFreeMonths, invoiceFee);
+      if (fx == 0) {
+        return x;
+      }
+      if (fx < 0) {
+        lo = x; fLo = fx;
+      } else {
+        hi = x; fHi = fx;
+      }
+      double step = Math.max(1E-4, guess * 0.01);
+      double direction = fx < 0 ? 1 : -1;
+      while (true) {
+        double next = x + direction * step;
+        if (next <= lo || next >= hi) {
+          break;
+        }
+        double fNext = npv(next, loanAmount, tenureMonths, amFreeMonths, invoiceFee);
+        if (fNext == 0) {
+          return next;
+        }
+        if (fNext < 0) {
+          lo = next; fLo = fNext;
+        } else {
+          hi = next; fHi = fNext;
+        }
+        if ((fNext < 0) != (fx < 0)) {
+          break;
+        }
+        x = next;
+        fx = fNext;
+        step *= 2;
+      }
+    }
+    // Illinois variant of regula falsi, fLo < 0 < fHi
+    int side = 0;
+    for (int i = 0; i < MAX_ITERATIONS; i++) {
+      double x = (lo * fHi - hi * fLo) / (fHi - fLo);
+      if (hi - lo <= RATE_TOLERANCE * (1 + Math.abs(x))) {
+        return x;
+      }
+      double fx = npv(x, loanAmount, tenureMonths, amFreeMonths, invoiceFee);
+      if (fx == 0) {
+        return x;
+      }
+      if (fx < 0) {
+        if (Math.abs(x - lo) <= RATE_TOLERANCE * (1 + Math.abs(x))) {
+          return x;
+        }
+        lo = x;
+        fLo = fx;
+        if (side == -1) {
+          fHi /= 2;
+        }
+        side = -1;
+      } else {
+        if (Math.abs(hi - x) <= RATE_TOLERANCE * (1 + Math.abs(x))) {
+          return x;
+        }
+        hi = x;
+        fHi = fx;
+        if (side == 1) {
+          fLo /= 2;
+        }
+        side = 1;
+      }
+    }
+    return (lo + hi) / 2;
+  }
+
+  /**
+   * The npv at the target monthly rate of the cash flow (as in Financials.cashFlow) of a loan with the
+   * nominal interest given
+   */
+  double npv(double interest, int loanAmount, int tenureMonths, int amFreeMonths, int invoiceFee) {
+    evaluations++;
+    double interestCostAmFreePeriod = loanAmount * interest / 12;
+    double monthlyAnnuity = interest == 0
+        ? (double) loanAmount / (tenureMonths - amFreeMonths)
+        : Financials.monthlyAnnuityAmount(loanAmount, interest, tenureMonths, amFreeMonths);
+    int lastAmFreeMonth = Math.min(amFreeMonths, tenureMonths);
+    return -loanAmount
+        + (interestCostAmFreePeriod + invoiceFee) * PeriodicNpv.geometricSum(v, 1, lastAmFreeMonth)
+        + (monthlyAnnuity + invoiceFee) * PeriodicNpv.geometricSum(v, lastAmFreeMonth + 1, tenureMonths);
+  }
+}
@@ -0,0 +1,32 @@
+package se.alipsa.jfinancials;
+
+/**
+ * A net present value as a function of the rate, used by the IrrSolver to find the rate where it is zero.
+ * Implementations are stateful and not thread safe, evaluate() must be called before derivative().
+ */
+interface NpvFunction {
+
+  /**
+   * Evaluate the net present value at the rate given
+   *
+   * @param rate the rate to discount with
+   * @return the net present value
+   */
+  double evaluate(double rate);
+
+  /**
+   * @return the derivative (with regards to the rate) at the rate of the last call to evaluate
+   */
+  double derivative();
+
+  /**
+   * The number of sign changes of the cash flow in time order (zeros ignored), counted up to 2. By Descartes' rule
+   * of signs this is an upper bound of the number of rates above -100% where the npv is zero: none if 0 and
+   * exactly one if 1.
+   *
+   * @return 0, 1 or 2 (for 2 or more), or -1 if not known
+   */
+  default int signChanges() {
+    return -1;
+  }
+}
@@ -3,6 +3,10 @@ package se.alipsa.jfinancials;
 import java.math.BigDecimal;
 import java.util.List;
 
+/**
+ * A row of a PaymentPlan. Rows shared by a re-amortized plan and the plan it was created from are read only,
+ * use PaymentPlan.edit(int) to get a row that can be modified.
+ */
 public class Payment {
 
   public static final List<String> columnNames = List.of("month", "costOfCredit", "interestAmt", "amortization", "invoiceFee", "outgoingBalance", "cashFlow");
@@ -14,12 +18,14 @@ public class Payment {
   private BigDecimal invoiceFee = BigDecimal.ZERO;
   private BigDecimal outgoingBalance = BigDecimal.ZERO;
   private BigDecimal cacheFlow = BigDecimal.ZERO;
+  private boolean shared;
 
   public int getMonth() {
     return month;
   }
 
   public void setMonth(int month) {
+    checkNotShared();
     this.month = month;
   }
 
@@ -28,6 +34,7 @@ public class Payment {
   }
 
   public void setCostOfCredit(BigDecimal costOfCredit) {
+    checkNotShared();
     this.costOfCredit = costOfCredit;
   }
 
@@ -36,6 +43,7 @@ public class Payment {
   }
 
   public void setInterestAmt(BigDecimal interestAmt) {
+    checkNotShared();
     this.interestAmt = interestAmt;
   }
 
@@ -44,6 +52,7 @@ public class Payment {
   }
 
   public void setAmortization(BigDecimal amortization) {
+    checkNotShared();
     this.amortization = amortization;
   }
 
@@ -52,6 +61,7 @@ public class Payment {
   }
 
   public void setInvoiceFee(BigDecimal invoiceFee) {
+    checkNotShared();
     this.invoiceFee = invoiceFee;
   }
 
@@ -60,6 +70,7 @@ public class Payment {
   }
 
   public void setOutgoingBalance(BigDecimal outgoingBalance) {
+    checkNotShared();
     this.outgoingBalance = outgoingBalance;
   }
 
@@ -68,9 +79,46 @@ public class Payment {
   }
 
   public void setCacheFlow(BigDecimal cacheFlow) {
+    checkNotShared();
     this.cacheFlow = cacheFlow;
   }
 
+  /**
+   * @return true if the payment is shared by more than one plan and therefore read only
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * Make the payment read only so that it can be shared by more than one plan
+   */
+  void share() {
+    shared = true;
+  }
+
+  private void checkNotShared() {
+    if (shared) {
+      throw new UnsupportedOperationException("The payment of month " + month
+          + " is shared by more than one plan, use PaymentPlan.edit(int) to modify it");
+    }
+  }
+
+  /**
+   * @return a new (not shared) Payment with the same values (the BigDecimals are immutable so they are shared)
+   */
+  Payment copy() {
+    Payment p = new Payment();
+    p.month = month;
+    p.costOfCredit = costOfCredit;
+    p.interestAmt = interestAmt;
+    p.amortization = amortization;
+    p.invoiceFee = invoiceFee;
+    p.outgoingBalance = outgoingBalance;
+    p.cacheFlow = cacheFlow;
+    return p;
+  }
+
   public Number get(int index) {
     return switch (index) {
       case 0 -> month;
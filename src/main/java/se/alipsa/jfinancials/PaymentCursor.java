@@ -0,0 +1,118 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * A primitive (double) cursor over the rows of a payment plan. Each call to next() calculates the next row from
+ * the current one, nothing is allocated per row, so consumers that only need e.g. a running total or the
+ * balance at some month never materialize the plan. The values are the same as in
+ * Financials.columnarPaymentPlan. Not thread safe.
+ *
+ * <pre>
+ * PaymentCursor cursor = Financials.paymentCursor(10000, BigDecimal.valueOf(0.035), 18, 6, BigDecimal.valueOf(30));
+ * while (cursor.next()) {
+ *   totalInterest += cursor.getInterestAmt();
+ * }
+ * </pre>
+ */
+public final class PaymentCursor {
+
+  private final double interestCostAmFreePeriod;
+  private final double monthlyInterest;
+  private final double monthlyAnnuity;
+  private final double fee;
+  private final double loanAmount;
+  private final int tenureMonths;
+  private final int amFreeMonths;
+
+  private int month = -1;
+  private double costOfCredit;
+  private double interestAmt;
+  private double amortization;
+  private double invoiceFee;
+  private double outgoingBalance;
+  private double cashFlow;
+
+  PaymentCursor(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths, BigDecimal invoiceFee) {
+    this.interestCostAmFreePeriod = BigDecimal.valueOf(loanAmount).multiply(interest).divide(BigDecimal.valueOf(12), Financials.SCALE, RoundingMode.HALF_UP).doubleValue();
+    this.monthlyInterest = interest.divide(BigDecimal.valueOf(12), Financials.SCALE, RoundingMode.HALF_UP).doubleValue();
+    this.monthlyAnnuity = Financials.monthlyAnnuityAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths);
+    this.fee = invoiceFee.doubleValue();
+    this.loanAmount = loanAmount;
+    this.tenureMonths = tenureMonths;
+    this.amFreeMonths = amFreeMonths;
+  }
+
+  /**
+   * Move to the next row, the first call moves to month 0 (the payout of the loan)
+   *
+   * @return false if there are no more rows
+   */
+  public boolean next() {
+    if (month >= tenureMonths) {
+      return false;
+    }
+    month++;
+    if (month == 0) {
+      outgoingBalance = loanAmount;
+      cashFlow = -loanAmount;
+      return true;
+    }
+    costOfCredit = amFreeMonths >= month ? interestCostAmFreePeriod : monthlyAnnuity;
+    interestAmt = outgoingBalance * monthlyInterest;
+    amortization = costOfCredit - interestAmt;
+    invoiceFee = fee;
+    outgoingBalance -= amortization;
+    cashFlow = costOfCredit + fee;
+    return true;
+  }
+
+  /**
+   * Move forward to the month given
+   *
+   * @param month the month to move to
+   * @return false if the month is beyond the tenure or before the current month
+   */
+  public boolean moveTo(int month) {
+    if (month < this.month || month > tenureMonths) {
+      return false;
+    }
+    while (this.month < month) {
+      next();
+    }
+    return true;
+  }
+
+  public int getTenureMonths() {
+    return tenureMonths;
+  }
+
+  public int getMonth() {
+    return month;
+  }
+
+  public double getCostOfCredit() {
+    return costOfCredit;
+  }
+
+  public double getInterestAmt() {
+    return interestAmt;
+  }
+
+  public double getAmortization() {
+    return amortization;
+  }
+
+  public double getInvoiceFee() {
+    return invoiceFee;
+  }
+
+  public double getOutgoingBalance() {
+    return outgoingBalance;
+  }
+
+  public double getCashFlow() {
+    return cashFlow;
+  }
+}
@@ -0,0 +1,102 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Calculates the payments of a plan one at a time, each from the outgoing balance of the previous one,
+ * so that the whole plan never has to be in memory.
+ */
+class PaymentIterator implements Iterator<Payment> {
+
+  private Payment opening;
+  private BigDecimal balance;
+  private final BigDecimal monthlyInterest;
+  private final BigDecimal monthlyAnnuity;
+  private final BigDecimal interestCostAmFreePeriod;
+  private final int amFreeMonths;
+  private final BigDecimal invoiceFee;
+  private final int lastMonth;
+  private int month;
+
+  /**
+   * @param opening an optional (may be null) row to return before the calculated ones
+   * @param balance the outgoing balance of the month before firstMonth
+   * @param monthlyInterest the interest rate per month
+   * @param monthlyAnnuity the cost of credit of the amortizing months
+   * @param interestCostAmFreePeriod the cost of credit of the amortization free months
+   * @param amFreeMonths months up to and including this one are amortization free
+   * @param invoiceFee the invoice fee of each month
+   * @param firstMonth the first month to calculate
+   * @param lastMonth the last month to calculate
+   */
+  PaymentIterator(Payment opening, BigDecimal balance, BigDecimal monthlyInterest, BigDecimal monthlyAnnuity,
+                  BigDecimal interestCostAmFreePeriod, int amFreeMonths, BigDecimal invoiceFee,
+                  int firstMonth, int lastMonth) {
+    this.opening = opening;
+    this.balance = balance;
+    this.monthlyInterest = monthlyInterest;
+    this.monthlyAnnuity = monthlyAnnuity;
+    this.interestCostAmFreePeriod = interestCostAmFreePeriod;
+    this.amFreeMonths = amFreeMonths;
+    this.invoiceFee = invoiceFee;
+    this.month = firstMonth;
+    this.lastMonth = lastMonth;
+  }
+
+  /**
+   * Iterates over the same payments as Financials.paymentPlan creates, starting with month 0
+   */
+  static PaymentIterator forLoan(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                 BigDecimal invoiceFee) {
+    BigDecimal interestCostAmFreePeriod = BigDecimal.valueOf(loanAmount).multiply(interest).divide(BigDecimal.valueOf(12), Financials.SCALE, RoundingMode.HALF_UP);
+    BigDecimal monthlyAnnuity = BigDecimal.valueOf(Financials.monthlyAnnuityAmount(loanAmount, interest.doubleValue(), tenureMonths, amFreeMonths));
+    BigDecimal monthlyInterest = interest.divide(BigDecimal.valueOf(12), Financials.SCALE, RoundingMode.HALF_UP);
+    Payment opening = new Payment();
+    opening.setOutgoingBalance(BigDecimal.valueOf(loanAmount));
+    opening.setCacheFlow(BigDecimal.valueOf((long) loanAmount * -1));
+    return new PaymentIterator(opening, opening.getOutgoingBalance(), monthlyInterest, monthlyAnnuity,
+        interestCostAmFreePeriod, amFreeMonths, invoiceFee, 1, tenureMonths);
+  }
+
+  /**
+   * @return the number of payments left
+   */
+  int remaining() {
+    return Math.max(0, lastMonth - month + 1) + (opening == null ? 0 : 1);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return opening != null || month <= lastMonth;
+  }
+
+  @Override
+  public Payment next() {
+    if (opening != null) {
+      Payment p = opening;
+      opening = null;
+      return p;
+    }
+    if (month > lastMonth) {
+      throw new NoSuchElementException("No more payments after month " + lastMonth);
+    }
+    Payment p = new Payment();
+    p.setMonth(month);
+    if (amFreeMonths >= month) {
+      p.setCostOfCredit(interestCostAmFreePeriod);
+    } else {
+      p.setCostOfCredit(monthlyAnnuity);
+    }
+    p.setInterestAmt(balance.multiply(monthlyInterest));
+    p.setAmortization(p.getCostOfCredit().subtract(p.getInterestAmt()));
+    p.setInvoiceFee(invoiceFee);
+    p.setOutgoingBalance(balance.subtract(p.getAmortization()));
+    p.setCacheFlow(p.getCostOfCredit().add(p.getInvoiceFee()));
+    balance = p.getOutgoingBalance();
+    month++;
+    return p;
+  }
+}
@@ -14,6 +14,11 @@ import java.util.stream.Collectors;
 public class PaymentPlan extends ArrayList<Payment> {
 
   private static final List<String> columnNames = Payment.columnNames;
+
+  private BigDecimal interest;
+  private int amFreeMonths;
+  private BigDecimal invoiceFee;
+
   /**
    * Default constructor
    */
@@ -27,6 +32,7 @@ public class PaymentPlan extends ArrayList<Payment> {
    */
   public PaymentPlan(PaymentPlan payments) {
     super(payments);
+    setTerms(payments.interest, payments.amFreeMonths, payments.invoiceFee);
   }
 
   /**
@@ -38,6 +44,59 @@ public class PaymentPlan extends ArrayList<Payment> {
     super(initialCapacity);
   }
 
+  /**
+   * Set the terms the plan was calculated with, needed to re-amortize it
+   */
+  void setTerms(BigDecimal interest, int amFreeMonths, BigDecimal invoiceFee) {
+    this.interest = interest;
+    this.amFreeMonths = amFreeMonths;
+    this.invoiceFee = invoiceFee;
+  }
+
+  /**
+   * @return the yearly interest rate (of the last month) or null if the plan was not created by Financials
+   */
+  public BigDecimal getInterest() {
+    return interest;
+  }
+
+  /**
+   * @return the number of amortization free months
+   */
+  public int getAmFreeMonths() {
+    return amFreeMonths;
+  }
+
+  /**
+   * @return the invoice fee of each month or null if the plan was not created by Financials
+   */
+  public BigDecimal getInvoiceFee() {
+    return invoiceFee;
+  }
+
+  /**
+   * @return the month of the last payment
+   */
+  public int getTenureMonths() {
+    return isEmpty() ? 0 : get(size() - 1).getMonth();
+  }
+
+  /**
+   * Get a payment that can be modified. A payment shared with another plan (the months before the event of a
+   * re-amortized plan) is copied and replaced in this plan first, the other plan is not changed.
+   *
+   * @param index the index of the payment
+   * @return the payment at the index, owned by this plan
+   */
+  public Payment edit(int index) {
+    Payment p = get(index);
+    if (p.isShared()) {
+      p = p.copy();
+      set(index, p);
+    }
+    return p;
+  }
+
   /**
    * Transform the list of Payment into List of List of values
    *
@@ -0,0 +1,23 @@
+package se.alipsa.jfinancials;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of creating a payment plan
+ */
+@Name("se.alipsa.jfinancials.PaymentPlan")
+@Label("Payment Plan")
+@Category("jfinancials")
+@Description("Creating a payment plan")
+class PaymentPlanCalculationEvent extends Event {
+
+  @Label("Engine")
+  String engine;
+
+  @Label("Months")
+  int months;
+}
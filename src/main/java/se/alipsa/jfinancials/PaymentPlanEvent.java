@@ -0,0 +1,95 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+
+/**
+ * Something that changes the remaining payments of a loan from a given month, used with
+ * Financials.reAmortize(PaymentPlan, PaymentPlanEvent) to recalculate only the affected part of a PaymentPlan.
+ */
+public final class PaymentPlanEvent {
+
+  /** The kind of change */
+  public enum Type {
+    /** An extra amount is paid together with the payment of the month, the remaining tenure is kept */
+    EXTRA_AMORTIZATION,
+    /** A new yearly interest rate applies from the month, the remaining tenure is kept */
+    RATE_CHANGE,
+    /** The loan is extended (or shortened) to a new total tenure */
+    TERM_CHANGE
+  }
+
+  private final Type type;
+  private final int month;
+  private final BigDecimal amount;
+  private final int tenureMonths;
+
+  private PaymentPlanEvent(Type type, int month, BigDecimal amount, int tenureMonths) {
+    if (month < 1) {
+      throw new IllegalArgumentException("month must be 1 or more but was " + month);
+    }
+    this.type = type;
+    this.month = month;
+    this.amount = amount;
+    this.tenureMonths = tenureMonths;
+  }
+
+  /**
+   * @param month the month the extra amount is paid, it reduces the balance the interest of that month is based on
+   * @param amount the extra amount to amortize
+   * @return an event paying an extra amount in the month given
+   */
+  public static PaymentPlanEvent extraAmortization(int month, BigDecimal amount) {
+    if (amount.signum() <= 0) {
+      throw new IllegalArgumentException("The extra amortization must be positive but was " + amount);
+    }
+    return new PaymentPlanEvent(Type.EXTRA_AMORTIZATION, month, amount, 0);
+  }
+
+  /**
+   * @param month the first month the new interest applies to
+   * @param interest the new yearly interest rate
+   * @return an event changing the interest rate from the month given
+   */
+  public static PaymentPlanEvent rateChange(int month, BigDecimal interest) {
+    return new PaymentPlanEvent(Type.RATE_CHANGE, month, interest, 0);
+  }
+
+  /**
+   * @param month the first month the new annuity applies to
+   * @param tenureMonths the new total tenure of the loan (counted from the start of the loan)
+   * @return an event changing the tenure from the month given
+   */
+  public static PaymentPlanEvent termChange(int month, int tenureMonths) {
+    if (tenureMonths < month) {
+      throw new IllegalArgumentException("The tenure (" + tenureMonths + ") cannot end before the month of the change (" + month + ")");
+    }
+    return new PaymentPlanEvent(Type.TERM_CHANGE, month, null, tenureMonths);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getMonth() {
+    return month;
+  }
+
+  /**
+   * @return the extra amount for EXTRA_AMORTIZATION, the new interest for RATE_CHANGE, otherwise null
+   */
+  public BigDecimal getAmount() {
+    return amount;
+  }
+
+  /**
+   * @return the new tenure for TERM_CHANGE, otherwise 0
+   */
+  public int getTenureMonths() {
+    return tenureMonths;
+  }
+
+  @Override
+  public String toString() {
+    return type + " in month " + month + (type == Type.TERM_CHANGE ? " to " + tenureMonths + " months" : ": " + amount);
+  }
+}
@@ -0,0 +1,344 @@
+package se.alipsa.jfinancials;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes payment plans to a Writer, OutputStream or WritableByteChannel through a fixed size buffer, so that
+ * any number of plans can be exported in bounded memory.
+ *
+ * <p>The CSV format is the same as PaymentPlan.toString(): a header line (written once, before the first plan)
+ * followed by one line per payment with the amounts rounded half up to two decimals. The plans are written one
+ * after the other so each plan starts with a month 0 row.</p>
+ *
+ * <p>The BINARY format is, for each plan, the number of rows as an int followed by each row as an int (month)
+ * and six doubles (costOfCredit, interestAmt, amortization, invoiceFee, outgoingBalance, cashFlow), i.e.
+ * 52 bytes per row, in big endian byte order so that it can be read with a DataInputStream.</p>
+ *
+ * <p>Numbers are formatted directly into the buffer, writing a ColumnarPaymentPlan allocates nothing per row.
+ * A PaymentPlanWriter is not thread safe.</p>
+ */
+public final class PaymentPlanWriter implements Closeable, Flushable {
+
+  /** The output format */
+  public enum Format {
+    CSV,
+    BINARY
+  }
+
+  /** The number of bytes of each row in the BINARY format */
+  public static final int BINARY_ROW_SIZE = Integer.BYTES + 6 * Double.BYTES;
+
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  /* The longest CSV field written directly into the buffer: a separator, sign, 19 digits and a decimal point,
+   * longer numbers are written in chunks */
+  private static final int MAX_FIELD_SIZE = 24;
+  private static final long[] POW10 = new long[19];
+  /* Above 2^45 cents the fraction of value * 100 is too coarse to tell a half cent, and the long may overflow */
+  private static final double MAX_FAST_CENTS = 0x1p45;
+  private static final byte[] HEADER = (String.join(",", Payment.columnNames) + "\n").getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INFINITY = "Infinity".getBytes(StandardCharsets.US_ASCII);
+
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10;
+    }
+  }
+
+  private final Format format;
+  private final ByteBuffer buffer;
+  private final byte[] digits = new byte[20];
+  private final Writer writer;
+  private final char[] chars;
+  private final OutputStream out;
+  private final WritableByteChannel channel;
+  private boolean headerWritten;
+
+  /**
+   * Write CSV to the writer given
+   *
+   * @param writer the writer to write to
+   */
+  public PaymentPlanWriter(Writer writer) {
+    this(Format.CSV, writer, null, null);
+  }
+
+  /**
+   * @param out the stream to write to
+   * @param format the output format
+   */
+  public PaymentPlanWriter(OutputStream out, Format format) {
+    this(format, null, out, null);
+  }
+
+  /**
+   * @param channel the channel to write to, e.g. a FileChannel
+   * @param format the output format
+   */
+  public PaymentPlanWriter(WritableByteChannel channel, Format format) {
+    this(format, null, null, channel);
+  }
+
+  private PaymentPlanWriter(Format format, Writer writer, OutputStream out, WritableByteChannel channel) {
+    this.format = format;
+    this.writer = writer;
+    this.out = out;
+    this.channel = channel;
+    buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    chars = writer == null ? null : new char[DEFAULT_BUFFER_SIZE];
+  }
+
+  /**
+   * Write the plan (rounded to cents in the CSV format)
+   *
+   * @param paymentPlan the plan to write
+   * @throws IOException if writing fails
+   */
+  public void write(List<Payment> paymentPlan) throws IOException {
+    if (format == Format.BINARY) {
+      ensureCapacity(Integer.BYTES);
+      buffer.putInt(paymentPlan.size());
+      for (Payment p : paymentPlan) {
+        ensureCapacity(BINARY_ROW_SIZE);
+        buffer.putInt(p.getMonth());
+        buffer.putDouble(p.getCostOfCredit().doubleValue());
+        buffer.putDouble(p.getInterestAmt().doubleValue());
+        buffer.putDouble(p.getAmortization().doubleValue());
+        buffer.putDouble(p.getInvoiceFee().doubleValue());
+        buffer.putDouble(p.getOutgoingBalance().doubleValue());
+        buffer.putDouble(p.getCacheFlow().doubleValue());
+      }
+      return;
+    }
+    writeHeader();
+    for (Payment p : paymentPlan) {
+      ensureCapacity(MAX_FIELD_SIZE);
+      putLong(p.getMonth());
+      putCents(p.getCostOfCredit());
+      putCents(p.getInterestAmt());
+      putCents(p.getAmortization());
+      putCents(p.getInvoiceFee());
+      putCents(p.getOutgoingBalance());
+      putCents(p.getCacheFlow());
+      ensureCapacity(1);
+      buffer.put((byte) '\n');
+    }
+  }
+
+  /**
+   * Write the plan (rounded to cents in the CSV format)
+   *
+   * @param paymentPlan the plan to write
+   * @throws IOException if writing fails
+   */
+  public void write(ColumnarPaymentPlan paymentPlan) throws IOException {
+    int size = paymentPlan.size();
+    if (format == Format.BINARY) {
+      ensureCapacity(Integer.BYTES);
+      buffer.putInt(size);
+      for (int i = 0; i < size; i++) {
+        ensureCapacity(BINARY_ROW_SIZE);
+        buffer.putInt(paymentPlan.month[i]);
+        buffer.putDouble(paymentPlan.costOfCredit[i]);
+        buffer.putDouble(paymentPlan.interestAmt[i]);
+        buffer.putDouble(paymentPlan.amortization[i]);
+        buffer.putDouble(paymentPlan.invoiceFee[i]);
+        buffer.putDouble(paymentPlan.outgoingBalance[i]);
+        buffer.putDouble(paymentPlan.cashFlow[i]);
+      }
+      return;
+    }
+    writeHeader();
+    for (int i = 0; i < size; i++) {
+      ensureCapacity(MAX_FIELD_SIZE);
+      putLong(paymentPlan.month[i]);
+      putCents(paymentPlan.costOfCredit[i]);
+      putCents(paymentPlan.interestAmt[i]);
+      putCents(paymentPlan.amortization[i]);
+      putCents(paymentPlan.invoiceFee[i]);
+      putCents(paymentPlan.outgoingBalance[i]);
+      putCents(paymentPlan.cashFlow[i]);
+      ensureCapacity(1);
+      buffer.put((byte) '\n');
+    }
+  }
+
+  /**
+   * Write everything buffered to the underlying output and flush it
+   *
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    if (writer != null) {
+      writer.flush();
+    } else if (out != null) {
+      out.flush();
+    }
+  }
+
+  /**
+   * Flush and close the underlying output
+   *
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      if (writer != null) {
+        writer.close();
+      } else if (out != null) {
+        out.close();
+      } else {
+        channel.close();
+      }
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    if (!headerWritten) {
+      ensureCapacity(HEADER.length);
+      buffer.put(HEADER);
+      headerWritten = true;
+    }
+  }
+
+  private void ensureCapacity(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    if (channel != null) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } else if (out != null) {
+      out.write(buffer.array(), 0, buffer.limit());
+    } else {
+      byte[] bytes = buffer.array();
+      int length = buffer.limit();
+      for (int i = 0; i < length; i++) {
+        chars[i] = (char) bytes[i];
+      }
+      writer.write(chars, 0, length);
+    }
+    buffer.clear();
+  }
+
+  /*
+   * Same rounding as PaymentPlan.toString(), i.e. setScale(2, HALF_UP). When the value has at most 18 digits
+   * it is rounded from the unscaled value and scale, without creating a new BigDecimal.
+   */
+  private void putCents(BigDecimal value) throws IOException {
+    int scale = value.scale();
+    int precision = value.precision();
+    if (scale >= 0 && scale < POW10.length && precision <= 18 && precision - scale + 2 <= 18) {
+      long unscaled = value.unscaledValue().longValue();
+      if (scale <= 2) {
+        putCents(unscaled * POW10[2 - scale]);
+      } else {
+        long divisor = POW10[scale - 2];
+        long cents = unscaled / divisor;
+        if (Math.abs(unscaled % divisor) * 2 >= divisor) {
+          cents += Long.signum(unscaled);
+        }
+        putCents(cents);
+      }
+      return;
+    }
+    BigDecimal rounded = value.setScale(2, RoundingMode.HALF_UP);
+    if (rounded.precision() > 18) {
+      ensureCapacity(1);
+      buffer.put((byte) ',');
+      putBytes(rounded.toPlainString().getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    putCents(rounded.unscaledValue().longValue());
+  }
+
+  /*
+   * Same rounding as ColumnarPaymentPlan.toString(), i.e. BigDecimal.valueOf(value).setScale(2, HALF_UP) which
+   * rounds the shortest decimal representation of the double (so 1.005 is 1.01 although the double is a bit less).
+   * That only differs from rounding the binary value when value * 100 is within a few ulps of a half cent, only
+   * then (and for values too large for the fast path) the BigDecimal is created.
+   */
+  private void putCents(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      ensureCapacity(MAX_FIELD_SIZE);
+      buffer.put((byte) ',');
+      if (value < 0) {
+        buffer.put((byte) '-');
+      }
+      buffer.put(Double.isNaN(value) ? NAN : INFINITY);
+      return;
+    }
+    double scaled = Math.abs(value) * 100;
+    double floor = Math.floor(scaled);
+    if (scaled >= MAX_FAST_CENTS || Math.abs(scaled - floor - 0.5) <= 4 * Math.ulp(scaled)) {
+      putCents(BigDecimal.valueOf(value));
+      return;
+    }
+    long cents = (long) (scaled - floor < 0.5 ? floor : floor + 1);
+    putCents(value < 0 ? -cents : cents);
+  }
+
+  private void putCents(long cents) throws IOException {
+    ensureCapacity(MAX_FIELD_SIZE);
+    buffer.put((byte) ',');
+    if (cents < 0) {
+      buffer.put((byte) '-');
+      cents = -cents;
+    }
+    putDigits(cents / 100);
+    buffer.put((byte) '.');
+    long fraction = cents % 100;
+    buffer.put((byte) ('0' + fraction / 10));
+    buffer.put((byte) ('0' + fraction % 10));
+  }
+
+  private void putBytes(byte[] bytes) throws IOException {
+    int pos = 0;
+    while (pos < bytes.length) {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      int length = Math.min(buffer.remaining(), bytes.length - pos);
+      buffer.put(bytes, pos, length);
+      pos += length;
+    }
+  }
+
+  private void putLong(long value) {
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    putDigits(value);
+  }
+
+  private void putDigits(long value) {
+    int pos = digits.length;
+    do {
+      digits[--pos] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+    buffer.put(digits, pos, digits.length - pos);
+  }
+}
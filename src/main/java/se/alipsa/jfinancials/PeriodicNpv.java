@@ -0,0 +1,91 @@
+package se.alipsa.jfinancials;
+
+/**
+ * The npv kernel for equally spaced cash flows where the first entry is at time 0 (i.e. not discounted).
+ * With v = 1 / (1 + rate) the npv is the polynomial sum(cf[t] * v^t) which is evaluated using Horner's
+ * scheme, together with its derivative, in a single pass without calling Math.pow.
+ */
+class PeriodicNpv implements NpvFunction {
+
+  private double[] cashFlow;
+  private int offset;
+  private int length;
+  private double derivative;
+
+  PeriodicNpv cashFlow(double[] cashFlow) {
+    return cashFlow(cashFlow, 0, cashFlow.length);
+  }
+
+  PeriodicNpv cashFlow(double[] cashFlow, int offset, int length) {
+    this.cashFlow = cashFlow;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  @Override
+  public double evaluate(double rate) {
+    double v = 1 / (1 + rate);
+    int last = offset + length - 1;
+    double p = cashFlow[last];
+    double dp = 0;
+    for (int i = last - 1; i >= offset; i--) {
+      dp = dp * v + p;
+      p = p * v + cashFlow[i];
+    }
+    // dnpv/drate = dP/dv * dv/drate where dv/drate = -v^2
+    derivative = -dp * v * v;
+    return p;
+  }
+
+  @Override
+  public double derivative() {
+    return derivative;
+  }
+
+  @Override
+  public int signChanges() {
+    int changes = 0;
+    double last = 0;
+    for (int i = offset; i < offset + length && changes < 2; i++) {
+      double cf = cashFlow[i];
+      if (cf != 0) {
+        if (last != 0 && (cf > 0) != (last > 0)) {
+          changes++;
+        }
+        last = cf;
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * The npv at time 0 of cashFlow[offset] .. cashFlow[offset + length - 1] where the first entry is not discounted
+   */
+  static double npv(double[] cashFlow, int offset, int length, double rate) {
+    if (length == 0) {
+      return 0;
+    }
+    double v = 1 / (1 + rate);
+    double p = cashFlow[offset + length - 1];
+    for (int i = offset + length - 2; i >= offset; i--) {
+      p = p * v + cashFlow[i];
+    }
+    return p;
+  }
+
+  /**
+   * The present value of 1 paid each period from period first to period last (inclusive), i.e.
+   * sum(v^t) for t = first..last where v = 1 / (1 + rate), in closed form.
+   */
+  static double geometricSum(double v, int first, int last) {
+    int count = last - first + 1;
+    if (count <= 0) {
+      return 0;
+    }
+    if (v == 1) {
+      return count;
+    }
+    return Math.pow(v, first) * (1 - Math.pow(v, count)) / (1 - v);
+  }
+}
@@ -0,0 +1,158 @@
+package se.alipsa.jfinancials;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The summed cash flow (and scheduled principal) per month of a pool of loans, see PortfolioAggregator.
+ * Aggregates are immutable and can be merged in any order (merging is associative and commutative, up to
+ * floating point rounding), e.g. to combine partial aggregates calculated in separate batches or JVMs
+ * using write(DataOutput) and read(DataInput).
+ */
+public final class PortfolioAggregate {
+
+  private final double[] cashFlow;
+  private final double[] principal;
+  private final long loanCount;
+
+  PortfolioAggregate(double[] cashFlow, double[] principal, long loanCount) {
+    this.cashFlow = cashFlow;
+    this.principal = principal;
+    this.loanCount = loanCount;
+  }
+
+  /**
+   * @return an aggregate without any loans
+   */
+  public static PortfolioAggregate empty() {
+    return new PortfolioAggregate(new double[0], new double[0], 0);
+  }
+
+  /**
+   * @param other another aggregate
+   * @return a new aggregate with the loans of both
+   */
+  public PortfolioAggregate merge(PortfolioAggregate other) {
+    int length = Math.max(cashFlow.length, other.cashFlow.length);
+    double[] mergedCashFlow = new double[length];
+    double[] mergedPrincipal = new double[length];
+    add(cashFlow, mergedCashFlow);
+    add(other.cashFlow, mergedCashFlow);
+    add(principal, mergedPrincipal);
+    add(other.principal, mergedPrincipal);
+    return new PortfolioAggregate(mergedCashFlow, mergedPrincipal, loanCount + other.loanCount);
+  }
+
+  private static void add(double[] source, double[] target) {
+    for (int i = 0; i < source.length; i++) {
+      target[i] += source[i];
+    }
+  }
+
+  /**
+   * @return the number of loans in the aggregate
+   */
+  public long getLoanCount() {
+    return loanCount;
+  }
+
+  /**
+   * @return the number of months of the longest loan
+   */
+  public int getTenureMonths() {
+    return Math.max(0, cashFlow.length - 1);
+  }
+
+  /**
+   * @return a copy of the pool cash flow, month 0 being the (negative) sum of the loan amounts
+   */
+  public double[] getCashFlow() {
+    return cashFlow.clone();
+  }
+
+  /**
+   * @return a copy of the scheduled principal (amortization) of each month
+   */
+  public double[] getPrincipal() {
+    return principal.clone();
+  }
+
+  /**
+   * @param rate the monthly discount rate
+   * @return the net present value of the pool cash flow at month 0 (the loan amounts are not discounted)
+   */
+  public double npv(double rate) {
+    return PeriodicNpv.npv(cashFlow, 0, cashFlow.length, rate);
+  }
+
+  /**
+   * @return the monthly internal rate of return of the pool
+   */
+  public double irr() {
+    return cashFlow.length == 0 ? Double.NaN : new IrrSolver().irr(cashFlow);
+  }
+
+  /**
+   * @return the annual percentage rate (effective interest) of the pool
+   */
+  public double apr() {
+    return Financials.apr(irr());
+  }
+
+  /**
+   * @return the weighted average life in years, i.e. the average time until the principal is repaid weighted
+   * by the principal repaid each month, or NaN if no principal has been added
+   */
+  public double weightedAverageLife() {
+    double weighted = 0;
+    double total = 0;
+    for (int month = 1; month < principal.length; month++) {
+      weighted += month * principal[month];
+      total += principal[month];
+    }
+    return total == 0 ? Double.NaN : weighted / total / 12;
+  }
+
+  /**
+   * Write the aggregate, e.g. to combine it with aggregates from other processes
+   *
+   * @param out where to write
+   * @throws IOException if writing fails
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(loanCount);
+    out.writeInt(cashFlow.length);
+    for (int i = 0; i < cashFlow.length; i++) {
+      out.writeDouble(cashFlow[i]);
+      out.writeDouble(principal[i]);
+    }
+  }
+
+  /**
+   * Read an aggregate written by write(DataOutput)
+   *
+   * @param in where to read from
+   * @return the aggregate
+   * @throws IOException if reading fails
+   */
+  public static PortfolioAggregate read(DataInput in) throws IOException {
+    long loanCount = in.readLong();
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid aggregate length " + length);
+    }
+    double[] cashFlow = new double[length];
+    double[] principal = new double[length];
+    for (int i = 0; i < length; i++) {
+      cashFlow[i] = in.readDouble();
+      principal[i] = in.readDouble();
+    }
+    return new PortfolioAggregate(cashFlow, principal, loanCount);
+  }
+
+  @Override
+  public String toString() {
+    return "PortfolioAggregate{loans=" + loanCount + ", tenureMonths=" + getTenureMonths() + '}';
+  }
+}
@@ -0,0 +1,109 @@
+package se.alipsa.jfinancials;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sums the cash flows of many loans month by month, e.g. to calculate the irr of a whole pool. Loans can be
+ * added from any number of threads at the same time: each thread adds to its own month buckets so the threads
+ * never contend on a shared array, the buckets are merged by aggregate(). Call aggregate() when all threads
+ * are done adding (e.g. after joining them or awaiting the termination of the executor); loans added while
+ * aggregating may or may not be included.
+ */
+public final class PortfolioAggregator {
+
+  private final Queue<Bucket> buckets = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Bucket> bucket = ThreadLocal.withInitial(() -> {
+    Bucket b = new Bucket();
+    buckets.add(b);
+    return b;
+  });
+
+  /**
+   * Add an annuity loan with the cash flow of Financials.cashFlow
+   *
+   * @param loanAmount the loan amount *INCLUDING* startup fee
+   * @param interest the nominal yearly interest rate
+   * @param tenureMonths the tenure in months
+   * @param amFreeMonths the number of amortization free months
+   * @param invoiceFee the invoice fee
+   */
+  public void add(int loanAmount, double interest, int tenureMonths, int amFreeMonths, double invoiceFee) {
+    Bucket b = bucket.get();
+    b.ensureLength(tenureMonths + 1);
+    double monthlyInterest = interest / 12;
+    double monthlyAnnuity = Financials.monthlyAnnuityAmount(loanAmount, interest, tenureMonths, amFreeMonths);
+    double balance = loanAmount;
+    b.cashFlow[0] -= loanAmount;
+    for (int month = 1; month <= tenureMonths; month++) {
+      double interestAmt = balance * monthlyInterest;
+      double costOfCredit = amFreeMonths >= month ? interestAmt : monthlyAnnuity;
+      double amortization = costOfCredit - interestAmt;
+      balance -= amortization;
+      b.cashFlow[month] += costOfCredit + invoiceFee;
+      b.principal[month] += amortization;
+    }
+    b.loanCount++;
+  }
+
+  /**
+   * Add the cash flow and amortization of a payment plan
+   *
+   * @param paymentPlan the plan of the loan
+   */
+  public void add(ColumnarPaymentPlan paymentPlan) {
+    Bucket b = bucket.get();
+    int size = paymentPlan.size();
+    b.ensureLength(size);
+    for (int i = 0; i < size; i++) {
+      b.cashFlow[i] += paymentPlan.cashFlow[i];
+      b.principal[i] += paymentPlan.amortization[i];
+    }
+    b.loanCount++;
+  }
+
+  /**
+   * Add a cash flow, since the principal is unknown it does not affect the weighted average life
+   *
+   * @param cashFlow the cash flow of a loan, month 0 being the (negative) loan amount
+   */
+  public void add(double[] cashFlow) {
+    Bucket b = bucket.get();
+    b.ensureLength(cashFlow.length);
+    for (int i = 0; i < cashFlow.length; i++) {
+      b.cashFlow[i] += cashFlow[i];
+    }
+    b.loanCount++;
+  }
+
+  /**
+   * Merge the buckets of all threads
+   *
+   * @return the aggregate of all loans added
+   */
+  public PortfolioAggregate aggregate() {
+    PortfolioAggregate result = PortfolioAggregate.empty();
+    for (Bucket b : buckets) {
+      result = result.merge(new PortfolioAggregate(
+          Arrays.copyOf(b.cashFlow, b.length), Arrays.copyOf(b.principal, b.length), b.loanCount));
+    }
+    return result;
+  }
+
+  private static final class Bucket {
+    double[] cashFlow = new double[0];
+    double[] principal = new double[0];
+    int length;
+    long loanCount;
+
+    void ensureLength(int months) {
+      if (months > cashFlow.length) {
+        int capacity = Math.max(months, cashFlow.length * 2);
+        cashFlow = Arrays.copyOf(cashFlow, capacity);
+        principal = Arrays.copyOf(principal, capacity);
+      }
+      length = Math.max(length, months);
+    }
+  }
+}
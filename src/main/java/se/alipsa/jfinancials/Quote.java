@@ -0,0 +1,61 @@
+package se.alipsa.jfinancials;
+
+/**
+ * The result of quoting a LoanRequest, see QuoteProcessor
+ */
+public final class Quote {
+
+  private final LoanRequest request;
+  private final double monthlyAnnuity;
+  private final double totalPaymentAmount;
+  private final double apr;
+
+  Quote(LoanRequest request, double monthlyAnnuity, double totalPaymentAmount, double apr) {
+    this.request = request;
+    this.monthlyAnnuity = monthlyAnnuity;
+    this.totalPaymentAmount = totalPaymentAmount;
+    this.apr = apr;
+  }
+
+  /**
+   * Calculate the quote of a loan
+   *
+   * @param request the loan to quote
+   * @return the monthly annuity, total payment amount and apr of the loan
+   */
+  public static Quote of(LoanRequest request) {
+    double interest = request.getInterest().doubleValue();
+    double monthlyAnnuity = Financials.monthlyAnnuityAmount(request.getLoanAmount(), interest,
+        request.getTenureMonths(), request.getAmFreeMonths());
+    double total = Financials.totalPaymentAmount(request.getLoanAmount(), interest, request.getTenureMonths(),
+        request.getAmFreeMonths(), request.getInvoiceFee(), monthlyAnnuity);
+    double apr = Financials.effectiveInterestRate(request.getLoanAmount(), request.getInterest(),
+        request.getTenureMonths(), request.getAmFreeMonths(), request.getInvoiceFee());
+    return new Quote(request, monthlyAnnuity, total, apr);
+  }
+
+  public LoanRequest getRequest() {
+    return request;
+  }
+
+  public double getMonthlyAnnuity() {
+    return monthlyAnnuity;
+  }
+
+  public double getTotalPaymentAmount() {
+    return totalPaymentAmount;
+  }
+
+  /**
+   * @return the annual percentage rate (effective interest)
+   */
+  public double getApr() {
+    return apr;
+  }
+
+  @Override
+  public String toString() {
+    return "Quote{monthlyAnnuity=" + monthlyAnnuity + ", totalPaymentAmount=" + totalPaymentAmount
+        + ", apr=" + apr + ", request=" + request + '}';
+  }
+}
@@ -0,0 +1,256 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, thread safe memoizing facade for the calculations of a quote: paymentPlan, totalPaymentAmount,
+ * effectiveInterestRate and Quote.of, keyed on all the loan parameters (amount, interest, tenure, amortization
+ * free months and invoice fee). Useful when the same handful of loans are calculated over and over, e.g. by
+ * a loan calculator on a web page.
+ *
+ * <p>The interest and fee are normalized with stripTrailingZeros so that e.g. 0.05 and 0.050 are the same key.
+ * Payment plans are returned as (immutable) ColumnarPaymentPlan with the values of Financials.paymentPlan
+ * so that they can be shared by all callers.</p>
+ *
+ * <p>The size is bounded by weight: a payment plan weighs its number of rows, other results 1. When the total
+ * weight exceeds the max weight the oldest entries are evicted (first in, first out). A result heavier than the
+ * max weight is returned without being cached. Lookups never block;
+ * on a miss the result is calculated without holding any lock so two threads missing the same key at the same
+ * time may both calculate it (the first one stored is kept).</p>
+ */
+public final class QuoteCache {
+
+  private enum Kind {
+    PAYMENT_PLAN,
+    TOTAL_PAYMENT_AMOUNT,
+    EFFECTIVE_INTEREST_RATE,
+    QUOTE
+  }
+
+  private final ConcurrentHashMap<Key, Entry> map = new ConcurrentHashMap<>();
+  private final Queue<Key> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicLong weight = new AtomicLong();
+  private final long maxWeight;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param maxWeight the max total weight, e.g. 100 000 keeps about 200 plans of 480 months or 100 000 aprs
+   */
+  public QuoteCache(long maxWeight) {
+    if (maxWeight < 1) {
+      throw new IllegalArgumentException("maxWeight must be positive but was " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Same values as Financials.paymentPlan but as an immutable ColumnarPaymentPlan shared by all callers
+   *
+   * @param loanAmount including startupFee
+   * @param interest the yearly interest rate
+   * @param tenureMonths the number of periods (usually months)
+   * @param amFreeMonths the number of amortization free months before amortization of the loan starts
+   * @param invoiceFee the cost of each period invoicing affecting the borrower
+   * @return the cached payment plan
+   */
+  public ColumnarPaymentPlan paymentPlan(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                         BigDecimal invoiceFee) {
+    Key key = new Key(Kind.PAYMENT_PLAN, loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+    return (ColumnarPaymentPlan) get(key, () -> ColumnarPaymentPlan.of(
+        Financials.paymentPlan(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee)));
+  }
+
+  /**
+   * Same as Financials.totalPaymentAmount(double, double, int, int, int)
+   *
+   * @return the cached total payment amount
+   */
+  public double totalPaymentAmount(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                   int invoiceFee) {
+    Key key = new Key(Kind.TOTAL_PAYMENT_AMOUNT, loanAmount, interest, tenureMonths, amFreeMonths,
+        BigDecimal.valueOf(invoiceFee));
+    return (Double) get(key, () -> Financials.totalPaymentAmount(loanAmount, interest.doubleValue(), tenureMonths,
+        amFreeMonths, invoiceFee));
+  }
+
+  /**
+   * Same as Financials.effectiveInterestRate(int, BigDecimal, int, int, Integer)
+   *
+   * @return the cached effective interest rate (apr)
+   */
+  public double effectiveInterestRate(int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths,
+                                      int invoiceFee) {
+    Key key = new Key(Kind.EFFECTIVE_INTEREST_RATE, loanAmount, interest, tenureMonths, amFreeMonths,
+        BigDecimal.valueOf(invoiceFee));
+    return (Double) get(key, () -> Financials.effectiveInterestRate(loanAmount, interest, tenureMonths,
+        amFreeMonths, invoiceFee));
+  }
+
+  /**
+   * Same as Quote.of(request)
+   *
+   * @param request the loan to quote
+   * @return the cached quote (which refers to the request of the first call)
+   */
+  public Quote quote(LoanRequest request) {
+    Key key = new Key(Kind.QUOTE, request.getLoanAmount(), request.getInterest(), request.getTenureMonths(),
+        request.getAmFreeMonths(), BigDecimal.valueOf(request.getInvoiceFee()));
+    return (Quote) get(key, () -> Quote.of(request));
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return the share of lookups that were found in the cache (0 if there has been no lookups)
+   */
+  public double getHitRatio() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /**
+   * @return the number of cached results
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * @return the total weight of the cached results
+   */
+  public long getWeight() {
+    return weight.get();
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Remove all entries (the statistics are kept)
+   */
+  public void clear() {
+    Key key;
+    while ((key = insertionOrder.poll()) != null) {
+      remove(key);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QuoteCache{size=" + size() + ", weight=" + getWeight() + ", maxWeight=" + maxWeight + ", hits="
+        + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + '}';
+  }
+
+  private Object get(Key key, Supplier<Object> calculation) {
+    Entry entry = map.get(key);
+    if (entry != null) {
+      hits.increment();
+      return entry.value;
+    }
+    misses.increment();
+    Object value = calculation.get();
+    Entry created = new Entry(value, value instanceof ColumnarPaymentPlan ? ((ColumnarPaymentPlan) value).size() : 1);
+    if (created.weight > maxWeight) {
+      // caching it would evict everything else, and then itself
+      return value;
+    }
+    Entry existing = map.putIfAbsent(key, created);
+    if (existing != null) {
+      return existing.value;
+    }
+    insertionOrder.add(key);
+    weight.addAndGet(created.weight);
+    evict();
+    return value;
+  }
+
+  private void evict() {
+    while (weight.get() > maxWeight) {
+      Key oldest = insertionOrder.poll();
+      if (oldest == null) {
+        return;
+      }
+      if (remove(oldest)) {
+        evictions.increment();
+      }
+    }
+  }
+
+  private boolean remove(Key key) {
+    Entry removed = map.remove(key);
+    if (removed != null) {
+      weight.addAndGet(-removed.weight);
+      return true;
+    }
+    return false;
+  }
+
+  private static final class Entry {
+    final Object value;
+    final int weight;
+
+    Entry(Object value, int weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private static final class Key {
+    final Kind kind;
+    final int loanAmount;
+    final BigDecimal interest;
+    final int tenureMonths;
+    final int amFreeMonths;
+    final BigDecimal invoiceFee;
+    final int hash;
+
+    Key(Kind kind, int loanAmount, BigDecimal interest, int tenureMonths, int amFreeMonths, BigDecimal invoiceFee) {
+      this.kind = kind;
+      this.loanAmount = loanAmount;
+      this.interest = interest.stripTrailingZeros();
+      this.tenureMonths = tenureMonths;
+      this.amFreeMonths = amFreeMonths;
+      this.invoiceFee = invoiceFee.stripTrailingZeros();
+      hash = Objects.hash(kind, loanAmount, this.interest, tenureMonths, amFreeMonths, this.invoiceFee);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return kind == key.kind && loanAmount == key.loanAmount && tenureMonths == key.tenureMonths
+          && amFreeMonths == key.amFreeMonths && interest.equals(key.interest) && invoiceFee.equals(key.invoiceFee);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Flow.Processor turning LoanRequests into Quotes. Subscribe it to a publisher of requests and subscribe
+ * the consumers of quotes to it.
+ *
+ * <p>At most maxInFlight requests are requested from upstream and calculated (on the executor given) at the
+ * same time; a new request is only requested when a quote has been handed over to the subscribers. The quotes
+ * are buffered per subscriber in a buffer of bufferSize quotes, when it is full the calculating thread waits for
+ * the subscriber to request more, so a slow consumer slows down the upstream instead of filling the heap.
+ * With a maxInFlight above 1 the quotes are emitted in the order they are done, not in the order of the requests.</p>
+ *
+ * <p>Since calculating threads may block while waiting for demand, they should not be the threads the
+ * subscribers run on. On Java 21 or later Executors.newVirtualThreadPerTaskExecutor() is a good choice,
+ * otherwise a fixed thread pool with maxInFlight threads.</p>
+ */
+public final class QuoteProcessor implements Flow.Processor<LoanRequest, Quote>, AutoCloseable {
+
+  private final Executor executor;
+  private final int maxInFlight;
+  private final SubmissionPublisher<Quote> publisher;
+  /* The number of requests being calculated, plus one until the upstream has completed */
+  private final AtomicInteger pending = new AtomicInteger(1);
+  private volatile Flow.Subscription subscription;
+  private volatile Throwable failure;
+
+  /**
+   * @param executor the executor running the calculations
+   * @param maxInFlight the maximum number of requests being calculated at the same time
+   */
+  public QuoteProcessor(Executor executor, int maxInFlight) {
+    this(executor, maxInFlight, Flow.defaultBufferSize());
+  }
+
+  /**
+   * @param executor the executor running the calculations
+   * @param maxInFlight the maximum number of requests being calculated at the same time
+   * @param bufferSize the maximum number of quotes buffered for each subscriber
+   */
+  public QuoteProcessor(Executor executor, int maxInFlight, int bufferSize) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be at least 1 but was " + maxInFlight);
+    }
+    this.executor = executor;
+    this.maxInFlight = maxInFlight;
+    // deliver quotes the same way as a default SubmissionPublisher, only with the buffer size given
+    Executor delivery = ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : r -> new Thread(r).start();
+    publisher = new SubmissionPublisher<>(delivery, bufferSize);
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Quote> subscriber) {
+    publisher.subscribe(subscriber);
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(maxInFlight);
+  }
+
+  @Override
+  public void onNext(LoanRequest request) {
+    pending.incrementAndGet();
+    try {
+      executor.execute(() -> process(request));
+    } catch (RuntimeException e) {
+      pending.decrementAndGet();
+      fail(e);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    fail(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    done();
+  }
+
+  /**
+   * Cancel the upstream subscription and complete the subscribers (quotes being calculated are dropped)
+   */
+  @Override
+  public void close() {
+    Flow.Subscription s = subscription;
+    if (s != null) {
+      s.cancel();
+    }
+    publisher.close();
+  }
+
+  /**
+   * @return the number of subscribers of quotes
+   */
+  public int getNumberOfSubscribers() {
+    return publisher.getNumberOfSubscribers();
+  }
+
+  private void process(LoanRequest request) {
+    try {
+      if (failure == null && !publisher.isClosed()) {
+        publisher.submit(Quote.of(request));
+        subscription.request(1);
+      }
+    } catch (RuntimeException e) {
+      fail(e);
+    } finally {
+      done();
+    }
+  }
+
+  private void done() {
+    if (pending.decrementAndGet() == 0 && failure == null) {
+      publisher.close();
+    }
+  }
+
+  private void fail(Throwable throwable) {
+    if (failure == null) {
+      failure = throwable;
+      Flow.Subscription s = subscription;
+      if (s != null) {
+        s.cancel();
+      }
+      publisher.closeExceptionally(throwable);
+    }
+  }
+}
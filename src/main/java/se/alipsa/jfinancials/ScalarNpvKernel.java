@@ -0,0 +1,82 @@
+package se.alipsa.jfinancials;
+
+/**
+ * The plain java implementation of the BulkNpvKernel, used when the vector api is not available
+ */
+class ScalarNpvKernel implements BulkNpvKernel {
+
+  @Override
+  public void npvForRates(double[] cashFlow, double[] rates, double[] result) {
+    npvForRates(cashFlow, rates, result, 0);
+  }
+
+  /**
+   * Evaluates the rates from index from and onwards
+   */
+  static void npvForRates(double[] cashFlow, double[] rates, double[] result, int from) {
+    int n = cashFlow.length;
+    for (int r = from; r < rates.length; r++) {
+      double v = 1 / (1 + rates[r]);
+      double acc = 0;
+      for (int t = n - 1; t >= 0; t--) {
+        acc = acc * v + cashFlow[t];
+      }
+      result[r] = acc * v;
+    }
+  }
+
+  @Override
+  public void npvForLoans(double[] cashFlows, int loans, double[] rates, double[] result) {
+    npvForLoans(cashFlows, loans, rates, result, 0);
+  }
+
+  /**
+   * Evaluates the loans from index from and onwards
+   */
+  static void npvForLoans(double[] cashFlows, int loans, double[] rates, double[] result, int from) {
+    int periods = cashFlows.length / loans;
+    for (int j = from; j < loans; j++) {
+      double v = 1 / (1 + rates[j]);
+      double acc = 0;
+      for (int t = periods - 1; t >= 0; t--) {
+        acc = acc * v + cashFlows[t * loans + j];
+      }
+      result[j] = acc * v;
+    }
+  }
+
+  @Override
+  public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+    return dot(x, xOffset, y, yOffset, length, 0, 0);
+  }
+
+  /**
+   * Adds the products from index from (relative to the offsets) and onwards to sum
+   */
+  static double dot(double[] x, int xOffset, double[] y, int yOffset, int length, int from, double sum) {
+    for (int i = from; i < length; i++) {
+      sum += x[xOffset + i] * y[yOffset + i];
+    }
+    return sum;
+  }
+
+  @Override
+  public void dotForLoans(double[] cashFlows, int loans, double[] factors, int factorOffset, double[] result) {
+    dotForLoans(cashFlows, loans, factors, factorOffset, result, 0);
+  }
+
+  /**
+   * Evaluates the loans from index from and onwards
+   */
+  static void dotForLoans(double[] cashFlows, int loans, double[] factors, int factorOffset, double[] result,
+                          int from) {
+    int periods = cashFlows.length / loans;
+    for (int j = from; j < loans; j++) {
+      double sum = 0;
+      for (int t = 0; t < periods; t++) {
+        sum += cashFlows[t * loans + j] * factors[factorOffset + t];
+      }
+      result[j] = sum;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package se.alipsa.jfinancials;
+
+/**
+ * The npv kernel for a cash flow that is constant within segments: -amount at time 0 and payment[k] each period
+ * from first[k] to last[k]. Each segment is a geometric sum (and its derivative) in closed form, so an
+ * evaluation costs O(segments) regardless of the number of periods.
+ */
+class SegmentNpv implements NpvFunction {
+
+  private final double amount;
+  private final int[] first;
+  private final int[] last;
+  private final double[] payment;
+  private double derivative;
+
+  SegmentNpv(double amount, int[] first, int[] last, double[] payment) {
+    this.amount = amount;
+    this.first = first;
+    this.last = last;
+    this.payment = payment;
+  }
+
+  @Override
+  public double evaluate(double rate) {
+    double v = 1 / (1 + rate);
+    double npv = -amount;
+    double dv = 0;
+    for (int k = 0; k < first.length; k++) {
+      npv += payment[k] * PeriodicNpv.geometricSum(v, first[k], last[k]);
+      dv += payment[k] * geometricSumDerivative(v, first[k], last[k]);
+    }
+    derivative = -dv * v * v;
+    return npv;
+  }
+
+  @Override
+  public double derivative() {
+    return derivative;
+  }
+
+  /**
+   * The segments are in time order so the signs are those of -amount followed by the payment of each non empty
+   * segment
+   */
+  @Override
+  public int signChanges() {
+    int changes = 0;
+    double previous = -amount;
+    for (int k = 0; k < first.length && changes < 2; k++) {
+      double p = payment[k];
+      if (p != 0 && last[k] >= first[k]) {
+        if (previous != 0 && (p > 0) != (previous > 0)) {
+          changes++;
+        }
+        previous = p;
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * d/dv of sum(v^t) for t = first..last, i.e. sum(t * v^(t-1))
+   */
+  static double geometricSumDerivative(double v, int first, int last) {
+    int count = last - first + 1;
+    if (count <= 0) {
+      return 0;
+    }
+    if (v == 1) {
+      return (first + last) * (double) count / 2;
+    }
+    // G = v^first * (1 - v^count) / (1 - v)
+    double vFirst = Math.pow(v, first);
+    double vCount = Math.pow(v, count);
+    double oneMinusV = 1 - v;
+    return (first * vFirst / v * (1 - vCount) - vFirst * count * vCount / v) / oneMinusV
+        + vFirst * (1 - vCount) / (oneMinusV * oneMinusV);
+  }
+}
@@ -0,0 +1,206 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A MetricsListener keeping counters and histograms of what has been calculated, e.g.
+ * <pre>
+ * SimpleMetrics metrics = new SimpleMetrics();
+ * Financials.setMetricsListener(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ * Recording is lock free so it can be shared by all threads.
+ */
+public final class SimpleMetrics implements MetricsListener {
+
+  private final LongAdder irrNotConverged = new LongAdder();
+  private final Histogram irrNanos = new Histogram();
+  private final Histogram irrEvaluations = new Histogram();
+  private final Histogram paymentPlanNanos = new Histogram();
+  private final Histogram batchNanos = new Histogram();
+  private final LongAdder batchResults = new LongAdder();
+  private final LongAdder adaptiveCalculations = new LongAdder();
+  private final LongAdder adaptiveFallbacks = new LongAdder();
+
+  @Override
+  public void irr(int length, int iterations, int evaluations, IrrResult.Status status, long nanos) {
+    irrNanos.record(nanos);
+    irrEvaluations.record(evaluations);
+    if (status != IrrResult.Status.CONVERGED) {
+      irrNotConverged.increment();
+    }
+  }
+
+  @Override
+  public void paymentPlan(String engine, int months, long nanos) {
+    paymentPlanNanos.record(nanos);
+  }
+
+  @Override
+  public void batch(String operation, int size, long nanos) {
+    batchNanos.record(nanos);
+    batchResults.add(size);
+  }
+
+  @Override
+  public void adaptivePrecision(String operation, boolean fallback) {
+    adaptiveCalculations.increment();
+    if (fallback) {
+      adaptiveFallbacks.increment();
+    }
+  }
+
+  /**
+   * @return the number of irr calculations that did not converge
+   */
+  public long getIrrNotConverged() {
+    return irrNotConverged.sum();
+  }
+
+  /**
+   * @return the duration (in nanoseconds) of the irr calculations, the count is the number of irr calculations
+   */
+  public Histogram getIrrNanos() {
+    return irrNanos;
+  }
+
+  /**
+   * @return the number of npv evaluations of each irr calculation
+   */
+  public Histogram getIrrEvaluations() {
+    return irrEvaluations;
+  }
+
+  /**
+   * @return the duration (in nanoseconds) of creating payment plans
+   */
+  public Histogram getPaymentPlanNanos() {
+    return paymentPlanNanos;
+  }
+
+  /**
+   * @return the duration (in nanoseconds) of batch calculations
+   */
+  public Histogram getBatchNanos() {
+    return batchNanos;
+  }
+
+  /**
+   * @return the total number of results calculated by batch calculations
+   */
+  public long getBatchResults() {
+    return batchResults.sum();
+  }
+
+  /**
+   * @return the number of AdaptivePrecision calculations
+   */
+  public long getAdaptiveCalculations() {
+    return adaptiveCalculations.sum();
+  }
+
+  /**
+   * @return the number of AdaptivePrecision calculations that fell back to BigDecimal
+   */
+  public long getAdaptiveFallbacks() {
+    return adaptiveFallbacks.sum();
+  }
+
+  /**
+   * @return the share (0 - 1) of the AdaptivePrecision calculations that fell back to BigDecimal
+   */
+  public double getAdaptiveFallbackRate() {
+    long calculations = getAdaptiveCalculations();
+    return calculations == 0 ? 0 : (double) getAdaptiveFallbacks() / calculations;
+  }
+
+  @Override
+  public String toString() {
+    return "SimpleMetrics{irr: " + irrNanos.getCount() + " (not converged " + getIrrNotConverged()
+        + "), median " + irrNanos.percentile(50) + "ns, p99 " + irrNanos.percentile(99) + "ns, mean evaluations "
+        + irrEvaluations.getMean() + "; paymentPlan: " + paymentPlanNanos.getCount() + ", median "
+        + paymentPlanNanos.percentile(50) + "ns; batch: " + batchNanos.getCount() + " calculating "
+        + getBatchResults() + " results; adaptive: " + getAdaptiveCalculations() + " (fallbacks "
+        + getAdaptiveFallbacks() + ")}";
+  }
+
+  /**
+   * A histogram of non negative values with power of 2 buckets, i.e. values are recorded with
+   * a precision of a factor 2, which is enough to see where time is spent at a negligible cost.
+   */
+  public static final class Histogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param value the value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+      long v = Math.max(0, value);
+      buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+      sum.add(v);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+      long count = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        count += buckets.get(i);
+      }
+      return count;
+    }
+
+    /**
+     * @return the sum of the values recorded
+     */
+    public long getSum() {
+      return sum.sum();
+    }
+
+    /**
+     * @return the mean of the values recorded or 0 if nothing is recorded
+     */
+    public double getMean() {
+      long count = getCount();
+      return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * @param percent the percentile, e.g. 99
+     * @return an upper bound (within a factor 2) of the percentile of the values recorded
+     */
+    public long percentile(double percent) {
+      long count = getCount();
+      long rank = (long) Math.ceil(count * percent / 100);
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= rank && seen > 0) {
+          return upperBound(i);
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * @return the number of values in each bucket, bucket 0 holds 0 and bucket i (i &gt; 0) values
+     * from 2^(i-1) to 2^i - 1
+     */
+    public long[] getBuckets() {
+      long[] result = new long[buckets.length()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = buckets.get(i);
+      }
+      return result;
+    }
+
+    private static long upperBound(int bucket) {
+      return bucket == 0 ? 0 : bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+  }
+}
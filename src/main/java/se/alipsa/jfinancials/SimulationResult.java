@@ -0,0 +1,107 @@
+package se.alipsa.jfinancials;
+
+import java.util.Arrays;
+
+/**
+ * The irr and npv of each scenario of a MonteCarloSimulation, with percentiles of their distributions.
+ *
+ * <p>A scenario losing all (or nearly all) of the money lent, e.g. every loan defaulting early with no recovery,
+ * has the irr -1. Scenarios where no irr could be calculated anyway have the irr NaN, they are counted by
+ * getScenariosWithoutIrr() and excluded from the irr percentiles and mean.</p>
+ */
+public final class SimulationResult {
+
+  private final double[] irr;
+  private final double[] npv;
+  private final double[] sortedIrr;
+  private final double[] sortedNpv;
+
+  SimulationResult(double[] irr, double[] npv) {
+    this.irr = irr;
+    this.npv = npv;
+    sortedIrr = Arrays.stream(irr).filter(v -> !Double.isNaN(v)).sorted().toArray();
+    sortedNpv = npv.clone();
+    Arrays.sort(sortedNpv);
+  }
+
+  /**
+   * @return the number of scenarios
+   */
+  public int size() {
+    return irr.length;
+  }
+
+  /**
+   * @return the number of scenarios whose irr is NaN, i.e. excluded from the irr percentiles and mean
+   */
+  public int getScenariosWithoutIrr() {
+    return irr.length - sortedIrr.length;
+  }
+
+  /**
+   * @return a copy of the monthly irr of each scenario, in scenario order
+   */
+  public double[] getIrr() {
+    return irr.clone();
+  }
+
+  /**
+   * @return a copy of the npv (at the start of the loans) of each scenario, in scenario order
+   */
+  public double[] getNpv() {
+    return npv.clone();
+  }
+
+  /**
+   * @param percent the percentile, e.g. 5 for the value that 5% of the scenarios are at or below
+   * @return the monthly irr at the percentile (nearest rank) of the scenarios with an irr
+   */
+  public double irrPercentile(double percent) {
+    return percentile(sortedIrr, percent);
+  }
+
+  /**
+   * @param percent the percentile, e.g. 5 for the value that 5% of the scenarios are at or below
+   * @return the npv at the percentile (nearest rank)
+   */
+  public double npvPercentile(double percent) {
+    return percentile(sortedNpv, percent);
+  }
+
+  /**
+   * @return the mean monthly irr of the scenarios with an irr
+   */
+  public double getMeanIrr() {
+    return mean(sortedIrr);
+  }
+
+  public double getMeanNpv() {
+    return mean(npv);
+  }
+
+  @Override
+  public String toString() {
+    return "SimulationResult{scenarios=" + size() + ", irr p5/p50/p95=" + irrPercentile(5) + "/" + irrPercentile(50)
+        + "/" + irrPercentile(95) + ", npv p5/p50/p95=" + npvPercentile(5) + "/" + npvPercentile(50) + "/"
+        + npvPercentile(95) + '}';
+  }
+
+  private static double percentile(double[] sorted, double percent) {
+    if (percent < 0 || percent > 100) {
+      throw new IllegalArgumentException("The percentile must be between 0 and 100 but was " + percent);
+    }
+    if (sorted.length == 0) {
+      return Double.NaN;
+    }
+    int rank = (int) Math.ceil(percent / 100 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double v : values) {
+      sum += v;
+    }
+    return values.length == 0 ? Double.NaN : sum / values.length;
+  }
+}
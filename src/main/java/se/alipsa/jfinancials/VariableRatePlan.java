@@ -0,0 +1,248 @@
+package se.alipsa.jfinancials;
+
+import java.math.BigDecimal;
+
+/**
+ * A payment plan where the interest rate changes at given months (e.g. resets every 3 months). At the start of
+ * each rate segment the annuity is recalculated for the remaining tenure, as in Financials.pmt, from the balance
+ * at that point. The balance at the end of each segment is calculated in closed form so creating the plan, the
+ * total payment amount and the apr all cost O(segments) rather than O(months). Monthly rows are only calculated
+ * when asked for. Instances are immutable.
+ */
+public final class VariableRatePlan {
+
+  private final double loanAmount;
+  private final int tenureMonths;
+  private final double invoiceFee;
+  /* The plan is split into pieces with one rate and one payment, i.e. the segments split at the end of the
+   * amortization free period */
+  private final int[] first;
+  private final int[] last;
+  private final double[] monthlyRate;
+  private final double[] costOfCredit;
+  private final double[] startBalance;
+
+  /**
+   * @param loanAmount the loan amount including startup fee
+   * @param tenureMonths the tenure in months
+   * @param amFreeMonths the number of amortization free months
+   * @param invoiceFee the invoice fee of each month
+   * @param resetMonths the first month of each rate segment, starting with 1 and increasing
+   * @param interests the nominal yearly interest rate of each segment
+   */
+  public VariableRatePlan(double loanAmount, int tenureMonths, int amFreeMonths, double invoiceFee,
+                          int[] resetMonths, double[] interests) {
+    if (resetMonths.length == 0 || resetMonths.length != interests.length || resetMonths[0] != 1) {
+      throw new IllegalArgumentException("There must be one interest per reset month and the first reset month must be 1");
+    }
+    if (amFreeMonths >= tenureMonths) {
+      throw new IllegalArgumentException("The tenure " + tenureMonths + " must be longer than the "
+          + amFreeMonths + " amortization free months");
+    }
+    // a segment is split in two if the amortization free period ends within it
+    int pieces = resetMonths.length;
+    for (int k = 0; k < resetMonths.length; k++) {
+      int start = resetMonths[k];
+      int end = segmentEnd(resetMonths, k, tenureMonths);
+      if (end < start || end > tenureMonths) {
+        throw new IllegalArgumentException("The reset months must be increasing and within the tenure ("
+            + tenureMonths + ") but was " + start + " followed by " + (end + 1));
+      }
+      if (start <= amFreeMonths && end > amFreeMonths) {
+        pieces++;
+      }
+    }
+    first = new int[pieces];
+    last = new int[pieces];
+    monthlyRate = new double[pieces];
+    costOfCredit = new double[pieces];
+    startBalance = new double[pieces];
+    this.loanAmount = loanAmount;
+    this.tenureMonths = tenureMonths;
+    this.invoiceFee = invoiceFee;
+
+    int piece = 0;
+    double balance = loanAmount;
+    for (int k = 0; k < resetMonths.length; k++) {
+      int start = resetMonths[k];
+      int end = segmentEnd(resetMonths, k, tenureMonths);
+      double rate = interests[k] / 12;
+      if (start <= amFreeMonths && end > amFreeMonths) {
+        balance = piece(piece++, start, amFreeMonths, rate, balance, amFreeMonths);
+        start = amFreeMonths + 1;
+      }
+      balance = piece(piece++, start, end, rate, balance, amFreeMonths);
+    }
+  }
+
+  private static int segmentEnd(int[] resetMonths, int k, int tenureMonths) {
+    return k + 1 < resetMonths.length ? resetMonths[k + 1] - 1 : tenureMonths;
+  }
+
+  private double piece(int piece, int start, int end, double rate, double balance, int amFreeMonths) {
+    first[piece] = start;
+    last[piece] = end;
+    monthlyRate[piece] = rate;
+    startBalance[piece] = balance;
+    if (end <= amFreeMonths) {
+      costOfCredit[piece] = balance * rate;
+    } else {
+      int remaining = tenureMonths - start + 1;
+      costOfCredit[piece] = rate == 0 ? balance / remaining : Financials.pmt(rate, remaining, -balance);
+    }
+    return balanceAfter(piece, end - start + 1);
+  }
+
+  /* The balance after the first months of the piece */
+  private double balanceAfter(int piece, int months) {
+    double rate = monthlyRate[piece];
+    if (rate == 0) {
+      return startBalance[piece] - costOfCredit[piece] * months;
+    }
+    double growth = Math.pow(1 + rate, months);
+    return startBalance[piece] * growth - costOfCredit[piece] * (growth - 1) / rate;
+  }
+
+  private int pieceOf(int month) {
+    if (month < 1 || month > tenureMonths) {
+      throw new IndexOutOfBoundsException("Month " + month + " is outside of the tenure " + tenureMonths);
+    }
+    int lo = 0;
+    int hi = first.length - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (first[mid] <= month) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  public int getTenureMonths() {
+    return tenureMonths;
+  }
+
+  /**
+   * @return the number of pieces with a constant rate and payment (the rate segments, one of them split in two
+   * if the amortization free period ends within it)
+   */
+  public int getSegmentCount() {
+    return first.length;
+  }
+
+  /**
+   * @param month the month (1 to tenure)
+   * @return the cost of credit (interest and amortization, excluding the invoice fee) of the month
+   */
+  public double getCostOfCredit(int month) {
+    return costOfCredit[pieceOf(month)];
+  }
+
+  /**
+   * @param month the month (0 to tenure)
+   * @return the balance after the payment of the month
+   */
+  public double getOutgoingBalance(int month) {
+    if (month == 0) {
+      return loanAmount;
+    }
+    int piece = pieceOf(month);
+    return balanceAfter(piece, month - first[piece] + 1);
+  }
+
+  /**
+   * @param month the month (0 to tenure)
+   * @return the payment of the month, calculated from the balance at the start of its segment
+   */
+  public Payment getPayment(int month) {
+    Payment p = new Payment();
+    if (month == 0) {
+      p.setOutgoingBalance(BigDecimal.valueOf(loanAmount));
+      p.setCacheFlow(BigDecimal.valueOf(-loanAmount));
+      return p;
+    }
+    int piece = pieceOf(month);
+    double balance = balanceAfter(piece, month - first[piece]);
+    double interestAmt = balance * monthlyRate[piece];
+    double amortization = costOfCredit[piece] - interestAmt;
+    p.setMonth(month);
+    p.setCostOfCredit(BigDecimal.valueOf(costOfCredit[piece]));
+    p.setInterestAmt(BigDecimal.valueOf(interestAmt));
+    p.setAmortization(BigDecimal.valueOf(amortization));
+    p.setInvoiceFee(BigDecimal.valueOf(invoiceFee));
+    p.setOutgoingBalance(BigDecimal.valueOf(balance - amortization));
+    p.setCacheFlow(BigDecimal.valueOf(costOfCredit[piece] + invoiceFee));
+    return p;
+  }
+
+  /**
+   * @return all months of the plan, calculated month by month within each segment
+   */
+  public ColumnarPaymentPlan columnarPaymentPlan() {
+    ColumnarPaymentPlan plan = new ColumnarPaymentPlan(tenureMonths + 1);
+    plan.outgoingBalance[0] = loanAmount;
+    plan.cashFlow[0] = -loanAmount;
+    for (int piece = 0; piece < first.length; piece++) {
+      double balance = startBalance[piece];
+      for (int month = first[piece]; month <= last[piece]; month++) {
+        double interestAmt = balance * monthlyRate[piece];
+        double amortization = costOfCredit[piece] - interestAmt;
+        balance -= amortization;
+        plan.month[month] = month;
+        plan.costOfCredit[month] = costOfCredit[piece];
+        plan.interestAmt[month] = interestAmt;
+        plan.amortization[month] = amortization;
+        plan.invoiceFee[month] = invoiceFee;
+        plan.outgoingBalance[month] = balance;
+        plan.cashFlow[month] = costOfCredit[piece] + invoiceFee;
+      }
+    }
+    return plan;
+  }
+
+  /**
+   * @return the cash flow (the negative loan amount followed by each months payment including the invoice fee)
+   */
+  public double[] cashFlow() {
+    double[] cashFlow = new double[tenureMonths + 1];
+    cashFlow[0] = -loanAmount;
+    for (int piece = 0; piece < first.length; piece++) {
+      for (int month = first[piece]; month <= last[piece]; month++) {
+        cashFlow[month] = costOfCredit[piece] + invoiceFee;
+      }
+    }
+    return cashFlow;
+  }
+
+  /**
+   * @return the sum of all payments including invoice fees
+   */
+  public double getTotalPaymentAmount() {
+    double total = 0;
+    for (int piece = 0; piece < first.length; piece++) {
+      total += (costOfCredit[piece] + invoiceFee) * (last[piece] - first[piece] + 1);
+    }
+    return total;
+  }
+
+  /**
+   * @return the monthly internal rate of return, calculated in O(segments) per solver iteration
+   */
+  public double irr() {
+    double[] payments = new double[first.length];
+    for (int piece = 0; piece < first.length; piece++) {
+      payments[piece] = costOfCredit[piece] + invoiceFee;
+    }
+    return Instrumentation.irr(new IrrSolver(), new SegmentNpv(loanAmount, first, last, payments), 0d, 1d,
+        tenureMonths + 1);
+  }
+
+  /**
+   * @return the annual percentage rate (effective interest)
+   */
+  public double apr() {
+    return Financials.apr(irr());
+  }
+}
@@ -0,0 +1,56 @@
+package se.alipsa.jfinancials;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates xirr for a range of dated cash flows stored one after the other, cash flow i being the entries
+ * offsets[i] to offsets[i + 1] - 1 of the amounts and epochDays arrays. Each leaf reuses one IrrSolver (and
+ * thereby its year fraction buffer) for all of its cash flows.
+ */
+class XirrTask extends RecursiveAction {
+
+  private static final int MIN_LEAF_SIZE = 64;
+
+  private final double[] amounts;
+  private final long[] epochDays;
+  private final int[] offsets;
+  private final DayCount dayCount;
+  private final double[] result;
+  private final int leafSize;
+  private final int from;
+  private final int to;
+
+  XirrTask(double[] amounts, long[] epochDays, int[] offsets, DayCount dayCount, double[] result,
+           int parallelism) {
+    this(amounts, epochDays, offsets, dayCount, result,
+        Math.max(MIN_LEAF_SIZE, result.length / (parallelism * 8)), 0, result.length);
+  }
+
+  private XirrTask(double[] amounts, long[] epochDays, int[] offsets, DayCount dayCount, double[] result,
+                   int leafSize, int from, int to) {
+    this.amounts = amounts;
+    this.epochDays = epochDays;
+    this.offsets = offsets;
+    this.dayCount = dayCount;
+    this.result = result;
+    this.leafSize = leafSize;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected void compute() {
+    if (to - from <= leafSize) {
+      IrrSolver solver = new IrrSolver();
+      for (int i = from; i < to; i++) {
+        result[i] = solver.xirr(amounts, epochDays, offsets[i], offsets[i + 1] - offsets[i], dayCount);
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    invokeAll(
+        new XirrTask(amounts, epochDays, offsets, dayCount, result, leafSize, from, mid),
+        new XirrTask(amounts, epochDays, offsets, dayCount, result, leafSize, mid, to)
+    );
+  }
+}
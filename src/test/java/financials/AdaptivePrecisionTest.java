@@ -0,0 +1,172 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.AdaptivePrecision;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentPlan;
+import se.alipsa.jfinancials.SimpleMetrics;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class AdaptivePrecisionTest {
+
+  private static final MathContext MC = new MathContext(40, RoundingMode.HALF_EVEN);
+
+  @AfterEach
+  void disableMetrics() {
+    setMetricsListener(null);
+  }
+
+  @Test
+  public void testRoundedPaymentPlanEqualsBigDecimal() {
+    AdaptivePrecision adaptive = new AdaptivePrecision();
+    Random random = new Random(42);
+    for (int i = 0; i < 200; i++) {
+      int loanAmount = 1_000 + random.nextInt(1_000_000);
+      BigDecimal interest = BigDecimal.valueOf(random.nextInt(20_000), 5);
+      int tenure = 1 + random.nextInt(480);
+      int amFree = random.nextInt(tenure);
+      BigDecimal fee = BigDecimal.valueOf(random.nextInt(5_000), 2);
+      PaymentPlan expected = paymentPlan(loanAmount, interest, tenure, amFree, fee);
+      ColumnarPaymentPlan plan = adaptive.paymentPlan(loanAmount, interest, tenure, amFree, fee, 2);
+      assertEquals(expected.size(), plan.size());
+      for (int row = 0; row < plan.size(); row++) {
+        Payment p = expected.get(row);
+        String msg = "loan " + i + " month " + row;
+        assertEquals(p.getMonth(), plan.getMonth(row), msg);
+        assertEquals(cents(p.getCostOfCredit()), plan.getCostOfCredit(row), msg);
+        assertEquals(cents(p.getInterestAmt()), plan.getInterestAmt(row), msg);
+        assertEquals(cents(p.getAmortization()), plan.getAmortization(row), msg);
+        assertEquals(cents(p.getInvoiceFee()), plan.getInvoiceFee(row), msg);
+        assertEquals(cents(p.getOutgoingBalance()), plan.getOutgoingBalance(row), msg);
+        assertEquals(cents(p.getCacheFlow()), plan.getCashFlow(row), msg);
+      }
+    }
+    assertEquals(200, adaptive.getPaymentPlanCalculations());
+    // cents are (almost) always certain in double precision
+    assertTrue(adaptive.getPaymentPlanFallbacks() < 10, adaptive.toString());
+  }
+
+  @Test
+  public void testFallbackWhenDoubleCannotCertify() {
+    AdaptivePrecision adaptive = new AdaptivePrecision();
+    BigDecimal interest = BigDecimal.valueOf(0.0677);
+    BigDecimal fee = BigDecimal.valueOf(30);
+    ColumnarPaymentPlan plan = adaptive.paymentPlan(50_429, interest, 72, 0, fee, 12);
+    PaymentPlan expected = paymentPlan(50_429, interest, 72, 0, fee);
+    for (int row = 0; row < plan.size(); row++) {
+      assertEquals(expected.get(row).getOutgoingBalance().setScale(12, RoundingMode.HALF_UP).doubleValue(),
+          plan.getOutgoingBalance(row));
+    }
+    assertEquals(1, adaptive.getPaymentPlanFallbacks());
+
+    BigDecimal apr = adaptive.effectiveInterestRate(50_429, interest, 72, 0, fee, 14);
+    assertEquals(14, apr.scale());
+    assertEquals(effectiveInterestRate(50_429, interest, 72, 0, 30), apr.doubleValue(), 1e-12);
+    assertEquals(1, adaptive.getAprFallbacks());
+    assertEquals(1.0, adaptive.getFallbackRate());
+  }
+
+  @Test
+  public void testEffectiveInterestRate() {
+    SimpleMetrics metrics = new SimpleMetrics();
+    setMetricsListener(metrics);
+    AdaptivePrecision adaptive = new AdaptivePrecision();
+    Random random = new Random(7);
+    for (int i = 0; i < 100; i++) {
+      int loanAmount = 1_000 + random.nextInt(1_000_000);
+      BigDecimal interest = BigDecimal.valueOf(1 + random.nextInt(20_000), 5);
+      int tenure = 12 + random.nextInt(468);
+      int amFree = random.nextInt(12);
+      BigDecimal fee = BigDecimal.valueOf(random.nextInt(50));
+      List<BigDecimal> cashFlow = cashFlow(paymentPlan(loanAmount, interest, tenure, amFree, fee));
+      // every other loan with the number of decimals where the apr is closest to a rounding boundary
+      int decimals = i % 2 == 0 ? 6 : closestToBoundary(effectiveInterestRate(loanAmount, interest, tenure, amFree,
+          fee.intValue()));
+      BigDecimal apr = adaptive.effectiveInterestRate(loanAmount, interest, tenure, amFree, fee, decimals);
+      assertEquals(decimals, apr.scale());
+      assertEquals(referenceApr(cashFlow, decimals), apr, "loan " + i + " with " + decimals + " decimals");
+    }
+    assertEquals(100, metrics.getAdaptiveCalculations());
+    assertEquals(adaptive.getAprFallbacks(), metrics.getAdaptiveFallbacks());
+    // the loans close to a boundary can not be certified in double, the others (almost) always can
+    assertTrue(adaptive.getAprFallbacks() >= 40, adaptive.toString());
+    assertTrue(metrics.getAdaptiveFallbackRate() < 0.6, metrics.toString());
+
+    assertEquals(new BigDecimal("0.0583"), effectiveInterestRate(263_429, BigDecimal.valueOf(0.055), 360, 0, BigDecimal.valueOf(30), 4));
+    assertTrue(getAdaptivePrecision().getAprCalculations() > 0);
+  }
+
+  /**
+   * The number of decimals (4 - 12) where the apr is closest to half a unit of the last decimal
+   */
+  private static int closestToBoundary(double apr) {
+    int closest = 4;
+    double minDistance = Double.MAX_VALUE;
+    for (int decimals = 4; decimals <= 12; decimals++) {
+      double scaled = apr * Math.pow(10, decimals);
+      // relative to the rounding step so that more decimals are not favoured just for being finer
+      double distance = Math.abs(scaled - Math.floor(scaled) - 0.5) * Math.pow(10, -decimals);
+      if (distance < minDistance) {
+        minDistance = distance;
+        closest = decimals;
+      }
+    }
+    return closest;
+  }
+
+  private static List<BigDecimal> cashFlow(PaymentPlan plan) {
+    List<BigDecimal> cashFlow = new ArrayList<>(plan.size());
+    for (Payment p : plan) {
+      cashFlow.add(p.getCacheFlow());
+    }
+    return cashFlow;
+  }
+
+  /**
+   * The apr of the BigDecimal cash flow rounded half up, the monthly rate is bisected with 40 digits until both
+   * ends of the bracket round to the same apr
+   */
+  private static BigDecimal referenceApr(List<BigDecimal> cashFlow, int decimals) {
+    BigDecimal low = BigDecimal.ZERO;
+    BigDecimal high = BigDecimal.ONE;
+    assertTrue(npv(cashFlow, low).signum() > 0 && npv(cashFlow, high).signum() < 0);
+    BigDecimal two = BigDecimal.valueOf(2);
+    while (apr(low, decimals).compareTo(apr(high, decimals)) != 0) {
+      BigDecimal mid = low.add(high).divide(two, MC);
+      if (npv(cashFlow, mid).signum() > 0) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return apr(low, decimals);
+  }
+
+  private static BigDecimal npv(List<BigDecimal> cashFlow, BigDecimal rate) {
+    BigDecimal v = BigDecimal.ONE.divide(BigDecimal.ONE.add(rate), MC);
+    BigDecimal p = cashFlow.get(cashFlow.size() - 1);
+    for (int i = cashFlow.size() - 2; i >= 0; i--) {
+      p = p.multiply(v, MC).add(cashFlow.get(i), MC);
+    }
+    return p;
+  }
+
+  private static BigDecimal apr(BigDecimal monthly, int decimals) {
+    return BigDecimal.ONE.add(monthly).pow(12, MC).subtract(BigDecimal.ONE).setScale(decimals, RoundingMode.HALF_UP);
+  }
+
+  private static double cents(BigDecimal value) {
+    return value.setScale(2, RoundingMode.HALF_UP).doubleValue();
+  }
+}
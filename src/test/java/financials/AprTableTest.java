@@ -0,0 +1,79 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.AprTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class AprTableTest {
+
+  private static final int[] AMOUNTS = IntStream.rangeClosed(1, 50).map(i -> i * 10_000).toArray();
+  private static final int[] TENURES = IntStream.rangeClosed(1, 40).map(i -> i * 12).toArray();
+  private static final int[] AM_FREE = {0, 3};
+
+  @Test
+  public void testInterpolationIsWithinEstimatedErrorBound() {
+    AprTable table = AprTable.build(0.0677, 30, AMOUNTS, TENURES, AM_FREE, 0.0001);
+    assertTrue(table.getMaxEstimatedErrorBound() > 0);
+    Random random = new Random(1);
+    for (int i = 0; i < 2_000; i++) {
+      int amount = 10_000 + random.nextInt(490_001);
+      int tenure = 12 + random.nextInt(469);
+      int amFree = AM_FREE[random.nextInt(2)];
+      double exact = effectiveInterestRate(amount, BigDecimal.valueOf(0.0677), tenure, amFree, 30);
+      double bound = table.estimatedErrorBound(amount, tenure, amFree);
+      double apr = table.apr(amount, tenure, amFree);
+      assertEquals(exact, apr, Math.min(bound, table.getTolerance()) + 1e-15,
+          "amount " + amount + ", tenure " + tenure + ", amFree " + amFree);
+    }
+    // small amounts with short tenures are the most curved (the fee weighs the most)
+    assertTrue(table.getCellsExceedingTolerance() > 0, table.toString());
+    assertTrue(table.getExactFallbacks() < table.getLookups() / 4, table.toString());
+  }
+
+  @Test
+  public void testGridPointsAndFallbacks() {
+    AprTable table = AprTable.build(0.05, 25, AMOUNTS, TENURES, AM_FREE, 0.001);
+    assertEquals(effectiveInterestRate(100_000, BigDecimal.valueOf(0.05), 120, 3, 25), table.apr(100_000, 120, 3), 1e-15);
+    assertEquals(0, table.getExactFallbacks());
+    // outside the grid and between amortization free months
+    assertEquals(effectiveInterestRate(5_000, BigDecimal.valueOf(0.05), 120, 0, 25), table.apr(5_000, 120, 0));
+    assertEquals(effectiveInterestRate(100_000, BigDecimal.valueOf(0.05), 600, 0, 25), table.apr(100_000, 600, 0));
+    assertEquals(effectiveInterestRate(100_000, BigDecimal.valueOf(0.05), 120, 1, 25), table.apr(100_000, 120, 1));
+    assertEquals(3, table.getExactFallbacks());
+    assertTrue(Double.isNaN(table.estimatedErrorBound(5_000, 120, 0)));
+
+    // a tolerance of 0 means that everything not on the grid is calculated exactly
+    AprTable exact = AprTable.build(0.05, 25, AMOUNTS, TENURES, AM_FREE, 0);
+    assertEquals(effectiveInterestRate(123_456, BigDecimal.valueOf(0.05), 100, 0, 25), exact.apr(123_456, 100, 0));
+
+    assertThrows(IllegalArgumentException.class, () -> AprTable.build(0.05, 25, new int[]{10_000}, TENURES, AM_FREE, 0.001));
+    assertThrows(IllegalArgumentException.class, () -> AprTable.build(0.05, 25, AMOUNTS, new int[]{24, 12}, AM_FREE, 0.001));
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    AprTable table = AprTable.build(0.0677, 30, AMOUNTS, TENURES, AM_FREE, 0.0001);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    table.write(new DataOutputStream(bytes));
+    AprTable read = AprTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(table.getMaxEstimatedErrorBound(), read.getMaxEstimatedErrorBound());
+    assertEquals(table.getCellsExceedingTolerance(), read.getCellsExceedingTolerance());
+    assertEquals(0.0677, read.getInterest());
+    assertEquals(30, read.getInvoiceFee());
+    for (int amount = 10_000; amount <= 500_000; amount += 7_919) {
+      assertEquals(table.apr(amount, 100, 3), read.apr(amount, 100, 3));
+    }
+    assertThrows(IOException.class, () -> AprTable.read(new DataInputStream(new ByteArrayInputStream(new byte[8]))));
+  }
+}
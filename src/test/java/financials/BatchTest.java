@@ -0,0 +1,54 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class BatchTest {
+
+  @Test
+  public void testBatchMatchesSingleLoanCalculation() {
+    int size = 5_000;
+    int[] loanAmounts = new int[size];
+    double[] interests = new double[size];
+    int[] tenureMonths = new int[size];
+    int[] amFreeMonths = new int[size];
+    int[] invoiceFees = new int[size];
+    Random random = new Random(42);
+    for (int i = 0; i < size; i++) {
+      loanAmounts[i] = 10_000 + random.nextInt(500_000);
+      interests[i] = 0.01 + random.nextInt(200) / 1000.0;
+      tenureMonths[i] = 12 + random.nextInt(469);
+      amFreeMonths[i] = random.nextInt(12);
+      invoiceFees[i] = random.nextInt(50);
+    }
+    double[] aprs = new double[size];
+    double[] irrs = new double[size];
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      effectiveInterestRates(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, aprs, pool);
+      irr(loanAmounts, interests, tenureMonths, amFreeMonths, invoiceFees, irrs, pool);
+    } finally {
+      pool.shutdown();
+    }
+    for (int i = 0; i < size; i++) {
+      BigDecimal interest = BigDecimal.valueOf(interests[i]);
+      assertEquals(effectiveInterestRate(loanAmounts[i], interest, tenureMonths[i], amFreeMonths[i], invoiceFees[i]),
+          aprs[i], 1E-12, "apr of loan " + i);
+      assertEquals(irr(cashFlow(loanAmounts[i], interest, tenureMonths[i], amFreeMonths[i], invoiceFees[i])),
+          irrs[i], 1E-12, "irr of loan " + i);
+    }
+  }
+
+  @Test
+  public void testMismatchingLengths() {
+    assertThrows(IllegalArgumentException.class, () -> effectiveInterestRates(
+        new int[2], new double[2], new int[2], new int[1], new int[2], new double[2]));
+  }
+}
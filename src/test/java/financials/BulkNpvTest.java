@@ -0,0 +1,56 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.BulkNpv;
+
+import java.math.BigDecimal;
+
+public class BulkNpvTest {
+
+  @Test
+  public void testNpvForRates() {
+    double[] cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), 180, 12, 30);
+    // 13 rates so that there is a tail not filling a whole vector
+    double[] rates = new double[13];
+    for (int i = 0; i < rates.length; i++) {
+      rates[i] = -0.002 + i * 0.001;
+    }
+    double[] result = new double[rates.length];
+    BulkNpv.npv(cashFlow, rates, result);
+    for (int i = 0; i < rates.length; i++) {
+      assertEquals(npv(cashFlow, rates[i]), result[i], 1E-6, "rate " + rates[i]);
+    }
+    assertEquals(5908.8656360761, single(new double[]{-123400, 36200, 54800, 48100}, 0.035), 1e-8);
+  }
+
+  @Test
+  public void testNpvForLoans() {
+    int loans = 11;
+    int periods = 61;
+    double[] flows = new double[periods * loans];
+    double[] rates = new double[loans];
+    double[][] byLoan = new double[loans][];
+    for (int j = 0; j < loans; j++) {
+      byLoan[j] = cashFlow(10_000 + j * 1000, BigDecimal.valueOf(0.04 + j * 0.001), periods - 1, j % 3, 25);
+      rates[j] = effectiveInterestRate(10_000 + j * 1000, BigDecimal.valueOf(0.04 + j * 0.001), periods - 1, j % 3, 25) / 12;
+      for (int t = 0; t < periods; t++) {
+        flows[t * loans + j] = byLoan[j][t];
+      }
+    }
+    double[] result = new double[loans];
+    BulkNpv.npv(flows, loans, rates, result);
+    for (int j = 0; j < loans; j++) {
+      assertEquals(npv(byLoan[j], rates[j]), result[j], 1E-6, "loan " + j);
+    }
+    assertThrows(IllegalArgumentException.class, () -> BulkNpv.npv(new double[10], 3, new double[3], new double[3]));
+  }
+
+  private static double single(double[] cashFlow, double rate) {
+    double[] result = new double[1];
+    BulkNpv.npv(cashFlow, new double[]{rate}, result);
+    return result[0];
+  }
+}
@@ -0,0 +1,69 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.jfinancials.CashFlowStore;
+import se.alipsa.jfinancials.CashFlowStoreWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+
+public class CashFlowStoreTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Path file = dir.resolve("portfolio.cf");
+    int count = 500;
+    double[][] cashFlows = new double[count][];
+    try (CashFlowStoreWriter writer = new CashFlowStoreWriter(file)) {
+      for (int i = 0; i < count; i++) {
+        cashFlows[i] = cashFlow(10_000 + i * 100, BigDecimal.valueOf(0.03 + (i % 20) * 0.002), 12 + i % 349, i % 4, 25);
+        assertEquals(i, writer.add(cashFlows[i]));
+      }
+    }
+    // a small window to make the cash flows span many mapped windows
+    try (CashFlowStore store = CashFlowStore.open(file, 4096)) {
+      assertEquals(count, store.size());
+      assertEquals(361, store.getMaxLength());
+      double[] result = new double[count];
+      store.irr(result);
+      for (int i = 0; i < count; i++) {
+        assertEquals(cashFlows[i].length, store.length(i));
+        assertEquals(cashFlows[i][cashFlows[i].length - 1], store.get(i, cashFlows[i].length - 1));
+        assertEquals(irr(cashFlows[i]), result[i], 1e-12, "cash flow " + i);
+        assertEquals(npv(cashFlows[i], 0.004), store.npv(i, 0.004), 1e-8);
+      }
+      DoubleBuffer cf = store.cashFlow(42);
+      assertEquals(cashFlows[42].length, cf.remaining());
+      assertEquals(cashFlows[42][0], cf.get(0));
+      assertTrue(cf.isReadOnly());
+      assertThrows(IndexOutOfBoundsException.class, () -> store.length(count));
+    }
+    assertThrows(IllegalArgumentException.class, () -> CashFlowStore.open(file, 1001));
+  }
+
+  @Test
+  public void testInvalidCashFlows() throws IOException {
+    Path file = dir.resolve("invalid.cf");
+    try (CashFlowStoreWriter writer = new CashFlowStoreWriter(file)) {
+      writer.add(new double[]{-100, 60, 60});
+      assertThrows(IllegalArgumentException.class, () -> writer.add(new double[0]));
+      assertThrows(IllegalArgumentException.class, () -> writer.add(new double[]{-100, 60, 60}, 1, 0));
+      assertThrows(IllegalArgumentException.class, () -> writer.add(new double[]{-100, 60, 60}, 2, 2));
+      assertThrows(IllegalArgumentException.class, () -> writer.add(new double[]{-100, 60, 60}, -1, 2));
+      assertEquals(1, writer.size());
+    }
+    try (CashFlowStore store = CashFlowStore.open(file)) {
+      assertEquals(1, store.size());
+      assertEquals(irr(new double[]{-100, 60, 60}), store.irr(0), 1e-12);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentPlan;
+import se.alipsa.jfinancials.PaymentPlanEvent;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class ColumnarPaymentPlanTest {
+
+  @Test
+  public void testSameAsBigDecimalPlan() {
+    int loanAmt = 263_429;
+    BigDecimal interest = BigDecimal.valueOf(0.055);
+    BigDecimal invoiceFee = BigDecimal.valueOf(30);
+    PaymentPlan paymentPlan = paymentPlan(loanAmt, interest, 40 * 12, 12, invoiceFee);
+    ColumnarPaymentPlan columnarPlan = columnarPaymentPlan(loanAmt, interest, 40 * 12, 12, invoiceFee);
+
+    assertEquals(paymentPlan.size(), columnarPlan.size());
+    for (int i = 0; i < paymentPlan.size(); i++) {
+      Payment p = paymentPlan.get(i);
+      assertEquals(p.getMonth(), columnarPlan.getMonth(i));
+      assertEquals(p.getCostOfCredit().doubleValue(), columnarPlan.getCostOfCredit(i), 0.001, "costOfCredit " + i);
+      assertEquals(p.getInterestAmt().doubleValue(), columnarPlan.getInterestAmt(i), 0.001, "interestAmt " + i);
+      assertEquals(p.getAmortization().doubleValue(), columnarPlan.getAmortization(i), 0.001, "amortization " + i);
+      assertEquals(p.getOutgoingBalance().doubleValue(), columnarPlan.getOutgoingBalance(i), 0.001, "balance " + i);
+      assertEquals(p.getCacheFlow().doubleValue(), columnarPlan.getCashFlow(i), 0.001, "cashFlow " + i);
+    }
+    assertEquals(irr(paymentPlan), irr(columnarPlan), 1E-12);
+    assertEquals(paymentPlan.toString(), columnarPlan.toString());
+  }
+
+  @Test
+  public void testPaymentView() {
+    PaymentPlan paymentPlan = paymentPlan(10_000, BigDecimal.valueOf(0.035), 18, 6, BigDecimal.valueOf(30));
+    ColumnarPaymentPlan columnarPlan = ColumnarPaymentPlan.of(paymentPlan);
+    List<Payment> payments = columnarPlan.asPaymentList();
+    assertEquals(19, payments.size());
+    assertEquals(paymentPlan.get(18).getOutgoingBalance().doubleValue(), payments.get(18).getOutgoingBalance().doubleValue());
+    assertEquals(dailyInterestAmount(paymentPlan, 18), dailyInterestAmount(payments, 18), 1E-9);
+    assertThrows(UnsupportedOperationException.class, () -> payments.add(new Payment()));
+
+    // changing a copy must not change the plan
+    double[] cashFlow = columnarPlan.getCashFlow();
+    cashFlow[1] = 0;
+    assertEquals(paymentPlan.get(1).getCacheFlow().doubleValue(), columnarPlan.getCashFlow(1));
+    assertArrayEquals(cashFlow(paymentPlan), columnarPlan.getColumn("cashFlow"));
+  }
+
+  @Test
+  public void testReAmortizeConvertedPlan() {
+    BigDecimal interest = BigDecimal.valueOf(0.0677);
+    BigDecimal invoiceFee = BigDecimal.valueOf(30);
+    PaymentPlan paymentPlan = paymentPlan(50_429, interest, 72, 6, invoiceFee);
+    ColumnarPaymentPlan columnarPlan = columnarPaymentPlan(50_429, interest, 72, 6, invoiceFee);
+    PaymentPlanEvent event = PaymentPlanEvent.rateChange(25, BigDecimal.valueOf(0.08));
+    PaymentPlan expected = reAmortize(paymentPlan, event);
+    PaymentPlan converted = columnarPlan.toPaymentPlan();
+    assertEquals(interest, converted.getInterest());
+    assertEquals(6, converted.getAmFreeMonths());
+    assertEquals(invoiceFee, converted.getInvoiceFee());
+    PaymentPlan actual = reAmortize(converted, event);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getOutgoingBalance().doubleValue(), actual.get(i).getOutgoingBalance().doubleValue(),
+          0.001, "balance " + i);
+    }
+    // the terms survive a round trip through of(...)
+    assertEquals(interest, ColumnarPaymentPlan.of(paymentPlan).toPaymentPlan().getInterest());
+    assertNull(ColumnarPaymentPlan.of(List.copyOf(paymentPlan)).toPaymentPlan().getInterest());
+  }
+}
@@ -0,0 +1,360 @@
+package financials;
+
+import static se.alipsa.jfinancials.Financials.*;
+
+import se.alipsa.jfinancials.BulkNpv;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.Financials;
+import se.alipsa.jfinancials.FixedPointAmortization;
+import se.alipsa.jfinancials.IrrSolver;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentPlan;
+import se.alipsa.jfinancials.VariableRatePlan;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the calculation engines for pmt, npv, irr and paymentPlan with a high precision (50 digits)
+ * BigDecimal reference on randomly generated loans and reports the max and percentile absolute errors together
+ * with the throughput of each engine. The errors are measured over all loans (in parallel, the loans are
+ * generated from the seed and their index so nothing is kept in memory), the throughput on a sample of at most
+ * 1000 loans, single threaded after a warmup.
+ *
+ * <p>The reference of paymentPlan is the recurrence of paymentPlan(...) (which rounds only the monthly interest
+ * rate to 9 decimals, as all engines do) calculated in 50 digits.
+ * Run millions of loans with e.g.</p>
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=financials.DifferentialHarness -Djmh.args=1000000
+ * </pre>
+ * Other engines (e.g. a new fast path) are compared by adding them with addEngine before run.
+ */
+public class DifferentialHarness {
+
+  public enum Operation {
+    PMT,
+    NPV,
+    IRR,
+    PAYMENT_PLAN
+  }
+
+  static final MathContext MC = new MathContext(50, RoundingMode.HALF_EVEN);
+  private static final MathContext DIGITS_20 = new MathContext(20, RoundingMode.HALF_EVEN);
+  private static final int SAMPLE_SIZE = 1000;
+
+  private final long seed;
+  private final long timingNanos;
+  private final Map<Operation, Map<String, Function<Loan, double[]>>> engines = new LinkedHashMap<>();
+  /* keeps the jit from removing the calculations that are timed */
+  volatile double sink;
+
+  /**
+   * @param seed the seed of the random loans
+   * @param timingMillis how long to measure the throughput of each engine (after a warmup of the same length)
+   */
+  public DifferentialHarness(long seed, long timingMillis) {
+    this.seed = seed;
+    this.timingNanos = timingMillis * 1_000_000;
+    for (Operation operation : Operation.values()) {
+      engines.put(operation, new LinkedHashMap<>());
+    }
+    addEngine(Operation.PMT, "double", l -> new double[]{pmt(l.monthlyRate, l.tenureMonths, l.loanAmount)});
+    addEngine(Operation.PMT, "BigDecimal", l -> new double[]{pmt(BigDecimal.valueOf(l.monthlyRate), l.tenureMonths,
+        BigDecimal.valueOf(l.loanAmount)).doubleValue()});
+    addEngine(Operation.NPV, "double", l -> new double[]{npv(l.cashFlow(), l.discountRate)});
+    addEngine(Operation.NPV, BulkNpv.isVectorized() ? "BulkNpv (vector)" : "BulkNpv (scalar)", l -> {
+      double[] result = new double[1];
+      BulkNpv.npv(l.cashFlow(), new double[]{l.discountRate}, result);
+      return result;
+    });
+    addEngine(Operation.IRR, "IrrSolver", l -> new double[]{new IrrSolver().irr(l.cashFlow())});
+    addEngine(Operation.IRR, "VariableRatePlan (closed form)", l -> new double[]{new VariableRatePlan(l.loanAmount,
+        l.tenureMonths, l.amFreeMonths, l.invoiceFee, new int[]{1}, new double[]{l.interest.doubleValue()}).irr()});
+    addEngine(Operation.PAYMENT_PLAN, "BigDecimal", l -> values(
+        paymentPlan(l.loanAmount, l.interest, l.tenureMonths, l.amFreeMonths, BigDecimal.valueOf(l.invoiceFee))));
+    addEngine(Operation.PAYMENT_PLAN, "columnar (double)", l -> values(
+        columnarPaymentPlan(l.loanAmount, l.interest, l.tenureMonths, l.amFreeMonths, BigDecimal.valueOf(l.invoiceFee))));
+    FixedPointAmortization fixedPoint = new FixedPointAmortization();
+    addEngine(Operation.PAYMENT_PLAN, "fixed point (8 decimals)", l -> values(fixedPoint.columnarPaymentPlan(
+        l.loanAmount, l.interest, l.tenureMonths, l.amFreeMonths, BigDecimal.valueOf(l.invoiceFee))));
+    addEngine(Operation.PAYMENT_PLAN, "adaptive (cents)", l -> values(roundedPaymentPlan(
+        l.loanAmount, l.interest, l.tenureMonths, l.amFreeMonths, BigDecimal.valueOf(l.invoiceFee), 2)));
+  }
+
+  /**
+   * Add (or replace) an engine, it must be thread safe
+   *
+   * @param operation what the engine calculates
+   * @param name the name to report the engine as
+   * @param engine calculates the same values as the reference of the operation: the pmt, the npv (first entry
+   *               discounted one period), the monthly irr or all amounts of the plan row by row
+   */
+  public void addEngine(Operation operation, String name, Function<Loan, double[]> engine) {
+    engines.get(operation).put(name, engine);
+  }
+
+  /**
+   * @param loans the number of random loans to compare on
+   * @return the results of each engine of each operation
+   */
+  public List<Result> run(int loans) {
+    List<Result> results = new ArrayList<>();
+    for (Operation operation : Operation.values()) {
+      List<String> names = new ArrayList<>(engines.get(operation).keySet());
+      List<Function<Loan, double[]>> calculations = new ArrayList<>(engines.get(operation).values());
+      double[][] errors = new double[names.size()][loans];
+      IntStream.range(0, loans).parallel().forEach(i -> {
+        Loan loan = Loan.random(seed, i);
+        double[] reference = reference(operation, loan);
+        for (int e = 0; e < calculations.size(); e++) {
+          errors[e][i] = maxError(calculations.get(e).apply(loan), reference);
+        }
+      });
+      Loan[] sample = new Loan[Math.min(loans, SAMPLE_SIZE)];
+      for (int i = 0; i < sample.length; i++) {
+        sample[i] = Loan.random(seed, i);
+        sample[i].cashFlow();
+      }
+      for (int e = 0; e < names.size(); e++) {
+        results.add(new Result(operation, names.get(e), errors[e], throughput(calculations.get(e), sample)));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @param args the number of loans (default 1 000 000)
+   */
+  public static void main(String[] args) {
+    int loans = args.length > 0 && args[0].matches("\\d+") ? Integer.parseInt(args[0]) : 1_000_000;
+    List<Result> results = new DifferentialHarness(1, 1000).run(loans);
+    System.out.println(loans + " loans");
+    System.out.println(Result.HEADER);
+    results.forEach(System.out::println);
+  }
+
+  private double throughput(Function<Loan, double[]> engine, Loan[] sample) {
+    double sink = 0;
+    long operations = 0;
+    long nanos = 0;
+    for (int round = 0; round < 2; round++) {
+      operations = 0;
+      long start = System.nanoTime();
+      do {
+        sink += engine.apply(sample[(int) (operations++ % sample.length)])[0];
+        nanos = System.nanoTime() - start;
+      } while (nanos < timingNanos);
+    }
+    this.sink = sink;
+    return operations * 1e9 / nanos;
+  }
+
+  static double[] reference(Operation operation, Loan loan) {
+    switch (operation) {
+      case PMT: {
+        BigDecimal r = BigDecimal.valueOf(loan.monthlyRate);
+        BigDecimal compounding = BigDecimal.ONE.add(r).pow(loan.tenureMonths, MC);
+        BigDecimal pmt = BigDecimal.valueOf(loan.loanAmount).multiply(r).multiply(compounding)
+            .divide(compounding.subtract(BigDecimal.ONE), MC).negate();
+        return new double[]{pmt.doubleValue()};
+      }
+      case NPV: {
+        BigDecimal r = new BigDecimal(loan.discountRate);
+        BigDecimal v = BigDecimal.ONE.divide(BigDecimal.ONE.add(r), MC);
+        return new double[]{horner(loan.cashFlow(), v).multiply(v, MC).doubleValue()};
+      }
+      case IRR:
+        return new double[]{referenceIrr(loan.cashFlow())};
+      default:
+        return referencePlan(loan);
+    }
+  }
+
+  /*
+   * The same recurrence as paymentPlan(...) (PaymentIterator) but in 50 digits, paymentPlan itself is exact
+   * which makes the scale of the balance grow by 9 digits every month
+   */
+  private static double[] referencePlan(Loan loan) {
+    BigDecimal twelve = BigDecimal.valueOf(12);
+    BigDecimal balance = BigDecimal.valueOf(loan.loanAmount);
+    BigDecimal monthlyInterest = loan.interest.divide(twelve, 9, RoundingMode.HALF_UP);
+    BigDecimal amFreeCost = balance.multiply(loan.interest).divide(twelve, 9, RoundingMode.HALF_UP);
+    BigDecimal annuity = BigDecimal.valueOf(monthlyAnnuityAmount(loan.loanAmount, loan.interest.doubleValue(),
+        loan.tenureMonths, loan.amFreeMonths));
+    BigDecimal fee = BigDecimal.valueOf(loan.invoiceFee);
+    double[] values = new double[(loan.tenureMonths + 1) * 5];
+    values[3] = loan.loanAmount;
+    values[4] = -loan.loanAmount;
+    for (int month = 1; month <= loan.tenureMonths; month++) {
+      BigDecimal costOfCredit = month <= loan.amFreeMonths ? amFreeCost : annuity;
+      BigDecimal interestAmt = balance.multiply(monthlyInterest, MC);
+      BigDecimal amortization = costOfCredit.subtract(interestAmt, MC);
+      balance = balance.subtract(amortization, MC);
+      values[month * 5] = costOfCredit.doubleValue();
+      values[month * 5 + 1] = interestAmt.doubleValue();
+      values[month * 5 + 2] = amortization.doubleValue();
+      values[month * 5 + 3] = balance.doubleValue();
+      values[month * 5 + 4] = costOfCredit.add(fee).doubleValue();
+    }
+    return values;
+  }
+
+  /* Newton's method in 50 digits starting from the double irr, each step doubles the number of correct digits */
+  private static double referenceIrr(double[] cashFlow) {
+    BigDecimal rate = new BigDecimal(irr(cashFlow));
+    for (int i = 0; i < 3; i++) {
+      BigDecimal v = BigDecimal.ONE.divide(BigDecimal.ONE.add(rate), MC);
+      BigDecimal p = new BigDecimal(cashFlow[cashFlow.length - 1]);
+      BigDecimal dp = BigDecimal.ZERO;
+      for (int t = cashFlow.length - 2; t >= 0; t--) {
+        dp = dp.multiply(v, MC).add(p, MC);
+        p = p.multiply(v, MC).add(new BigDecimal(cashFlow[t]), MC);
+      }
+      BigDecimal derivative = dp.multiply(v, MC).multiply(v, MC).negate();
+      if (derivative.signum() == 0) {
+        break;
+      }
+      rate = rate.subtract(p.divide(derivative, MC), MC);
+    }
+    return rate.doubleValue();
+  }
+
+  private static BigDecimal horner(double[] cashFlow, BigDecimal v) {
+    BigDecimal p = new BigDecimal(cashFlow[cashFlow.length - 1]);
+    for (int t = cashFlow.length - 2; t >= 0; t--) {
+      p = p.multiply(v, MC).add(new BigDecimal(cashFlow[t]), MC);
+    }
+    return p;
+  }
+
+  /* rounded to 20 digits first, converting the exact values with thousands of digits is slower than the plan */
+  static double[] values(PaymentPlan plan) {
+    double[] values = new double[plan.size() * 5];
+    for (int row = 0; row < plan.size(); row++) {
+      Payment p = plan.get(row);
+      values[row * 5] = p.getCostOfCredit().round(DIGITS_20).doubleValue();
+      values[row * 5 + 1] = p.getInterestAmt().round(DIGITS_20).doubleValue();
+      values[row * 5 + 2] = p.getAmortization().round(DIGITS_20).doubleValue();
+      values[row * 5 + 3] = p.getOutgoingBalance().round(DIGITS_20).doubleValue();
+      values[row * 5 + 4] = p.getCacheFlow().round(DIGITS_20).doubleValue();
+    }
+    return values;
+  }
+
+  static double[] values(ColumnarPaymentPlan plan) {
+    double[] values = new double[plan.size() * 5];
+    for (int row = 0; row < plan.size(); row++) {
+      values[row * 5] = plan.getCostOfCredit(row);
+      values[row * 5 + 1] = plan.getInterestAmt(row);
+      values[row * 5 + 2] = plan.getAmortization(row);
+      values[row * 5 + 3] = plan.getOutgoingBalance(row);
+      values[row * 5 + 4] = plan.getCashFlow(row);
+    }
+    return values;
+  }
+
+  private static double maxError(double[] values, double[] reference) {
+    if (values.length != reference.length) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double max = 0;
+    for (int i = 0; i < values.length; i++) {
+      double error = Math.abs(values[i] - reference[i]);
+      if (Double.isNaN(error)) {
+        return Double.POSITIVE_INFINITY;
+      }
+      max = Math.max(max, error);
+    }
+    return max;
+  }
+
+  /**
+   * The parameters of a random loan, the loan with a given seed and index is always the same
+   */
+  public static final class Loan {
+    public final int loanAmount;
+    public final BigDecimal interest;
+    public final double monthlyRate;
+    public final int tenureMonths;
+    public final int amFreeMonths;
+    public final int invoiceFee;
+    public final double discountRate;
+    private double[] cashFlow;
+
+    private Loan(SplittableRandom random) {
+      loanAmount = 1_000 + random.nextInt(1_000_000);
+      interest = BigDecimal.valueOf(100 + random.nextInt(25_000), 5);
+      monthlyRate = interest.divide(BigDecimal.valueOf(12), 9, RoundingMode.HALF_UP).doubleValue();
+      tenureMonths = 12 + random.nextInt(469);
+      amFreeMonths = random.nextInt(12);
+      invoiceFee = random.nextInt(50);
+      discountRate = random.nextDouble() * 0.03;
+    }
+
+    static Loan random(long seed, int index) {
+      return new Loan(new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index));
+    }
+
+    /**
+     * @return the cash flow of the loan calculated with doubles (Financials.cashFlow)
+     */
+    public double[] cashFlow() {
+      if (cashFlow == null) {
+        cashFlow = Financials.cashFlow(loanAmount, interest, tenureMonths, amFreeMonths, invoiceFee);
+      }
+      return cashFlow;
+    }
+  }
+
+  /**
+   * The errors and throughput of one engine
+   */
+  public static final class Result {
+    static final String HEADER = String.format("%-14s %-32s %12s %12s %12s %12s %14s",
+        "operation", "engine", "max error", "p50", "p99", "p99.9", "ops/s");
+
+    public final Operation operation;
+    public final String engine;
+    private final double[] errors;
+    public final double throughput;
+
+    Result(Operation operation, String engine, double[] errors, double throughput) {
+      this.operation = operation;
+      this.engine = engine;
+      this.errors = errors;
+      Arrays.sort(errors);
+      this.throughput = throughput;
+    }
+
+    public double maxError() {
+      return errors.length == 0 ? 0 : errors[errors.length - 1];
+    }
+
+    /**
+     * @param percent e.g. 99
+     * @return the error that percent of the loans are within
+     */
+    public double percentile(double percent) {
+      if (errors.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(errors.length * percent / 100);
+      return errors[Math.max(0, rank - 1)];
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-14s %-32s %12.3e %12.3e %12.3e %12.3e %14.0f", operation, engine, maxError(),
+          percentile(50), percentile(99), percentile(99.9), throughput);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class DifferentialHarnessTest {
+
+  @Test
+  public void testEnginesAgreeWithReference() {
+    List<DifferentialHarness.Result> results = new DifferentialHarness(1, 5).run(200);
+    assertEquals(10, results.size());
+    for (DifferentialHarness.Result result : results) {
+      String msg = result.toString();
+      assertTrue(result.throughput > 0, msg);
+      assertTrue(result.percentile(50) <= result.percentile(99), msg);
+      assertTrue(result.percentile(99) <= result.maxError(), msg);
+      switch (result.operation) {
+        // amounts of up to a million
+        case PMT:
+        case NPV:
+          assertTrue(result.maxError() < 1e-6, msg);
+          break;
+        case IRR:
+          assertTrue(result.maxError() < 1e-12, msg);
+          break;
+        default:
+          if (result.engine.startsWith("adaptive") || result.engine.startsWith("fixed point")) {
+            // to the cent
+            assertTrue(result.maxError() <= 0.005 + 1e-9, msg);
+          } else {
+            assertTrue(result.maxError() < 1e-5, msg);
+          }
+      }
+    }
+  }
+
+  @Test
+  public void testAddEngine() {
+    DifferentialHarness harness = new DifferentialHarness(2, 1);
+    harness.addEngine(DifferentialHarness.Operation.PMT, "off by one", l -> new double[]{
+        se.alipsa.jfinancials.Financials.pmt(l.monthlyRate, l.tenureMonths, l.loanAmount) + 1});
+    DifferentialHarness.Result result = harness.run(50).stream()
+        .filter(r -> r.engine.equals("off by one")).findFirst().orElseThrow();
+    assertEquals(1, result.maxError(), 1e-6);
+    assertEquals(1, result.percentile(50), 1e-6);
+  }
+}
@@ -0,0 +1,90 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.DiscountCurve;
+
+import java.math.BigDecimal;
+
+public class DiscountCurveTest {
+
+  @Test
+  public void testFlatCurve() {
+    double[] cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), 180, 12, 30);
+    DiscountCurve curve = DiscountCurve.flat(0.004, 480);
+    assertEquals(480, curve.getPeriods());
+    assertEquals(1, curve.discountFactor(0));
+    double expected = npv(cashFlow, 0.004);
+    assertEquals(expected, npv(cashFlow, curve), Math.abs(expected) * 1e-12);
+    assertEquals(npv(new double[]{36200, 54800}, 0.004), curve.npv(new double[]{-123400, 36200, 54800, 48100}, 1, 2), 1e-9);
+    assertEquals(0.004, curve.zeroRate(240), 1e-12);
+  }
+
+  @Test
+  public void testSingleRateCurvesAreFlat() {
+    DiscountCurve flat = DiscountCurve.flat(0.003, 120);
+    DiscountCurve piecewise = DiscountCurve.piecewise(new int[]{12, 24}, new double[]{0.003, 0.003}, 120);
+    DiscountCurve interpolated = DiscountCurve.interpolated(new int[]{6, 60}, new double[]{0.003, 0.003}, 120);
+    for (int t = 0; t <= 120; t++) {
+      assertEquals(flat.discountFactor(t), piecewise.discountFactor(t), 1e-13, "period " + t);
+      assertEquals(flat.discountFactor(t), interpolated.discountFactor(t), 1e-13, "period " + t);
+    }
+  }
+
+  @Test
+  public void testPiecewiseForwardRates() {
+    DiscountCurve curve = DiscountCurve.piecewise(new int[]{12, 24}, new double[]{0.002, 0.004}, 36);
+    assertEquals(Math.pow(1.002, -12), curve.discountFactor(12), 1e-15);
+    assertEquals(Math.pow(1.002, -12) * Math.pow(1.004, -12), curve.discountFactor(24), 1e-15);
+    // the last rate continues after the last pillar
+    assertEquals(curve.discountFactor(24) / Math.pow(1.004, 12), curve.discountFactor(36), 1e-15);
+  }
+
+  @Test
+  public void testInterpolatedZeroRates() {
+    int[] pillars = {1, 12, 120};
+    double[] zeroRates = {0.002, 0.003, 0.005};
+    DiscountCurve curve = DiscountCurve.interpolated(pillars, zeroRates, 360);
+    for (int i = 0; i < pillars.length; i++) {
+      assertEquals(zeroRates[i], curve.zeroRate(pillars[i]), 1e-12);
+    }
+    assertEquals(0.004, curve.zeroRate(66), 1e-12);
+    assertEquals(0.005, curve.zeroRate(360), 1e-12);
+    double[] discountFactors = curve.getDiscountFactors();
+    discountFactors[12] = 0;
+    assertNotEquals(0, curve.discountFactor(12), "the curve can not be modified");
+  }
+
+  @Test
+  public void testNpvForLoans() {
+    DiscountCurve curve = DiscountCurve.interpolated(new int[]{1, 24, 60}, new double[]{0.002, 0.0035, 0.004}, 120);
+    int loans = 11;
+    int periods = 61;
+    double[] flows = new double[periods * loans];
+    double[][] byLoan = new double[loans][];
+    for (int j = 0; j < loans; j++) {
+      byLoan[j] = cashFlow(10_000 + j * 1000, BigDecimal.valueOf(0.04 + j * 0.001), periods - 1, j % 3, 25);
+      for (int t = 0; t < periods; t++) {
+        flows[t * loans + j] = byLoan[j][t];
+      }
+    }
+    double[] result = new double[loans];
+    curve.npv(flows, loans, result);
+    for (int j = 0; j < loans; j++) {
+      assertEquals(curve.npv(byLoan[j]), result[j], 1E-6, "loan " + j);
+    }
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    DiscountCurve curve = DiscountCurve.flat(0.004, 12);
+    assertThrows(IllegalArgumentException.class, () -> curve.npv(new double[13]));
+    assertThrows(IllegalArgumentException.class, () -> curve.npv(new double[26], 2, new double[2]));
+    assertThrows(IllegalArgumentException.class,
+        () -> DiscountCurve.piecewise(new int[]{12, 6}, new double[]{0.001, 0.002}, 24));
+    assertThrows(IllegalArgumentException.class,
+        () -> DiscountCurve.interpolated(new int[]{12}, new double[]{0.001, 0.002}, 24));
+  }
+}
@@ -0,0 +1,68 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.FactorCache;
+
+import java.math.BigDecimal;
+import java.util.stream.IntStream;
+
+public class FactorCacheTest {
+
+  @AfterEach
+  void disableCache() {
+    setFactorCache(null);
+  }
+
+  @Test
+  public void testSameResultsWithCache() {
+    double[] cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), 180, 12, 30);
+    double expectedPmt = pmt(0.055 / 12, 168, -263_429);
+    double expectedNpv = npv(cashFlow, 0.0045);
+    double expectedApr = effectiveInterestRate(263_429, BigDecimal.valueOf(0.055), 180, 12, 30);
+
+    FactorCache cache = new FactorCache(64);
+    setFactorCache(cache);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(expectedPmt, pmt(0.055 / 12, 168, -263_429));
+      assertEquals(expectedNpv, npv(cashFlow, 0.0045), 1E-8);
+      assertEquals(expectedApr, effectiveInterestRate(263_429, BigDecimal.valueOf(0.055), 180, 12, 30), 1E-12);
+    }
+    // pmt + effectiveInterestRate share one entry, npv uses another
+    assertEquals(2, cache.getMisses());
+    assertEquals(7, cache.getHits());
+    assertEquals(2004.4310660109, pmt(3.5/100, 60, -50000), 1e-8);
+    assertEquals(2004.4310660109, cache.annuityFactor(3.5/100, 60) * 50000, 1e-8);
+  }
+
+  @Test
+  public void testBoundedWithEviction() {
+    FactorCache cache = new FactorCache(10);
+    assertEquals(16, cache.getCapacity());
+    for (int nper = 1; nper <= 100; nper++) {
+      cache.compounding(0.01, nper);
+    }
+    assertEquals(100, cache.getMisses());
+    assertTrue(cache.getEvictions() >= 100 - 16, "evictions " + cache.getEvictions());
+    cache.compounding(0.01, 100);
+    assertEquals(1, cache.getHits());
+    assertEquals(0, new FactorCache(1).getHitRatio());
+  }
+
+  @Test
+  public void testConcurrentAccess() {
+    FactorCache cache = new FactorCache(8);
+    setFactorCache(cache);
+    IntStream.range(0, 10_000).parallel().forEach(i -> {
+      int nper = 12 + i % 20;
+      assertEquals(Math.pow(1.004, nper), cache.compounding(0.004, nper));
+      double[] df = cache.discountFactors(0.004, nper);
+      assertEquals(nper, df.length);
+      assertEquals(1 / Math.pow(1.004, nper), df[nper - 1], 1E-15);
+    });
+    assertEquals(20_000, cache.getHits() + cache.getMisses());
+  }
+}
@@ -0,0 +1,84 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.FixedPointAmortization;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentPlan;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class FixedPointAmortizationTest {
+
+  @Test
+  public void testMatchesBigDecimalPlanToTheCent() {
+    FixedPointAmortization engine = new FixedPointAmortization();
+    verifySamePlan(engine, 50_429, BigDecimal.valueOf(0.0677), 6 * 12, 0, BigDecimal.valueOf(30));
+    verifySamePlan(engine, 100_429, BigDecimal.valueOf(0.0535), 2 * 12, 1, BigDecimal.ZERO);
+    verifySamePlan(engine, 463_429, BigDecimal.valueOf(0.189), 40 * 12, 12, BigDecimal.valueOf(30));
+
+    double[] cashFlow = engine.cashFlow(263_429, BigDecimal.valueOf(0.055), 15 * 12, 12, BigDecimal.valueOf(30));
+    assertEquals(0.0585669, apr(irr(cashFlow)), 1E-7);
+    assertEquals(0.0585669, engine.effectiveInterestRate(263_429, BigDecimal.valueOf(0.055), 15 * 12, 12,
+        BigDecimal.valueOf(30)), 1E-7);
+  }
+
+  @Test
+  public void testCents() {
+    FixedPointAmortization engine = new FixedPointAmortization(2, RoundingMode.HALF_UP, RoundingMode.HALF_EVEN);
+    PaymentPlan plan = engine.paymentPlan(50_429, BigDecimal.valueOf(0.0677), 6 * 12, 0, BigDecimal.valueOf(30));
+    Payment p1 = plan.get(1);
+    assertEquals(new BigDecimal("854.21"), p1.getCostOfCredit());
+    assertEquals(new BigDecimal("284.50"), p1.getInterestAmt());
+    assertEquals(new BigDecimal("569.71"), p1.getAmortization());
+    assertEquals(new BigDecimal("49859.29"), p1.getOutgoingBalance());
+    assertEquals(new BigDecimal("884.21"), p1.getCacheFlow());
+
+    // every row adds up exactly
+    BigDecimal totalAmortization = BigDecimal.ZERO;
+    for (int i = 1; i < plan.size(); i++) {
+      Payment p = plan.get(i);
+      assertEquals(2, p.getInterestAmt().scale());
+      assertEquals(p.getCostOfCredit(), p.getInterestAmt().add(p.getAmortization()));
+      assertEquals(plan.get(i - 1).getOutgoingBalance().subtract(p.getAmortization()), p.getOutgoingBalance());
+      totalAmortization = totalAmortization.add(p.getAmortization());
+    }
+    // the rounded annuity leaves a small residual balance
+    BigDecimal residual = plan.get(72).getOutgoingBalance();
+    assertEquals(new BigDecimal("50429.00"), totalAmortization.add(residual));
+    assertTrue(residual.abs().compareTo(BigDecimal.ONE) < 0, "residual balance " + residual);
+  }
+
+  @Test
+  public void testRoundingModes() {
+    BigDecimal interest = BigDecimal.valueOf(0.0677);
+    BigDecimal floorInterest = totalInterest(new FixedPointAmortization(2, RoundingMode.HALF_UP, RoundingMode.FLOOR)
+        .paymentPlan(50_429, interest, 72, 0, BigDecimal.ZERO));
+    BigDecimal ceilingInterest = totalInterest(new FixedPointAmortization(2, RoundingMode.HALF_UP, RoundingMode.CEILING)
+        .paymentPlan(50_429, interest, 72, 0, BigDecimal.ZERO));
+    assertTrue(floorInterest.compareTo(ceilingInterest) < 0, floorInterest + " should be less than " + ceilingInterest);
+  }
+
+  private static BigDecimal totalInterest(PaymentPlan plan) {
+    return plan.stream().map(Payment::getInterestAmt).reduce(BigDecimal.ZERO, BigDecimal::add);
+  }
+
+  private static void verifySamePlan(FixedPointAmortization engine, int loanAmt, BigDecimal interest, int tenure,
+                                     int amFreeMonths, BigDecimal invoiceFee) {
+    PaymentPlan expected = paymentPlan(loanAmt, interest, tenure, amFreeMonths, invoiceFee);
+    PaymentPlan actual = engine.paymentPlan(loanAmt, interest, tenure, amFreeMonths, invoiceFee);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      for (int col = 0; col < Payment.columnNames.size(); col++) {
+        assertEquals(expected.get(i).get(col).doubleValue(), actual.get(i).get(col).doubleValue(), 0.005,
+            Payment.columnNames.get(col) + " of month " + i);
+      }
+    }
+    var columnar = engine.columnarPaymentPlan(loanAmt, interest, tenure, amFreeMonths, invoiceFee);
+    assertEquals(actual.get(tenure).getOutgoingBalance().doubleValue(), columnar.getOutgoingBalance(tenure), 1E-9);
+  }
+}
@@ -1,9 +1,12 @@
 package financials;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static se.alipsa.jfinancials.Financials.*;
 
 import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.IrrResult;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -57,5 +60,85 @@ public class IrrTest {
   void testNpv() {
     assertEquals(5908.8656360761, npv(new double[] {-123400, 36200, 54800, 48100}, 0.035), 0.0000000001);
     assertEquals(5908.8656360761, npv(List.of(-123400, 36200, 54800, 48100), 0.035), 0.0000000001);
+
+    double[] cashFlow = cashFlow(263429, BigDecimal.valueOf(0.055), 360, 12, 30);
+    double expected = 0;
+    for (int t = 1; t <= cashFlow.length; t++) {
+      expected += cashFlow[t - 1] / Math.pow(1.0045, t);
+    }
+    assertEquals(expected, npv(cashFlow, 0.0045), 1E-8);
+    assertEquals(expected, npv(paymentPlan(263429, BigDecimal.valueOf(0.055), 360, 12, BigDecimal.valueOf(30))
+        .getColumn("cashFlow"), 0.0045), 1E-8);
+  }
+
+  @Test
+  void testSolverMatchesBisection() {
+    int[] tenures = {12, 24, 60, 180, 360, 480};
+    for (int tenure : tenures) {
+      double[] cashFlow = cashFlow(263429, BigDecimal.valueOf(0.055), tenure, 6, 30);
+      IrrResult result = irrResult(cashFlow);
+      assertTrue(result.isConverged(), "Solver did not converge for tenure " + tenure);
+      assertEquals(bisectionIrr(cashFlow), result.getRate(), 1E-10, "tenure " + tenure);
+      assertTrue(result.getEvaluations() < 12, "Too many npv evaluations: " + result);
+    }
+  }
+
+  @Test
+  void testNonConventionalCashFlows() {
+    // negative yield
+    IrrResult result = irrResult(new double[]{-100, 10, 10});
+    assertTrue(result.isConverged(), result.toString());
+    assertEquals(-0.629843788, result.getRate(), 1E-8);
+    // above 100% per period
+    result = irrResult(new double[]{-100, 0, 900});
+    assertTrue(result.isConverged(), result.toString());
+    assertEquals(2, result.getRate(), 1E-10);
+    // several sign changes but only one root
+    result = irrResult(new double[]{-100, 60, -10, 70});
+    assertTrue(result.isConverged(), result.toString());
+    assertEquals(0, npv(new double[]{-100, 60, -10, 70}, result.getRate()), 1E-7);
+
+    result = irrResult(new double[]{100, 10, 10});
+    assertEquals(IrrResult.Status.NO_ROOT, result.getStatus());
+    assertTrue(Double.isNaN(result.getRate()));
+    assertEquals(0, result.getEvaluations());
+    assertEquals(IrrResult.Status.NO_ROOT, irrResult(new double[3]).getStatus());
+    // two sign changes and no root, the npv is always negative
+    result = irrResult(new double[]{-100, 10, -100});
+    assertEquals(IrrResult.Status.NO_ROOT, result.getStatus());
+    assertTrue(result.getEvaluations() < 100, result.toString());
+
+    // 10% and 20%, both between the same two points of the scan
+    result = irrResult(new double[]{-100, 230, -132});
+    assertEquals(IrrResult.Status.MULTIPLE_ROOTS, result.getStatus());
+    assertFalse(result.isConverged());
+    assertTrue(Double.isNaN(result.getRate()));
+    assertTrue(result.getEvaluations() < 100, result.toString());
+    // the classic oil well pump problem, roots at 25% and 400%
+    assertEquals(IrrResult.Status.MULTIPLE_ROOTS, irrResult(new double[]{-1600, 10000, -10000}).getStatus());
+  }
+
+  /**
+   * The original brute force algorithm used as reference
+   */
+  private static double bisectionIrr(double[] cashFlow) {
+    double minValue = 0d;
+    double maxValue = 1d;
+    double testValue = 0d;
+    for (int iterations = 0; iterations < 1000; iterations++) {
+      testValue = (minValue + maxValue) / 2;
+      double npv = 0;
+      for (int i = 1; i < cashFlow.length; i++) {
+        npv += cashFlow[i] / Math.pow(1 + testValue, i);
+      }
+      if (Math.abs(cashFlow[0] + npv) < 1E-7) {
+        break;
+      } else if (Math.abs(cashFlow[0]) > npv) {
+        maxValue = testValue;
+      } else {
+        minValue = testValue;
+      }
+    }
+    return testValue;
   }
 }
@@ -0,0 +1,114 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.jfinancials.SimpleMetrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class MetricsTest {
+
+  @TempDir
+  Path dir;
+
+  @AfterEach
+  void disableMetrics() {
+    setMetricsListener(null);
+  }
+
+  @Test
+  public void testSimpleMetrics() {
+    SimpleMetrics metrics = new SimpleMetrics();
+    setMetricsListener(metrics);
+    assertSame(metrics, getMetricsListener());
+    for (int i = 0; i < 10; i++) {
+      effectiveInterestRate(263_429, BigDecimal.valueOf(0.055), 360, 0, 30);
+    }
+    // no root at all
+    irr(new double[]{100, 10, 10});
+    paymentPlan(50_429, BigDecimal.valueOf(0.0677), 72, 0, BigDecimal.valueOf(30));
+    double[] result = new double[100];
+    int[] amounts = new int[100];
+    double[] interests = new double[100];
+    int[] tenures = new int[100];
+    Arrays.fill(amounts, 10_000);
+    Arrays.fill(interests, 0.05);
+    Arrays.fill(tenures, 24);
+    effectiveInterestRates(amounts, interests, tenures, new int[100], new int[100], result, ForkJoinPool.commonPool());
+
+    assertEquals(111, metrics.getIrrNanos().getCount());
+    assertEquals(1, metrics.getIrrNotConverged());
+    assertTrue(metrics.getIrrEvaluations().getMean() > 2);
+    assertEquals(1, metrics.getPaymentPlanNanos().getCount());
+    assertEquals(1, metrics.getBatchNanos().getCount());
+    assertEquals(100, metrics.getBatchResults());
+    assertTrue(metrics.getIrrNanos().percentile(99) >= metrics.getIrrNanos().percentile(50));
+
+    setMetricsListener(null);
+    irr(new double[]{-100, 60, 60});
+    assertEquals(111, metrics.getIrrNanos().getCount());
+  }
+
+  @Test
+  public void testXirrIsReportedOnce() {
+    SimpleMetrics metrics = new SimpleMetrics();
+    setMetricsListener(metrics);
+    try {
+      // a negative yield is outside the first bracket, with the dates in order and not
+      assertEquals(-0.1, xirr(new double[]{-1000, 900}, new long[]{0, 365}), 1e-12);
+      assertEquals(-0.1, xirr(new double[]{900, -1000}, new long[]{365, 0}), 1e-9);
+    } finally {
+      setMetricsListener(null);
+    }
+    assertEquals(2, metrics.getIrrNanos().getCount());
+    assertEquals(0, metrics.getIrrNotConverged());
+  }
+
+  @Test
+  public void testHistogram() {
+    SimpleMetrics.Histogram histogram = new SimpleMetrics.Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(5050, histogram.getSum());
+    assertEquals(63, histogram.percentile(50));
+    assertEquals(127, histogram.percentile(99));
+  }
+
+  @Test
+  public void testFlightRecorderEvents() throws IOException {
+    Path file = dir.resolve("jfinancials.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("se.alipsa.jfinancials.Irr").withoutThreshold();
+      recording.enable("se.alipsa.jfinancials.PaymentPlan").withoutThreshold();
+      recording.start();
+      irr(cashFlow(263_429, BigDecimal.valueOf(0.055), 360, 0, 30));
+      columnarPaymentPlan(50_429, BigDecimal.valueOf(0.0677), 72, 0, BigDecimal.valueOf(30));
+      recording.stop();
+      recording.dump(file);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    RecordedEvent irr = events.stream().filter(e -> e.getEventType().getName().equals("se.alipsa.jfinancials.Irr"))
+        .findFirst().orElseThrow();
+    assertEquals(361, irr.getInt("length"));
+    assertEquals("CONVERGED", irr.getString("status"));
+    assertTrue(irr.getInt("evaluations") > 2);
+    RecordedEvent plan = events.stream().filter(e -> e.getEventType().getName().equals("se.alipsa.jfinancials.PaymentPlan"))
+        .findFirst().orElseThrow();
+    assertEquals("columnar", plan.getString("engine"));
+    assertEquals(72, plan.getInt("months"));
+  }
+}
@@ -0,0 +1,93 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.MonteCarloSimulation;
+import se.alipsa.jfinancials.SimulationResult;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ForkJoinPool;
+
+public class MonteCarloTest {
+
+  @Test
+  public void testWithoutEventsEqualsSchedule() {
+    MonteCarloSimulation simulation = new MonteCarloSimulation(new int[]{263_429}, new double[]{0.055},
+        new int[]{360}, new int[]{12}, new int[]{30});
+    simulation.setDiscountRate(0.004);
+    SimulationResult result = simulation.run(10, 1);
+    double[] cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), 360, 12, 30);
+    assertEquals(irr(cashFlow), result.irrPercentile(0), 1e-12);
+    assertEquals(irr(cashFlow), result.irrPercentile(100), 1e-12);
+    assertEquals(npv(cashFlow, 0.004) * 1.004, result.getMeanNpv(), 1e-6);
+  }
+
+  @Test
+  public void testReproducibleRegardlessOfThreads() {
+    int loans = 20;
+    int[] amounts = new int[loans];
+    double[] interests = new double[loans];
+    int[] tenures = new int[loans];
+    for (int i = 0; i < loans; i++) {
+      amounts[i] = 10_000 + i * 5000;
+      interests[i] = 0.04 + i * 0.002;
+      tenures[i] = 24 + i * 12;
+    }
+    MonteCarloSimulation simulation = new MonteCarloSimulation(amounts, interests, tenures, new int[loans], new int[loans]);
+    simulation.setPrepaymentRate(0.1);
+    simulation.setDefaultRate(0.02);
+    simulation.setRecoveryRate(0.4);
+    simulation.setDiscountRate(0.005);
+    ForkJoinPool single = new ForkJoinPool(1);
+    ForkJoinPool four = new ForkJoinPool(4);
+    try {
+      SimulationResult a = simulation.run(1000, 42, single);
+      SimulationResult b = simulation.run(1000, 42, four);
+      assertArrayEquals(a.getIrr(), b.getIrr());
+      assertArrayEquals(a.getNpv(), b.getNpv());
+      SimulationResult c = simulation.run(1000, 43, four);
+      assertNotEquals(a.getMeanIrr(), c.getMeanIrr());
+
+      assertTrue(a.irrPercentile(5) < a.irrPercentile(50));
+      assertTrue(a.irrPercentile(50) < a.irrPercentile(95));
+      assertTrue(a.npvPercentile(5) < a.npvPercentile(95));
+
+      simulation.setDefaultRate(0);
+      SimulationResult noDefaults = simulation.run(1000, 42, four);
+      assertTrue(noDefaults.getMeanIrr() > a.getMeanIrr());
+    } finally {
+      single.shutdown();
+      four.shutdown();
+    }
+    assertThrows(IllegalArgumentException.class, () -> simulation.setDefaultRate(1.5));
+  }
+
+  @Test
+  public void testTotalLoss() {
+    MonteCarloSimulation simulation = new MonteCarloSimulation(new int[]{10_000}, new double[]{0.05},
+        new int[]{24}, new int[]{0}, new int[]{0});
+    // about a third of the scenarios default in the first month and, with no recovery, lose everything
+    simulation.setDefaultRate(0.99);
+    SimulationResult result = simulation.run(1000, 7);
+    double[] irr = result.getIrr();
+    double[] npv = result.getNpv();
+    int totalLosses = 0;
+    for (int i = 0; i < irr.length; i++) {
+      assertFalse(Double.isNaN(irr[i]), "scenario " + i);
+      if (npv[i] == -10_000) {
+        assertEquals(-1, irr[i], "scenario " + i);
+        totalLosses++;
+      } else {
+        assertTrue(irr[i] > -1, "scenario " + i);
+      }
+    }
+    assertTrue(totalLosses > 200 && totalLosses < 500, "total losses " + totalLosses);
+    assertEquals(0, result.getScenariosWithoutIrr());
+    assertEquals(-1, result.irrPercentile(5));
+    assertTrue(result.irrPercentile(95) > -1);
+    double mean = result.getMeanIrr();
+    assertTrue(mean > -1 && mean < 0, "mean " + mean);
+  }
+}
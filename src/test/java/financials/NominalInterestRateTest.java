@@ -0,0 +1,55 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ForkJoinPool;
+
+public class NominalInterestRateTest {
+
+  @Test
+  public void testInverseOfEffectiveInterestRate() {
+    double nominal = nominalInterestRate(0.0585669, 263_429, 15 * 12, 12, 30);
+    assertEquals(0.055, nominal, 1E-6);
+
+    int[][] loans = {{50_429, 60, 12, 30}, {20_429, 24, 0, 5}, {400_429, 120, 0, 0}, {236_429, 24, 12, 0}};
+    for (int[] loan : loans) {
+      for (double target : new double[] {0.03, 0.0849, 0.25}) {
+        double rate = nominalInterestRate(target, loan[0], loan[1], loan[2], loan[3]);
+        double apr = effectiveInterestRate(loan[0], BigDecimal.valueOf(rate), loan[1], loan[2], loan[3]);
+        assertEquals(target, apr, 1E-9, "target " + target + " for loan " + loan[0]);
+      }
+    }
+  }
+
+  @Test
+  public void testUnreachableTarget() {
+    // a 30 kr fee on a 1000 kr loan over a year is more than 3% on its own
+    assertTrue(Double.isNaN(nominalInterestRate(0.03, 1000, 12, 0, 30)));
+  }
+
+  @Test
+  public void testGrid() {
+    double target = 0.089;
+    int[] amounts = {10_000, 50_000, 150_000, 400_000};
+    int[] fees = {0, 30};
+    int[] tenures = {12, 24, 36, 60, 84, 120, 180, 240, 360};
+    double[] result = new double[amounts.length * fees.length * tenures.length];
+    nominalInterestRates(target, amounts, fees, tenures, 0, result, ForkJoinPool.commonPool());
+    for (int a = 0; a < amounts.length; a++) {
+      for (int f = 0; f < fees.length; f++) {
+        for (int t = 0; t < tenures.length; t++) {
+          double rate = result[(a * fees.length + f) * tenures.length + t];
+          assertEquals(nominalInterestRate(target, amounts[a], tenures[t], 0, fees[f]), rate, 1E-12);
+          assertEquals(target, effectiveInterestRate(amounts[a], BigDecimal.valueOf(rate), tenures[t], 0, fees[f]),
+              1E-9);
+        }
+      }
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> nominalInterestRates(target, amounts, fees, tenures, 0, new double[3], ForkJoinPool.commonPool()));
+  }
+}
@@ -0,0 +1,180 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentPlan;
+import se.alipsa.jfinancials.PaymentPlanWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PaymentPlanWriterTest {
+
+  @Test
+  public void testCsvEqualsToString() throws IOException {
+    PaymentPlan plan = paymentPlan(50_429, BigDecimal.valueOf(0.0677), 72, 6, BigDecimal.valueOf(30));
+    StringWriter sw = new StringWriter();
+    try (PaymentPlanWriter writer = new PaymentPlanWriter(sw)) {
+      writer.write(plan);
+    }
+    assertEquals(plan.toString(), sw.toString());
+
+    ColumnarPaymentPlan columnar = columnarPaymentPlan(263_429, BigDecimal.valueOf(0.055), 360, 0, BigDecimal.valueOf(30));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (PaymentPlanWriter writer = new PaymentPlanWriter(bytes, PaymentPlanWriter.Format.CSV)) {
+      writer.write(columnar);
+      writer.write(columnar);
+    }
+    String expected = columnar.toString();
+    // the header is only written once
+    String rows = expected.substring(expected.indexOf('\n') + 1);
+    assertEquals(expected + rows, bytes.toString(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testCsvRoundsLikeToString() throws IOException {
+    Random random = new Random(12);
+    for (int i = 0; i < 50; i++) {
+      ColumnarPaymentPlan plan = columnarPaymentPlan(1_000 + random.nextInt(1_000_000),
+          BigDecimal.valueOf(random.nextInt(300), 3), 1 + random.nextInt(480), random.nextInt(12),
+          BigDecimal.valueOf(random.nextInt(50)));
+      assertEquals(plan.toString(), csv(plan));
+    }
+    // half cents whose doubles are just below (1.005, 2.675) or above the half, and values too large for a long
+    List<Payment> payments = new ArrayList<>();
+    payments.add(payment(1.005, 2.675, 1234.565, -0.125, 9.995, -1.015));
+    payments.add(payment(1e17 + 1234, 9.3e18, -1.7e300, 123456789012.345, 0.005, Double.MAX_VALUE));
+    for (int i = 0; i < 1000; i++) {
+      double[] values = new double[6];
+      for (int j = 0; j < values.length; j++) {
+        // a random number of whole cents plus a half cent at random magnitudes
+        long cents = (long) (random.nextDouble() * Math.pow(10, 1 + random.nextInt(15)));
+        values[j] = (random.nextBoolean() ? -1 : 1) * (cents * 10 + 5) / 1000.0;
+      }
+      payments.add(payment(values));
+    }
+    ColumnarPaymentPlan plan = ColumnarPaymentPlan.of(payments);
+    assertEquals(plan.toString(), csv(plan));
+    assertTrue(csv(plan).contains("\n1,1.01,2.68,1234.57,-0.13,10.00,-1.02\n"), csv(plan).substring(0, 200));
+  }
+
+  @Test
+  public void testLongBigDecimal() throws IOException {
+    Payment payment = new Payment();
+    payment.setMonth(1);
+    payment.setOutgoingBalance(new BigDecimal("9".repeat(100_000)));
+    PaymentPlan plan = new PaymentPlan();
+    plan.add(payment);
+    StringWriter sw = new StringWriter();
+    try (PaymentPlanWriter writer = new PaymentPlanWriter(sw)) {
+      writer.write(plan);
+    }
+    assertEquals(plan.toString(), sw.toString());
+  }
+
+  @Test
+  public void testOversizedValues() throws IOException {
+    // values too long for a long in every row so that the buffer is drained in the middle of rows
+    for (double magnitude : new double[]{1e139, 1e153, 1e160, 1e188, 1e307}) {
+      PaymentPlan plan = new PaymentPlan();
+      for (int i = 0; i < 3000; i++) {
+        Payment payment = payment(1.005, -magnitude, 2.675, 1e17 + i, magnitude * (i % 7 + 1), 1234.565);
+        payment.setMonth(i);
+        plan.add(payment);
+      }
+      StringWriter sw = new StringWriter();
+      try (PaymentPlanWriter writer = new PaymentPlanWriter(sw)) {
+        writer.write(plan);
+      }
+      assertEquals(plan.toString(), sw.toString(), "magnitude " + magnitude);
+      ColumnarPaymentPlan columnar = ColumnarPaymentPlan.of(plan);
+      assertEquals(columnar.toString(), csv(columnar), "magnitude " + magnitude);
+    }
+  }
+
+  @Test
+  public void testBigDecimalScales() throws IOException {
+    String[] values = {"1.23456789", "-0.005", "-0.004", "0.0049999999999", "12345678901234.565", "-9.995",
+        "1E+5", "-12E+14", "99999999999999999.995", "123456789012345678.125", "0.00000000000000000000005"};
+    PaymentPlan plan = new PaymentPlan();
+    for (String value : values) {
+      Payment payment = payment(0, 0, 0, 0, 0, 0);
+      payment.setOutgoingBalance(new BigDecimal(value));
+      payment.setCacheFlow(new BigDecimal(value).negate());
+      plan.add(payment);
+    }
+    StringWriter sw = new StringWriter();
+    try (PaymentPlanWriter writer = new PaymentPlanWriter(sw)) {
+      writer.write(plan);
+    }
+    assertEquals(plan.toString(), sw.toString());
+  }
+
+  @Test
+  public void testBinary() throws IOException {
+    ColumnarPaymentPlan columnar = columnarPaymentPlan(263_429, BigDecimal.valueOf(0.055), 480, 12, BigDecimal.valueOf(30));
+    PaymentPlan plan = paymentPlan(50_429, BigDecimal.valueOf(0.0677), 72, 6, BigDecimal.valueOf(30));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (PaymentPlanWriter writer = new PaymentPlanWriter(Channels.newChannel(bytes), PaymentPlanWriter.Format.BINARY)) {
+      for (int i = 0; i < 100; i++) {
+        writer.write(columnar);
+      }
+      writer.write(plan);
+    }
+    assertEquals(100 * (4 + 481 * PaymentPlanWriter.BINARY_ROW_SIZE) + 4 + 73 * PaymentPlanWriter.BINARY_ROW_SIZE, bytes.size());
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(481, in.readInt());
+      for (int row = 0; row < 481; row++) {
+        assertEquals(columnar.getMonth(row), in.readInt());
+        assertEquals(columnar.getCostOfCredit(row), in.readDouble());
+        assertEquals(columnar.getInterestAmt(row), in.readDouble());
+        assertEquals(columnar.getAmortization(row), in.readDouble());
+        assertEquals(columnar.getInvoiceFee(row), in.readDouble());
+        assertEquals(columnar.getOutgoingBalance(row), in.readDouble());
+        assertEquals(columnar.getCashFlow(row), in.readDouble());
+      }
+    }
+    assertEquals(73, in.readInt());
+    in.skipNBytes(72L * PaymentPlanWriter.BINARY_ROW_SIZE);
+    assertEquals(72, in.readInt());
+    in.skipNBytes(4 * Double.BYTES);
+    assertEquals(plan.get(72).getOutgoingBalance().doubleValue(), in.readDouble());
+    assertEquals(plan.get(72).getCacheFlow().doubleValue(), in.readDouble());
+    assertEquals(-1, in.read());
+  }
+
+  private static String csv(ColumnarPaymentPlan plan) throws IOException {
+    StringWriter sw = new StringWriter();
+    try (PaymentPlanWriter writer = new PaymentPlanWriter(sw)) {
+      writer.write(plan);
+    }
+    return sw.toString();
+  }
+
+  private static Payment payment(double... values) {
+    Payment payment = new Payment();
+    payment.setMonth(1);
+    payment.setCostOfCredit(BigDecimal.valueOf(values[0]));
+    payment.setInterestAmt(BigDecimal.valueOf(values[1]));
+    payment.setAmortization(BigDecimal.valueOf(values[2]));
+    payment.setInvoiceFee(BigDecimal.valueOf(values[3]));
+    payment.setOutgoingBalance(BigDecimal.valueOf(values[4]));
+    payment.setCacheFlow(BigDecimal.valueOf(values[5]));
+    return payment;
+  }
+}
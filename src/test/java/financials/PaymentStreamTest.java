@@ -0,0 +1,76 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentCursor;
+import se.alipsa.jfinancials.PaymentPlan;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PaymentStreamTest {
+
+  int loanAmt = 50_429;
+  BigDecimal interest = BigDecimal.valueOf(0.0677);
+  BigDecimal invoiceFee = BigDecimal.valueOf(30);
+
+  @Test
+  public void testStreamSameAsPlan() {
+    PaymentPlan plan = paymentPlan(loanAmt, interest, 72, 3, invoiceFee);
+    List<Payment> streamed = paymentStream(loanAmt, interest, 72, 3, invoiceFee).collect(Collectors.toList());
+    assertEquals(plan.size(), streamed.size());
+    for (int i = 0; i < plan.size(); i++) {
+      assertEquals(plan.get(i).toString(), streamed.get(i).toString());
+    }
+
+    BigDecimal totalInterest = paymentStream(loanAmt, interest, 72, 3, invoiceFee)
+        .map(Payment::getInterestAmt)
+        .reduce(BigDecimal.ZERO, BigDecimal::add);
+    assertEquals(dailyInterestAmount(plan, 72), totalInterest.doubleValue() / (72 * 30.41666), 1E-9);
+  }
+
+  @Test
+  public void testEarlyTermination() {
+    Payment firstBelowHalf = paymentStream(loanAmt, interest, 480, 0, invoiceFee)
+        .filter(p -> p.getOutgoingBalance().doubleValue() < loanAmt / 2.0)
+        .findFirst()
+        .orElseThrow();
+    PaymentPlan plan = paymentPlan(loanAmt, interest, 480, 0, invoiceFee);
+    int month = firstBelowHalf.getMonth();
+    assertTrue(plan.get(month).getOutgoingBalance().doubleValue() < loanAmt / 2.0);
+    assertTrue(plan.get(month - 1).getOutgoingBalance().doubleValue() >= loanAmt / 2.0);
+
+    Iterator<Payment> it = paymentIterator(loanAmt, interest, 2, 0, invoiceFee);
+    assertEquals(0, it.next().getMonth());
+    assertEquals(1, it.next().getMonth());
+    assertEquals(2, it.next().getMonth());
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testCursor() {
+    ColumnarPaymentPlan plan = columnarPaymentPlan(loanAmt, interest, 72, 3, invoiceFee);
+    PaymentCursor cursor = paymentCursor(loanAmt, interest, 72, 3, invoiceFee);
+    int rows = 0;
+    while (cursor.next()) {
+      int month = cursor.getMonth();
+      assertEquals(plan.getOutgoingBalance(month), cursor.getOutgoingBalance());
+      assertEquals(plan.getInterestAmt(month), cursor.getInterestAmt());
+      assertEquals(plan.getCashFlow(month), cursor.getCashFlow());
+      rows++;
+    }
+    assertEquals(73, rows);
+
+    cursor = paymentCursor(loanAmt, interest, 72, 3, invoiceFee);
+    assertTrue(cursor.moveTo(35));
+    assertEquals(plan.getOutgoingBalance(35), cursor.getOutgoingBalance());
+    assertFalse(cursor.moveTo(10));
+    assertFalse(cursor.moveTo(73));
+  }
+}
@@ -0,0 +1,82 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.PortfolioAggregate;
+import se.alipsa.jfinancials.PortfolioAggregator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class PortfolioAggregatorTest {
+
+  @Test
+  public void testSingleLoan() {
+    PortfolioAggregator aggregator = new PortfolioAggregator();
+    for (int i = 0; i < 3; i++) {
+      aggregator.add(263_429, 0.055, 360, 12, 30);
+    }
+    PortfolioAggregate aggregate = aggregator.aggregate();
+    assertEquals(3, aggregate.getLoanCount());
+    double[] cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), 360, 12, 30);
+    assertEquals(irr(cashFlow), aggregate.irr(), 1e-12);
+    assertEquals(3 * npv(cashFlow, 0.004) * 1.004, aggregate.npv(0.004), 1e-6);
+    double principal = 0;
+    for (double p : aggregate.getPrincipal()) {
+      principal += p;
+    }
+    assertEquals(3 * 263_429, principal, 1e-6);
+
+    PortfolioAggregator bullet = new PortfolioAggregator();
+    // interest only for 23 months, then the whole loan is repaid in month 24
+    bullet.add(10_000, 0.05, 24, 23, 0);
+    assertEquals(2, bullet.aggregate().weightedAverageLife(), 1e-12);
+  }
+
+  @Test
+  public void testConcurrentAddAndMerge() throws InterruptedException, IOException {
+    int loans = 20_000;
+    PortfolioAggregator concurrent = new PortfolioAggregator();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      executor.execute(() -> {
+        for (int i = thread; i < loans; i += 8) {
+          concurrent.add(10_000 + i, 0.03 + (i % 50) * 0.001, 12 + i % 349, i % 3, 25);
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+    PortfolioAggregator first = new PortfolioAggregator();
+    PortfolioAggregator second = new PortfolioAggregator();
+    for (int i = 0; i < loans; i++) {
+      (i < loans / 3 ? first : second).add(10_000 + i, 0.03 + (i % 50) * 0.001, 12 + i % 349, i % 3, 25);
+    }
+    // combine the two batches after a round trip through their binary form
+    PortfolioAggregate merged = roundTrip(second.aggregate()).merge(roundTrip(first.aggregate()));
+    PortfolioAggregate expected = concurrent.aggregate();
+    assertEquals(loans, expected.getLoanCount());
+    assertEquals(loans, merged.getLoanCount());
+    assertArrayEquals(expected.getCashFlow(), merged.getCashFlow(), 1e-3);
+    assertEquals(expected.irr(), merged.irr(), 1e-12);
+    assertEquals(expected.weightedAverageLife(), merged.weightedAverageLife(), 1e-9);
+    assertEquals(360, merged.getTenureMonths());
+  }
+
+  private static PortfolioAggregate roundTrip(PortfolioAggregate aggregate) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    aggregate.write(new DataOutputStream(bytes));
+    return PortfolioAggregate.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+}
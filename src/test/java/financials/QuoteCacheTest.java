@@ -0,0 +1,112 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.ColumnarPaymentPlan;
+import se.alipsa.jfinancials.LoanRequest;
+import se.alipsa.jfinancials.PaymentPlan;
+import se.alipsa.jfinancials.Quote;
+import se.alipsa.jfinancials.QuoteCache;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class QuoteCacheTest {
+
+  @Test
+  public void testSameValuesAsFinancials() {
+    QuoteCache cache = new QuoteCache(10_000);
+    BigDecimal interest = BigDecimal.valueOf(0.0677);
+    ColumnarPaymentPlan plan = cache.paymentPlan(50_429, interest, 72, 3, BigDecimal.valueOf(30));
+    PaymentPlan expected = paymentPlan(50_429, interest, 72, 3, BigDecimal.valueOf(30));
+    assertEquals(expected.size(), plan.size());
+    for (int i = 0; i < plan.size(); i++) {
+      assertEquals(expected.get(i).getOutgoingBalance().doubleValue(), plan.getOutgoingBalance(i));
+      assertEquals(expected.get(i).getCacheFlow().doubleValue(), plan.getCashFlow(i));
+    }
+    assertEquals(totalPaymentAmount(50_429, 0.0677, 72, 3, 30), cache.totalPaymentAmount(50_429, interest, 72, 3, 30));
+    assertEquals(effectiveInterestRate(50_429, interest, 72, 3, 30), cache.effectiveInterestRate(50_429, interest, 72, 3, 30));
+    LoanRequest request = new LoanRequest(50_429, interest, 72, 3, 30);
+    assertEquals(Quote.of(request).getApr(), cache.quote(request).getApr());
+    assertEquals(0, cache.getHits());
+    assertEquals(4, cache.getMisses());
+    assertEquals(73 + 3, cache.getWeight());
+  }
+
+  @Test
+  public void testHitsWithNormalizedKeys() {
+    QuoteCache cache = new QuoteCache(10_000);
+    ColumnarPaymentPlan plan = cache.paymentPlan(100_000, new BigDecimal("0.05"), 120, 0, new BigDecimal("30"));
+    assertSame(plan, cache.paymentPlan(100_000, new BigDecimal("0.050"), 120, 0, new BigDecimal("30.00")));
+    assertNotSame(plan, cache.paymentPlan(100_000, new BigDecimal("0.05"), 120, 1, new BigDecimal("30")));
+    double apr = cache.effectiveInterestRate(100_000, new BigDecimal("0.05"), 120, 0, 30);
+    assertEquals(apr, cache.effectiveInterestRate(100_000, new BigDecimal("0.0500"), 120, 0, 30));
+    // a different kind of result for the same loan is a different entry
+    assertNotEquals(apr, cache.totalPaymentAmount(100_000, new BigDecimal("0.05"), 120, 0, 30));
+    assertEquals(2, cache.getHits());
+    assertEquals(4, cache.getMisses());
+    assertEquals(2 / 6d, cache.getHitRatio());
+    assertEquals(4, cache.size());
+  }
+
+  @Test
+  public void testEvictsOldestWhenWeightIsExceeded() {
+    // room for two 24 month plans (25 rows each)
+    QuoteCache cache = new QuoteCache(50);
+    BigDecimal fee = BigDecimal.ZERO;
+    ColumnarPaymentPlan first = cache.paymentPlan(10_000, BigDecimal.valueOf(0.05), 24, 0, fee);
+    cache.paymentPlan(20_000, BigDecimal.valueOf(0.05), 24, 0, fee);
+    assertEquals(0, cache.getEvictions());
+    cache.paymentPlan(30_000, BigDecimal.valueOf(0.05), 24, 0, fee);
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.size());
+    assertEquals(50, cache.getWeight());
+    // the first one was evicted so it is calculated again
+    ColumnarPaymentPlan again = cache.paymentPlan(10_000, BigDecimal.valueOf(0.05), 24, 0, fee);
+    assertNotSame(first, again);
+    assertEquals(first.getOutgoingBalance(24), again.getOutgoingBalance(24));
+    assertEquals(2, cache.getEvictions());
+    // a plan heavier than the cache is returned but not kept, and does not evict the others
+    ColumnarPaymentPlan third = cache.paymentPlan(30_000, BigDecimal.valueOf(0.05), 24, 0, fee);
+    ColumnarPaymentPlan heavy = cache.paymentPlan(10_000, BigDecimal.valueOf(0.05), 60, 0, fee);
+    assertEquals(61, heavy.size());
+    assertEquals(2, cache.getEvictions());
+    assertEquals(2, cache.size());
+    assertEquals(50, cache.getWeight());
+    assertSame(again, cache.paymentPlan(10_000, BigDecimal.valueOf(0.05), 24, 0, fee));
+    assertSame(third, cache.paymentPlan(30_000, BigDecimal.valueOf(0.05), 24, 0, fee));
+    assertNotSame(heavy, cache.paymentPlan(10_000, BigDecimal.valueOf(0.05), 60, 0, fee));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    QuoteCache cache = new QuoteCache(100_000);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Double>> results = new ArrayList<>();
+      for (int i = 0; i < 400; i++) {
+        int amount = 10_000 * (1 + i % 10);
+        results.add(executor.submit(() -> cache.effectiveInterestRate(amount, BigDecimal.valueOf(0.04), 60, 0, 25)
+            + cache.paymentPlan(amount, BigDecimal.valueOf(0.04), 60, 0, BigDecimal.valueOf(25)).getCashFlow(1)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(results.get(i % 10).get(), results.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(20, cache.size());
+    assertEquals(800, cache.getHits() + cache.getMisses());
+    assertTrue(cache.getHits() >= 760, cache.toString());
+  }
+}
@@ -0,0 +1,80 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.LoanRequest;
+import se.alipsa.jfinancials.Quote;
+import se.alipsa.jfinancials.QuoteProcessor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class QuoteProcessorTest {
+
+  @Test
+  public void testQuotesWithBackpressure() throws InterruptedException {
+    List<LoanRequest> requests = IntStream.range(0, 500)
+        .mapToObj(i -> new LoanRequest(10_000 + i * 100, BigDecimal.valueOf(0.04 + (i % 10) * 0.005), 12 + i % 120, i % 3, 25))
+        .collect(Collectors.toList());
+    Map<LoanRequest, Quote> quotes = new ConcurrentHashMap<>();
+    CountDownLatch completed = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (SubmissionPublisher<LoanRequest> source = new SubmissionPublisher<>(executor, 16);
+         QuoteProcessor processor = new QuoteProcessor(executor, 4, 8)) {
+      source.subscribe(processor);
+      processor.subscribe(new Flow.Subscriber<>() {
+        Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          this.subscription = subscription;
+          subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Quote item) {
+          // a slow consumer requesting one quote at a time
+          assertNull(quotes.put(item.getRequest(), item));
+          subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+          completed.countDown();
+        }
+      });
+      requests.forEach(source::submit);
+      source.close();
+      assertTrue(completed.await(30, TimeUnit.SECONDS), "the quotes did not complete");
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(requests.size(), quotes.size());
+    for (LoanRequest r : requests) {
+      Quote q = quotes.get(r);
+      assertEquals(monthlyAnnuityAmount(r.getLoanAmount(), r.getInterest().doubleValue(), r.getTenureMonths(), r.getAmFreeMonths()),
+          q.getMonthlyAnnuity());
+      assertEquals(totalPaymentAmount(r.getLoanAmount(), r.getInterest().doubleValue(), r.getTenureMonths(), r.getAmFreeMonths(), r.getInvoiceFee()),
+          q.getTotalPaymentAmount(), 1e-9);
+      assertEquals(effectiveInterestRate(r.getLoanAmount(), r.getInterest(), r.getTenureMonths(), r.getAmFreeMonths(), r.getInvoiceFee()),
+          q.getApr());
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.PaymentPlan;
+import se.alipsa.jfinancials.PaymentPlanEvent;
+
+import java.math.BigDecimal;
+
+public class ReAmortizationTest {
+
+  private static final BigDecimal interest = BigDecimal.valueOf(0.0677);
+  private static final BigDecimal invoiceFee = BigDecimal.valueOf(30);
+
+  @Test
+  public void testChangesFromTheFirstMonthEqualsNewPlan() {
+    PaymentPlan plan = paymentPlan(50_429, interest, 72, 6, invoiceFee);
+    assertEquals(plan.toString(),
+        reAmortize(plan, PaymentPlanEvent.rateChange(1, interest)).toString());
+    assertEquals(paymentPlan(50_429, BigDecimal.valueOf(0.05), 72, 6, invoiceFee).toString(),
+        reAmortize(plan, PaymentPlanEvent.rateChange(1, BigDecimal.valueOf(0.05))).toString());
+    assertEquals(paymentPlan(50_429, interest, 120, 6, invoiceFee).toString(),
+        reAmortize(plan, PaymentPlanEvent.termChange(1, 120)).toString());
+  }
+
+  @Test
+  public void testRateChange() {
+    PaymentPlan plan = paymentPlan(50_429, interest, 72, 0, invoiceFee);
+    PaymentPlan changed = reAmortize(plan, PaymentPlanEvent.rateChange(25, BigDecimal.valueOf(0.08)));
+    assertEquals(73, changed.size());
+    for (int i = 0; i < 25; i++) {
+      assertSame(plan.get(i), changed.get(i), "month " + i + " should be shared");
+      assertTrue(changed.get(i).isShared());
+    }
+    assertNotSame(plan.get(25), changed.get(25));
+    assertFalse(changed.get(25).isShared());
+    // shared rows are read only, edit copies them so modifying the new plan does not change the original
+    BigDecimal balance = plan.get(10).getOutgoingBalance();
+    assertThrows(UnsupportedOperationException.class, () -> changed.get(10).setOutgoingBalance(BigDecimal.ZERO));
+    changed.edit(10).setOutgoingBalance(BigDecimal.ZERO);
+    assertEquals(BigDecimal.ZERO, changed.get(10).getOutgoingBalance());
+    assertEquals(balance, plan.get(10).getOutgoingBalance());
+    assertNotSame(plan.get(10), changed.get(10));
+    // and the other way around
+    plan.edit(11).setMonth(-11);
+    assertEquals(11, changed.get(11).getMonth());
+    plan.edit(11).setMonth(11);
+    assertSame(changed.get(25), changed.edit(25));
+    assertTrue(changed.get(25).getCostOfCredit().compareTo(plan.get(25).getCostOfCredit()) > 0);
+    assertEquals(0, changed.get(72).getOutgoingBalance().doubleValue(), 0.001);
+    assertEquals(BigDecimal.valueOf(0.08), changed.getInterest());
+    // the original is unchanged
+    assertEquals(paymentPlan(50_429, interest, 72, 0, invoiceFee).toString(), plan.toString());
+  }
+
+  @Test
+  public void testExtraAmortizationAndTermChange() {
+    PaymentPlan plan = paymentPlan(50_429, interest, 72, 0, invoiceFee);
+    BigDecimal extra = BigDecimal.valueOf(10_000);
+    PaymentPlan changed = reAmortize(plan, PaymentPlanEvent.extraAmortization(13, extra));
+    Payment m13 = changed.get(13);
+    BigDecimal balance = plan.get(12).getOutgoingBalance();
+    assertEquals(0, balance.subtract(m13.getAmortization()).compareTo(m13.getOutgoingBalance()));
+    assertEquals(0, m13.getCostOfCredit().add(invoiceFee).compareTo(m13.getCacheFlow()));
+    assertEquals(0, changed.get(72).getOutgoingBalance().doubleValue(), 0.001);
+    // the remaining annuity is calculated on the reduced balance
+    assertEquals(monthlyAnnuityAmount(balance.subtract(extra).doubleValue(), 0.0677, 60, 0),
+        changed.get(14).getCostOfCredit().doubleValue(), 1e-9);
+    // the unchanged invoice fee is a larger part of the lower payments so the apr increases
+    assertTrue(apr(irr(changed)) > apr(irr(plan)));
+
+    PaymentPlan extended = reAmortize(changed, PaymentPlanEvent.termChange(25, 96));
+    assertEquals(97, extended.size());
+    assertEquals(changed.get(13).toString(), extended.get(13).toString());
+    assertEquals(plan.get(12).toString(), extended.get(12).toString());
+    assertEquals(0, extended.get(96).getOutgoingBalance().doubleValue(), 0.001);
+
+    PaymentPlan paidOff = reAmortize(plan, PaymentPlanEvent.extraAmortization(13, plan.get(12).getOutgoingBalance()));
+    assertEquals(14, paidOff.size());
+    assertEquals(0, paidOff.get(13).getOutgoingBalance().signum());
+
+    assertThrows(IllegalArgumentException.class, () -> reAmortize(plan, PaymentPlanEvent.rateChange(73, interest)));
+    assertThrows(IllegalArgumentException.class, () -> reAmortize(new PaymentPlan(plan.size()), PaymentPlanEvent.rateChange(2, interest)));
+  }
+}
@@ -0,0 +1,85 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.Payment;
+import se.alipsa.jfinancials.VariableRatePlan;
+
+import java.math.BigDecimal;
+
+public class VariableRatePlanTest {
+
+  @Test
+  public void testSingleSegmentEqualsFixedRate() {
+    VariableRatePlan plan = variableRatePlan(263_429, 360, 12, 30, new int[]{1}, new double[]{0.055});
+    assertEquals(2, plan.getSegmentCount());
+    assertArrayEquals(cashFlow(263_429, BigDecimal.valueOf(0.055), 360, 12, 30), plan.cashFlow(), 1e-9);
+    assertEquals(effectiveInterestRate(263_429, BigDecimal.valueOf(0.055), 360, 12, 30), plan.apr(), 1e-12);
+    assertEquals(totalPaymentAmount(263_429, 0.055, 360, 12, 30), plan.getTotalPaymentAmount(), 1e-6);
+    double balance = 263_429;
+    double annuity = monthlyAnnuityAmount(263_429, 0.055, 360, 12);
+    for (int month = 1; month <= 360; month++) {
+      double interest = balance * 0.055 / 12;
+      balance -= month <= 12 ? 0 : annuity - interest;
+      assertEquals(balance, plan.getOutgoingBalance(month), 1e-6, "month " + month);
+    }
+    assertEquals(0, plan.getOutgoingBalance(360), 1e-6);
+  }
+
+  @Test
+  public void testNegativeYield() {
+    VariableRatePlan plan = variableRatePlan(10_000, 24, 0, 0, new int[]{1, 13}, new double[]{-0.02, -0.03});
+    double irr = plan.irr();
+    assertTrue(irr < 0, "irr " + irr);
+    assertEquals(irr(plan.cashFlow()), irr, 1e-12);
+  }
+
+  @Test
+  public void testQuarterlyResets() {
+    int tenure = 360;
+    int[] resets = new int[120];
+    double[] rates = new double[120];
+    for (int k = 0; k < resets.length; k++) {
+      resets[k] = 1 + 3 * k;
+      rates[k] = 0.03 + 0.02 * Math.sin(k / 7.0);
+    }
+    VariableRatePlan plan = variableRatePlan(263_429, tenure, 4, 30, resets, rates);
+    assertEquals(121, plan.getSegmentCount());
+
+    // month by month reference, recalculating the annuity at each reset
+    double balance = 263_429;
+    double annuity = 0;
+    for (int month = 1; month <= tenure; month++) {
+      double rate = rates[(month - 1) / 3] / 12;
+      if ((month - 1) % 3 == 0 || month == 5) {
+        annuity = pmt(rate, tenure - month + 1, -balance);
+      }
+      double interest = balance * rate;
+      double cost = month <= 4 ? interest : annuity;
+      balance -= cost - interest;
+      Payment p = plan.getPayment(month);
+      assertEquals(cost, p.getCostOfCredit().doubleValue(), 1e-8, "month " + month);
+      assertEquals(interest, p.getInterestAmt().doubleValue(), 1e-7, "month " + month);
+      assertEquals(balance, plan.getOutgoingBalance(month), 1e-6, "month " + month);
+    }
+    assertEquals(0, plan.getOutgoingBalance(tenure), 1e-6);
+    assertEquals(0, plan.columnarPaymentPlan().getOutgoingBalance(tenure), 1e-6);
+
+    double[] cashFlow = plan.cashFlow();
+    assertEquals(irr(cashFlow), plan.irr(), 1e-12);
+    double total = 0;
+    for (int month = 1; month <= tenure; month++) {
+      total += cashFlow[month];
+    }
+    assertEquals(total, plan.getTotalPaymentAmount(), 1e-6);
+  }
+
+  @Test
+  public void testInvalidSegments() {
+    assertThrows(IllegalArgumentException.class, () -> variableRatePlan(10_000, 24, 0, 0, new int[]{2}, new double[]{0.05}));
+    assertThrows(IllegalArgumentException.class, () -> variableRatePlan(10_000, 24, 0, 0, new int[]{1, 30}, new double[]{0.05, 0.06}));
+    assertThrows(IllegalArgumentException.class, () -> variableRatePlan(10_000, 24, 0, 0, new int[]{1, 13}, new double[]{0.05}));
+  }
+}
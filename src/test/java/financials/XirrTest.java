@@ -0,0 +1,111 @@
+package financials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.jfinancials.Financials.*;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.jfinancials.DayCount;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class XirrTest {
+
+  private static final double[] amounts = {-10000, 2750, 4250, 3250, 2750};
+  private static final long[] dates = {
+      LocalDate.of(2008, 1, 1).toEpochDay(),
+      LocalDate.of(2008, 3, 1).toEpochDay(),
+      LocalDate.of(2008, 10, 30).toEpochDay(),
+      LocalDate.of(2009, 2, 15).toEpochDay(),
+      LocalDate.of(2009, 4, 1).toEpochDay()
+  };
+
+  @Test
+  public void testExcelExamples() {
+    assertEquals(2086.647602, xnpv(0.09, amounts, dates), 1e-6);
+    // Excel stops at a tolerance of about 1e-8
+    assertEquals(0.373362535, xirr(amounts, dates), 1e-8);
+    assertEquals(0, xnpv(xirr(amounts, dates), amounts, dates), 1e-7);
+    assertEquals(0.373362535, xirr(
+        List.of(LocalDate.of(2008, 1, 1), LocalDate.of(2008, 3, 1), LocalDate.of(2008, 10, 30),
+            LocalDate.of(2009, 2, 15), LocalDate.of(2009, 4, 1)),
+        List.of(-10000, 2750, 4250, 3250, 2750)), 1e-8);
+    // a loss gives a negative yield
+    assertEquals(-0.1, xirr(new double[]{-1000, 900}, new long[]{0, 365}), 1e-12);
+  }
+
+  @Test
+  public void testMonthlyCashFlowMatchesIrr() {
+    double[] cashFlow = cashFlow(263_429, BigDecimal.valueOf(0.055), 360, 0, 30);
+    long[] epochDays = new long[cashFlow.length];
+    for (int i = 0; i < epochDays.length; i++) {
+      epochDays[i] = i * 30;
+    }
+    // with 360 days per year every period is exactly 1/12 year
+    double expected = Math.pow(1 + irr(cashFlow), 12) - 1;
+    assertEquals(expected, xirr(cashFlow, epochDays, DayCount.ACT_360), 1e-10);
+  }
+
+  @Test
+  public void testDayCounts() {
+    long start = LocalDate.of(2020, 1, 31).toEpochDay();
+    long end = LocalDate.of(2020, 3, 31).toEpochDay();
+    assertEquals(60 / 360d, DayCount.THIRTY_360.yearFraction(start, end), 1e-15);
+    assertEquals(60 / 360d, DayCount.THIRTY_E_360.yearFraction(start, end), 1e-15);
+    assertEquals(60 / 360d, DayCount.ACT_360.yearFraction(start, end), 1e-15);
+    assertEquals(60 / 365d, DayCount.ACT_365F.yearFraction(start, end), 1e-15);
+    // 30/360 US only adjusts the end date if the start date is the 30th or 31st
+    assertEquals(31 / 360d, DayCount.THIRTY_360.yearFraction(LocalDate.of(2020, 3, 30).toEpochDay(),
+        LocalDate.of(2020, 5, 1).toEpochDay()), 1e-15);
+    assertEquals(30 / 360d, DayCount.THIRTY_360.yearFraction(LocalDate.of(2020, 3, 29).toEpochDay(),
+        LocalDate.of(2020, 4, 29).toEpochDay()), 1e-15);
+
+    LocalDate from = LocalDate.of(2019, 7, 1);
+    LocalDate to = LocalDate.of(2022, 3, 15);
+    // 2019: 184 days of 365, 2020 (leap) and 2021: whole years, 2022: 73 days of 365
+    double expected = ChronoUnit.DAYS.between(from, LocalDate.of(2020, 1, 1)) / 365d + 2
+        + ChronoUnit.DAYS.between(LocalDate.of(2022, 1, 1), to) / 365d;
+    assertEquals(184 / 365d + 2 + 73 / 365d, expected, 1e-15);
+    assertEquals(expected, DayCount.ACT_ACT_ISDA.yearFraction(from.toEpochDay(), to.toEpochDay()), 1e-15);
+    assertEquals(-expected, DayCount.ACT_ACT_ISDA.yearFraction(to.toEpochDay(), from.toEpochDay()), 1e-15);
+    assertEquals(31 / 366d, DayCount.ACT_ACT_ISDA.yearFraction(LocalDate.of(2020, 1, 1).toEpochDay(),
+        LocalDate.of(2020, 2, 1).toEpochDay()), 1e-15);
+  }
+
+  @Test
+  public void testBulk() {
+    int count = 300;
+    int[] offsets = new int[count + 1];
+    int total = 0;
+    for (int i = 0; i < count; i++) {
+      offsets[i] = total;
+      total += 2 + i % 7;
+    }
+    offsets[count] = total;
+    double[] allAmounts = new double[total];
+    long[] allDates = new long[total];
+    for (int i = 0; i < count; i++) {
+      int length = offsets[i + 1] - offsets[i];
+      allAmounts[offsets[i]] = -1000 - i;
+      allDates[offsets[i]] = 18_000 + i;
+      for (int j = 1; j < length; j++) {
+        allAmounts[offsets[i] + j] = (1100 + i) / (double) (length - 1);
+        allDates[offsets[i] + j] = 18_000 + i + j * (20 + i % 40);
+      }
+    }
+    double[] result = new double[count];
+    xirr(allAmounts, allDates, offsets, DayCount.ACT_ACT_ISDA, result, ForkJoinPool.commonPool());
+    for (int i = 0; i < count; i++) {
+      int length = offsets[i + 1] - offsets[i];
+      double[] a = new double[length];
+      long[] d = new long[length];
+      System.arraycopy(allAmounts, offsets[i], a, 0, length);
+      System.arraycopy(allDates, offsets[i], d, 0, length);
+      assertEquals(xirr(a, d, DayCount.ACT_ACT_ISDA), result[i], 1e-12, "cash flow " + i);
+      assertEquals(0, xnpv(result[i], a, d, DayCount.ACT_ACT_ISDA), 1e-6, "cash flow " + i);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package se.alipsa.jfinancials;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+/**
+ * Tests the BulkNpv kernels directly, in this package since they are package private. The scalar kernel is always
+ * tested, the vector kernel only when the jdk.incubator.vector module is added (the vector-kernel-test execution).
+ */
+public class NpvKernelTest {
+
+  @Test
+  public void testScalarKernel() {
+    verify(new ScalarNpvKernel());
+  }
+
+  @Test
+  public void testVectorKernel() {
+    BulkNpvKernel kernel = BulkNpv.loadKernel();
+    assumeFalse(kernel instanceof ScalarNpvKernel, "the jdk.incubator.vector module is not available");
+    verify(kernel);
+    compare(new ScalarNpvKernel(), kernel);
+  }
+
+  private static void verify(BulkNpvKernel kernel) {
+    double[] cashFlow = Financials.cashFlow(263_429, BigDecimal.valueOf(0.055), 180, 12, 30);
+    // 13 rates and 11 loans so that there is a tail not filling a whole vector
+    double[] rates = new double[13];
+    for (int i = 0; i < rates.length; i++) {
+      rates[i] = -0.002 + i * 0.001;
+    }
+    double[] result = new double[rates.length];
+    kernel.npvForRates(cashFlow, rates, result);
+    for (int i = 0; i < rates.length; i++) {
+      assertEquals(Financials.npv(cashFlow, rates[i]), result[i], 1E-6, "rate " + rates[i]);
+    }
+
+    int loans = 11;
+    int periods = 61;
+    double[] flows = loanFlows(loans, periods);
+    double[] loanRates = new double[loans];
+    double[] factors = new double[periods + 3];
+    for (int t = 0; t < factors.length; t++) {
+      factors[t] = Math.pow(1.004, -t);
+    }
+    double[] npv = new double[loans];
+    double[] dot = new double[loans];
+    for (int j = 0; j < loans; j++) {
+      loanRates[j] = 0.002 + j * 0.0003;
+    }
+    kernel.npvForLoans(flows, loans, loanRates, npv);
+    kernel.dotForLoans(flows, loans, factors, 1, dot);
+    for (int j = 0; j < loans; j++) {
+      double[] loan = loan(flows, loans, j);
+      assertEquals(Financials.npv(loan, loanRates[j]), npv[j], 1E-6, "loan " + j);
+      assertEquals(Financials.npv(loan, 0.004), dot[j], 1E-6, "loan " + j);
+      assertEquals(Financials.npv(loan, 0.004), kernel.dot(loan, 0, factors, 1, loan.length), 1E-6, "loan " + j);
+    }
+    assertEquals(Financials.npv(new double[]{36200, 54800}, 0.004),
+        kernel.dot(new double[]{-123400, 36200, 54800, 48100}, 1, factors, 1, 2), 1E-9);
+  }
+
+  private static void compare(BulkNpvKernel scalar, BulkNpvKernel vector) {
+    int loans = 11;
+    int periods = 61;
+    double[] flows = loanFlows(loans, periods);
+    double[] rates = new double[loans];
+    for (int j = 0; j < loans; j++) {
+      rates[j] = -0.01 + j * 0.003;
+    }
+    double[] expected = new double[loans];
+    double[] actual = new double[loans];
+    scalar.npvForLoans(flows, loans, rates, expected);
+    vector.npvForLoans(flows, loans, rates, actual);
+    assertArrayEquals(expected, actual, 1E-8);
+    scalar.npvForRates(loan(flows, loans, 3), rates, expected);
+    vector.npvForRates(loan(flows, loans, 3), rates, actual);
+    assertArrayEquals(expected, actual, 1E-8);
+    for (int length = 0; length <= periods; length++) {
+      assertEquals(scalar.dot(flows, 0, flows, loans, length), vector.dot(flows, 0, flows, loans, length),
+          1E-6, "length " + length);
+    }
+  }
+
+  /* period major cash flows of loans of different amounts, rates and amortization free months */
+  private static double[] loanFlows(int loans, int periods) {
+    double[] flows = new double[periods * loans];
+    for (int j = 0; j < loans; j++) {
+      double[] cashFlow = Financials.cashFlow(10_000 + j * 1000, BigDecimal.valueOf(0.04 + j * 0.001), periods - 1,
+          j % 3, 25);
+      for (int t = 0; t < periods; t++) {
+        flows[t * loans + j] = cashFlow[t];
+      }
+    }
+    return flows;
+  }
+
+  private static double[] loan(double[] flows, int loans, int j) {
+    double[] cashFlow = new double[flows.length / loans];
+    for (int t = 0; t < cashFlow.length; t++) {
+      cashFlow[t] = flows[t * loans + j];
+    }
+    return cashFlow;
+  }
+}
@@ -0,0 +1,75 @@
+package se.alipsa.jfinancials;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A BulkNpvKernel using the (incubating) vector api to evaluate the Horner recurrence (or the dot product with
+ * discount factors) of several rates or several loans per instruction. The lanes that do not fill a whole vector are handled by the scalar kernel.
+ * This class must only be loaded when the jdk.incubator.vector module is available (see BulkNpv).
+ */
+class VectorNpvKernel implements BulkNpvKernel {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public void npvForRates(double[] cashFlow, double[] rates, double[] result) {
+    int n = cashFlow.length;
+    int upperBound = SPECIES.loopBound(rates.length);
+    DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+    int r = 0;
+    for (; r < upperBound; r += SPECIES.length()) {
+      DoubleVector v = one.div(one.add(DoubleVector.fromArray(SPECIES, rates, r)));
+      DoubleVector acc = DoubleVector.zero(SPECIES);
+      for (int t = n - 1; t >= 0; t--) {
+        acc = acc.mul(v).add(cashFlow[t]);
+      }
+      acc.mul(v).intoArray(result, r);
+    }
+    ScalarNpvKernel.npvForRates(cashFlow, rates, result, r);
+  }
+
+  @Override
+  public void npvForLoans(double[] cashFlows, int loans, double[] rates, double[] result) {
+    int periods = cashFlows.length / loans;
+    int upperBound = SPECIES.loopBound(loans);
+    DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+    int j = 0;
+    for (; j < upperBound; j += SPECIES.length()) {
+      DoubleVector v = one.div(one.add(DoubleVector.fromArray(SPECIES, rates, j)));
+      DoubleVector acc = DoubleVector.zero(SPECIES);
+      for (int t = periods - 1; t >= 0; t--) {
+        acc = acc.mul(v).add(DoubleVector.fromArray(SPECIES, cashFlows, t * loans + j));
+      }
+      acc.mul(v).intoArray(result, j);
+    }
+    ScalarNpvKernel.npvForLoans(cashFlows, loans, rates, result, j);
+  }
+
+  @Override
+  public double dot(double[] x, int xOffset, double[] y, int yOffset, int length) {
+    int upperBound = SPECIES.loopBound(length);
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    int i = 0;
+    for (; i < upperBound; i += SPECIES.length()) {
+      acc = acc.add(DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(DoubleVector.fromArray(SPECIES, y, yOffset + i)));
+    }
+    return ScalarNpvKernel.dot(x, xOffset, y, yOffset, length, i, acc.reduceLanes(VectorOperators.ADD));
+  }
+
+  @Override
+  public void dotForLoans(double[] cashFlows, int loans, double[] factors, int factorOffset, double[] result) {
+    int periods = cashFlows.length / loans;
+    int upperBound = SPECIES.loopBound(loans);
+    int j = 0;
+    for (; j < upperBound; j += SPECIES.length()) {
+      DoubleVector acc = DoubleVector.zero(SPECIES);
+      for (int t = 0; t < periods; t++) {
+        acc = acc.add(DoubleVector.fromArray(SPECIES, cashFlows, t * loans + j).mul(factors[factorOffset + t]));
+      }
+      acc.intoArray(result, j);
+    }
+    ScalarNpvKernel.dotForLoans(cashFlows, loans, factors, factorOffset, result, j);
+  }
+}